@@ -1,8 +1,21 @@
 package meta.projet;
 
-//import meta.projet.classesi.solver.AStar;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import meta.projet.classesi.solver.AStar;
 import meta.projet.classesi.solver.BFS;
-//import meta.projet.classesi.solver.heuristic.MinMoves;
+import meta.projet.classesi.solver.BidirectionalBFS;
+import meta.projet.classesi.solver.BucketOpenList;
+import meta.projet.classesi.solver.ExternalBFS;
+import meta.projet.classesi.solver.HeapOpenList;
+import meta.projet.classesi.solver.IDAStar;
+import meta.projet.classesi.solver.OpenList;
+import meta.projet.classesi.solver.ParallelAStar;
+import meta.projet.classesi.solver.ParallelBFS;
+import meta.projet.classesi.solver.heuristic.MinMoves;
+import meta.projet.classesi.solver.heuristic.PatternDatabase;
 //import meta.projet.classesi.solver.heuristic.MissPlaced;
 
 public class Main {
@@ -48,5 +61,274 @@ public class Main {
             System.out.println(temps_exec[i]);
         }
         System.out.println(b);
+
+        // AStar opened lists comparison
+        System.out.println("OpenedList Initial--++States ExecutionTime SolutionLevel FoundSolutionLevel NumberOfDevelopedStates");
+
+        OpenList[] openLists = {new HeapOpenList(), new BucketOpenList()};
+        for (OpenList openList : openLists) {
+            long[] time = new long[8];
+            for (int j = 0; j < 10; ++j) {
+                for (int i = 0; i < initialStates.length; ++i) {
+                    AStar solver = new AStar(
+                        initialStates[i],
+                        123804765,
+                        new MinMoves(),
+                        -1,
+                        openList
+                    );
+
+                    start = System.nanoTime();
+                    solver.solve();
+                    stop = System.nanoTime();
+                    System.out.println(String.format(
+                        "%s %09d %d %d %d %d",
+                        openList.getClass().getSimpleName(),
+                        initialStates[i],
+                        stop - start,
+                        solutionsDepth[i],
+                        solver.getSolution().getLevel(),
+                        solver.getNumberOfDevelopedStates()));
+
+                    time[i] += stop - start;
+                }
+            }
+            for (int i = 0; i < initialStates.length; ++i)
+                System.out.println(openList.getClass().getSimpleName() + " " + time[i] / 10);
+        }
+
+        // IDAStar
+        long[] time = new long[8];
+        for (int j = 0; j < 10; ++j) {
+            for (int i = 0; i < initialStates.length; ++i) {
+                IDAStar solver = new IDAStar(
+                    initialStates[i],
+                    123804765,
+                    new MinMoves()
+                );
+
+                start = System.nanoTime();
+                solver.solve();
+                stop = System.nanoTime();
+                System.out.println(String.format(
+                    "IDAStar %09d %d %d %d %d",
+                    initialStates[i],
+                    stop - start,
+                    solutionsDepth[i],
+                    solver.getSolution().getLevel(),
+                    solver.getNumberOfDevelopedStates()));
+
+                time[i] += stop - start;
+            }
+        }
+        for (int i = 0; i < initialStates.length; ++i)
+            System.out.println("IDAStar " + time[i] / 10);
+
+        // BidirectionalBFS
+        time = new long[8];
+        for (int j = 0; j < 10; ++j) {
+            for (int i = 0; i < initialStates.length; ++i) {
+                BidirectionalBFS solver = new BidirectionalBFS(
+                    initialStates[i],
+                    123804765
+                );
+
+                start = System.nanoTime();
+                solver.solve();
+                stop = System.nanoTime();
+                System.out.println(String.format(
+                    "BidirectionalBFS %09d %d %d %d %d %d",
+                    initialStates[i],
+                    stop - start,
+                    solutionsDepth[i],
+                    solver.getSolution().getLevel(),
+                    solver.getNumberOfDevelopedStates(),
+                    solver.getClosed().size()));
+
+                time[i] += stop - start;
+            }
+        }
+        for (int i = 0; i < initialStates.length; ++i)
+            System.out.println("BidirectionalBFS " + time[i] / 10);
+
+        // ParallelAStar
+        time = new long[8];
+        for (int j = 0; j < 10; ++j) {
+            for (int i = 0; i < initialStates.length; ++i) {
+                ParallelAStar solver = new ParallelAStar(
+                    initialStates[i],
+                    123804765,
+                    new MinMoves()
+                );
+
+                start = System.nanoTime();
+                solver.solve();
+                stop = System.nanoTime();
+                System.out.println(String.format(
+                    "ParallelAStar %09d %d %d %d %d %d",
+                    initialStates[i],
+                    stop - start,
+                    solutionsDepth[i],
+                    solver.getSolution().getLevel(),
+                    solver.getNumberOfDevelopedStates(),
+                    solver.getNumberOfThreads()));
+
+                time[i] += stop - start;
+            }
+        }
+        for (int i = 0; i < initialStates.length; ++i)
+            System.out.println("ParallelAStar " + time[i] / 10);
+
+        // ParallelBFS, with the size and the time of each level
+        for (int i = 0; i < initialStates.length; ++i) {
+            ParallelBFS solver = new ParallelBFS(
+                initialStates[i],
+                123804765
+            );
+
+            start = System.nanoTime();
+            solver.solve();
+            stop = System.nanoTime();
+            System.out.println(String.format(
+                "ParallelBFS %09d %d %d %d %d",
+                initialStates[i],
+                stop - start,
+                solutionsDepth[i],
+                solver.getSolution().getLevel() + 1,
+                solver.getNumberOfDevelopedStates()));
+
+            int[] sizes = solver.getFrontierSizes();
+            long[] times = solver.getLevelTimes();
+            for (int level = 0; level < solver.getNumberOfLevels(); ++level)
+                System.out.println(String.format("    level %d %d %d", level, sizes[level], times[level]));
+        }
+
+        // ExternalBFS, the levels being kept in the temporary directory
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        for (int i = 0; i < initialStates.length; ++i) {
+            ExternalBFS solver = new ExternalBFS(
+                initialStates[i],
+                123804765,
+                directory
+            );
+
+            start = System.nanoTime();
+            solver.solve();
+            stop = System.nanoTime();
+            System.out.println(String.format(
+                "ExternalBFS %09d %d %d %d %d %d",
+                initialStates[i],
+                stop - start,
+                solutionsDepth[i],
+                solver.getSolution().getLevel() + 1,
+                solver.getNumberOfDevelopedStates(),
+                solver.getNumberOfRuns()));
+        }
+
+        // BFS and AStar with nodes linked to their parent, then with compact
+        // parents : heap kept by the solver once solved, and number and time
+        // of the collections during the solve. The compact BFS allocates its
+        // 9! tables on every solve, its ExecutionTime is higher than the one
+        // of the nodes for the shallow states and lower for the deep ones
+        System.out.println("Solver Parents Initial--++States ExecutionTime FoundSolutionLevel RetainedHeap Collections CollectionTime");
+        for (boolean compact : new boolean[] {false, true}) {
+            String parents = compact ? "compact" : "nodes";
+            for (int i = 0; i < initialStates.length; ++i) {
+                BFS bfs = new BFS(initialStates[i], 123804765);
+                bfs.setCompactParents(compact);
+                long heap = usedHeap();
+                long[] collections = collections();
+                start = System.nanoTime();
+                bfs.solve();
+                stop = System.nanoTime();
+                long[] collectionsAfter = collections();
+                System.out.println(String.format(
+                    "BFS %s %09d %d %d %d %d %d",
+                    parents,
+                    initialStates[i],
+                    stop - start,
+                    bfs.getSolution().getLevel() + 1,
+                    usedHeap() - heap,
+                    collectionsAfter[0] - collections[0],
+                    collectionsAfter[1] - collections[1]));
+
+                AStar astar = new AStar(initialStates[i], 123804765, new MinMoves(), -1);
+                astar.setCompactParents(compact);
+                heap = usedHeap();
+                collections = collections();
+                start = System.nanoTime();
+                astar.solve();
+                stop = System.nanoTime();
+                collectionsAfter = collections();
+                System.out.println(String.format(
+                    "AStar %s %09d %d %d %d %d %d",
+                    parents,
+                    initialStates[i],
+                    stop - start,
+                    astar.getSolution().getLevel(),
+                    usedHeap() - heap,
+                    collectionsAfter[0] - collections[0],
+                    collectionsAfter[1] - collections[1]));
+            }
+        }
+
+        // 15-puzzle
+        short[][][] initialStates15 = {
+            {{0, 14, 8, 3}, {6, 1, 4, 2}, {13, 5, 7, 12}, {9, 11, 10, 15}}, // 34
+            {{12, 6, 2, 4}, {1, 5, 13, 7}, {14, 10, 0, 11}, {9, 15, 8, 3}}, // 38
+            {{2, 1, 5, 6}, {9, 13, 4, 7}, {12, 3, 0, 15}, {14, 11, 8, 10}}, // 38
+            {{4, 2, 9, 8}, {1, 11, 10, 3}, {0, 6, 15, 5}, {13, 7, 14, 12}} // 40
+        };
+        int[] solutionsDepth15 = {34, 38, 38, 40};
+        short[][] finalState15 = {{1, 2, 3, 4}, {5, 6, 7, 8}, {9, 10, 11, 12}, {13, 14, 15, 0}};
+
+        System.out.println("Solver Instance ExecutionTime SolutionLevel FoundSolutionLevel NumberOfDevelopedStates");
+        for (int i = 0; i < initialStates15.length; ++i) {
+            AStar astar = new AStar(initialStates15[i], finalState15, new MinMoves(), -1);
+            start = System.nanoTime();
+            astar.solve();
+            stop = System.nanoTime();
+            System.out.println(String.format(
+                "AStar15 %d %d %d %d %d",
+                i,
+                stop - start,
+                solutionsDepth15[i],
+                astar.getSolution().getLevel(),
+                astar.getNumberOfDevelopedStates()));
+
+            IDAStar idastar = new IDAStar(initialStates15[i], finalState15, new PatternDatabase());
+            start = System.nanoTime();
+            idastar.solve();
+            stop = System.nanoTime();
+            System.out.println(String.format(
+                "IDAStar15 %d %d %d %d %d",
+                i,
+                stop - start,
+                solutionsDepth15[i],
+                idastar.getSolution().getLevel(),
+                idastar.getNumberOfDevelopedStates()));
+        }
+    }
+
+    /**
+     * @return the bytes of the heap used by the reachable objects
+     */
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the number of collections and their time in milliseconds, for
+     *         all the collectors
+     */
+    private static long[] collections() {
+        long[] collections = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections[0] = collections[0] + collector.getCollectionCount();
+            collections[1] = collections[1] + collector.getCollectionTime();
+        }
+        return collections;
     }
 }
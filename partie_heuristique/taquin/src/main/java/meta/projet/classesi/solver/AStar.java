@@ -1,16 +1,29 @@
 package meta.projet.classesi.solver;
 
 import meta.projet.classesi.solver.heuristic.Heuristic;
+import meta.projet.classesi.solver.heuristic.IncrementalHeuristic;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.PriorityQueue;
 
 /**
  * Implements AStar solver
  *
  */
 public class AStar extends Solver {
+    // first int of the checkpoint files, "ASCP"
+    private static final int CHECKPOINT_MAGIC = 0x41534350;
+
     private int initialState;
     private int finalState;
     private Heuristic heuristic;
@@ -18,8 +31,24 @@ public class AStar extends Solver {
     private int numberOfDevelopedStates;
 
     private Node solution;
-    private PriorityQueue<Node> opened;
-    private HashSet<Node> closed;
+    private OpenList opened;
+    private ClosedSet closed;
+    // the levels and predecessors of the states of a 3x3 board when they are
+    // not kept by the closed set, see setCompactParents
+    private PredecessorTable predecessors;
+    private boolean compactParents;
+
+    // the boards other than 3x3, geometry is null for a 3x3 board
+    private BoardGeometry geometry;
+    private byte[] initialBoard;
+    private byte[] finalBoard;
+    private StateTable table;
+
+    // the search is saved in checkpointFile every checkpointInterval
+    // developed states, null for no checkpoint
+    private File checkpointFile;
+    private int checkpointInterval;
+    private int lastCheckpoint;
 
     /**
      * AStar constructor.
@@ -29,16 +58,34 @@ public class AStar extends Solver {
      *                  valide values are objects of the classes : 
      *                  - MinMoves
      *                  - MissPlaced
+     *                  - PatternDatabase
      *                  - DepthFirst (is only for internal test)
      *                  - BreadthFirst (is only for intenal test)
      * @param maxLevel the maximum level astar is allowed to reach,
      *                 if set to -1 the maximum level is not limited
      */
     public AStar(int initialState, int finalState, Heuristic heuristic, int maxLevel) {
+        this(initialState, finalState, heuristic, maxLevel, new BucketOpenList());
+    }
+
+    /**
+     * AStar constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach 
+     * @param heuristic the heuristic that the astar will use to evaluate states
+     * @param maxLevel the maximum level astar is allowed to reach,
+     *                 if set to -1 the maximum level is not limited
+     * @param opened the opened list implementation, valide values are objects
+     *               of the classes :
+     *               - BucketOpenList (default)
+     *               - HeapOpenList
+     */
+    public AStar(int initialState, int finalState, Heuristic heuristic, int maxLevel, OpenList opened) {
         this.initialState = initialState;
         this.finalState = finalState;
         this.heuristic = heuristic;
         this.maxLevel = maxLevel;
+        this.opened = opened;
         this.numberOfDevelopedStates = 0;
 
         short[][] targetState = new short[3][3];
@@ -46,146 +93,380 @@ public class AStar extends Solver {
         this.heuristic.setTargetState(targetState);
     }
 
+    /**
+     * AStar constructor for a board of any size, the states of the boards
+     * other than 3x3 are packed as described in BoardGeometry.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param heuristic the heuristic that the astar will use to evaluate states
+     * @param maxLevel the maximum level astar is allowed to reach,
+     *                 if set to -1 the maximum level is not limited
+     * @throws IllegalArgumentException if the board has more than 16 cells
+     */
+    public AStar(short[][] initialState, short[][] finalState, Heuristic heuristic, int maxLevel) {
+        BoardGeometry geometry = BoardGeometry.of(initialState);
+        if (!geometry.isPacked())
+            throw new IllegalArgumentException("AStar only supports boards of up to "
+                + BoardGeometry.MAX_PACKED_CELLS + " cells, use IDAStar for larger boards");
+
+        this.heuristic = heuristic;
+        this.maxLevel = maxLevel;
+        this.opened = new BucketOpenList();
+        this.numberOfDevelopedStates = 0;
+        if (geometry.getCells() == PackedState.CELLS) {
+            this.initialState = matrixToInt(initialState);
+            this.finalState = matrixToInt(finalState);
+        } else {
+            this.geometry = geometry;
+            this.initialBoard = geometry.fromMatrix(initialState);
+            this.finalBoard = geometry.fromMatrix(finalState);
+        }
+        this.heuristic.setTargetState(finalState);
+    }
+
     /**
      * This method uses AStar algorithm to find the sequence of actions to reach
      * the finalState from the initialState. The solution if found will be 
      * stored in solution member attribute, while opened and closed attributes
-     * will contain the nodes to be developed and the developed nodes
+     * will contain the states to be developed and the developed states
      * respectively.
+     * The opened list only keeps packed states, the level and the parent of
+     * each state are kept by the closed set and the path is rebuilt from it
+     * once the final state is reached (or from the predecessor table, see
+     * setCompactParents).
      * @preturn boolean true if the algorithm found a solution, false otherwise
      */
     public boolean solve() {
-        Node currentNode;
+        if (this.geometry != null)
+            return solveBoard();
+
         short[][] matrixState = new short[3][3];
-        Node[] children;
+        long finalPacked = PackedState.fromInt(this.finalState);
+        long initialPacked = PackedState.fromInt(this.initialState);
+        IncrementalHeuristic incremental = (this.heuristic instanceof IncrementalHeuristic)
+            ? (IncrementalHeuristic) this.heuristic : null;
 
         this.numberOfDevelopedStates = 0;
-        this.opened = new PriorityQueue<Node>();  
-        this.closed = new HashSet<Node>();  
-
-        intToMatrix(this.initialState, matrixState);
-        this.opened.add(
-            new Node(
-                this.initialState, 
-                null, 
-                this.heuristic.score(matrixState, 0),
-                0
-            )
-        );
+        this.solution = null;
+        this.opened.clear();
+        this.opened.setGeometry(null);
+        this.closed = new ClosedSet(!this.compactParents);
+        this.predecessors = this.compactParents ? new PredecessorTable() : null;
+
+        // the search goes on from the checkpoint if there is one
+        if (!restoreCheckpoint(initialPacked, finalPacked)) {
+            intToMatrix(this.initialState, matrixState);
+            if (this.predecessors != null)
+                this.predecessors.record(PackedState.rank(initialPacked), 0, PredecessorTable.NO_MOVE);
+            else
+                this.closed.record(PackedState.rank(initialPacked), 0, ClosedSet.NO_PARENT);
+            this.opened.push(initialPacked, this.heuristic.score(matrixState, 0), 0);
+        }
 
         // main loop
         while (!this.opened.isEmpty()) {
-            currentNode = this.opened.poll(); 
+            saveCheckpoint(initialPacked, finalPacked);
+            long current = this.opened.pop();
+            int rank = PackedState.rank(current);
 
-            //System.out.println(String.format("Current Node : %09d with level %d and score %d", currentNode.getState(), currentNode.getLevel(), currentNode.getScore()));
+            // test if the current state is a goal
+            if (current == finalPacked) {
+                this.solution = (this.predecessors != null)
+                    ? buildPath(this.predecessors.getPath(current), matrixState)
+                    : buildPath(rank, matrixState);
+                return true;
+            }
+
+            // the state was opened again with a lower level after this entry
+            // was pushed, it is developed from the entry with the lowest one
+            int level = (this.predecessors != null) ? this.predecessors.getLevel(rank) : this.closed.getLevel(rank);
+            if (this.opened.getLastLevel() != level)
+                continue;
+
+            // develop children of current state
+            if (this.closed.add(rank)) {
+                int score = this.opened.getLastScore();
+                int blank = PackedState.blank(current);
+
+                if (this.maxLevel == -1 || level < maxLevel) {
+                    this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+                    // generate children, moving the 0 up, down, left and right
+                    for (int direction = 0; direction < 4; ++direction) {
+                        long child = PackedState.move(current, direction);
+                        if (child == PackedState.NONE)
+                            continue;
 
-            // test if the current node is a goal
-            if (currentNode.getState() == this.finalState) {
-                this.solution =  currentNode;
+                        int childRank = PackedState.rank(child);
+                        if (this.closed.contains(childRank))
+                            continue;
+                        // the child is already opened with a lower or equal level
+                        if (this.predecessors != null) {
+                            if (this.predecessors.isRecorded(childRank)
+                                    && this.predecessors.getLevel(childRank) <= level + 1)
+                                continue;
+                            this.predecessors.record(childRank, level + 1, direction);
+                        } else {
+                            if (this.closed.isRecorded(childRank)
+                                    && this.closed.getLevel(childRank) <= level + 1)
+                                continue;
+                            this.closed.record(childRank, level + 1, rank);
+                        }
+                        int childScore;
+                        if (incremental != null) {
+                            // the moved tile goes from the new position of the 0 to its old one
+                            int from = PackedState.blank(child);
+                            childScore = incremental.delta(score, PackedState.tile(current, from), from, blank);
+                        } else {
+                            PackedState.toMatrix(child, matrixState);
+                            childScore = this.heuristic.score(matrixState, level + 1);
+                        }
+                        this.opened.push(child, childScore, level + 1);
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Same search as solve for the boards other than 3x3, the states having no
+     * rank the closed list is a StateTable.
+     * @preturn boolean true if the algorithm found a solution, false otherwise
+     */
+    private boolean solveBoard() {
+        short[][] matrixState = new short[this.geometry.getLines()][this.geometry.getColumns()];
+        long finalPacked = this.geometry.pack(this.finalBoard);
+        long initialPacked = this.geometry.pack(this.initialBoard);
+        IncrementalHeuristic incremental = (this.heuristic instanceof IncrementalHeuristic)
+            ? (IncrementalHeuristic) this.heuristic : null;
+
+        this.numberOfDevelopedStates = 0;
+        this.solution = null;
+        this.opened.clear();
+        this.opened.setGeometry(this.geometry);
+        this.table = new StateTable(this.geometry);
+
+        // the search would never end if the final state is not reachable
+        if (!this.geometry.isSolvable(this.initialBoard, this.finalBoard))
+            return false;
+
+        // the search goes on from the checkpoint if there is one
+        if (!restoreCheckpoint(initialPacked, finalPacked)) {
+            this.geometry.toMatrix(initialPacked, matrixState);
+            this.table.record(initialPacked, 0, StateTable.NO_PARENT);
+            this.opened.push(initialPacked, this.heuristic.score(matrixState, 0), 0);
+        }
+
+        while (!this.opened.isEmpty()) {
+            saveCheckpoint(initialPacked, finalPacked);
+            long current = this.opened.pop();
+
+            if (current == finalPacked) {
+                this.solution = buildBoardPath(current, matrixState);
                 return true;
             }
 
-            // develop children of current node
-            if (!this.closed.contains(currentNode)) {
-                this.closed.add(currentNode);
+            // the state was opened again with a lower level after this entry
+            // was pushed, it is developed from the entry with the lowest one
+            int level = this.table.getLevel(current);
+            if (this.opened.getLastLevel() != level)
+                continue;
+
+            if (this.table.develop(current)) {
+                int score = this.opened.getLastScore();
+                int blank = this.geometry.blank(current);
 
-                if (this.maxLevel == -1 || currentNode.getLevel() < maxLevel) {
+                if (this.maxLevel == -1 || level < maxLevel) {
                     this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
-                    // generate children
-                    intToMatrix(currentNode.getState(), matrixState);
-                    children = getChildren(matrixState, currentNode);
-                    //System.out.println("Developed children : ");
-                    for (Node child : children) {
-                        if (child != null && !this.closed.contains(child)) {
-                            //System.out.println(String.format("%09d (%d)", child.getState(), child.getScore()));
-                            this.opened.add(child);
+                    for (int direction = 0; direction < 4; ++direction) {
+                        int cell = this.geometry.neighbour(blank, direction);
+                        if (cell < 0)
+                            continue;
+
+                        long child = this.geometry.move(current, blank, cell);
+                        if (this.table.isDeveloped(child))
+                            continue;
+                        if (this.table.isRecorded(child)
+                                && this.table.getLevel(child) <= level + 1)
+                            continue;
+
+                        this.table.record(child, level + 1, current);
+                        int childScore;
+                        if (incremental != null) {
+                            childScore = incremental.delta(score, this.geometry.tile(current, cell), cell, blank);
+                        } else {
+                            this.geometry.toMatrix(child, matrixState);
+                            childScore = this.heuristic.score(matrixState, level + 1);
                         }
+                        this.opened.push(child, childScore, level + 1);
                     }
                 }
-            } else {
-                //System.out.println("Already tested");
             }
         }
 
         return false;
     }
 
-    public Node[] getChildren(short[][] state, Node parent) {
-        Node node;
-        Node[] children = new Node[4];
-        int zi = 0, zj = 0;
-        
-        // find 0 position
-        for (int i = 0; i < state.length; ++i) {
-            for (int j = 0; j < state[0].length; ++j) {
-                if (state[i][j] == 0) {
-                    zi = i;
-                    zj = j;
+    /**
+     * Saves the search in a file every interval developed states, solve
+     * resuming the search from the file if it exists. A checkpoint holds the
+     * opened list (the ranks of the states for a 3x3 board, their packed form
+     * otherwise, with their score and level) and the closed set with the
+     * levels and parents of the states, the search resumed from it develops
+     * the states in the same order as if it was never stopped.
+     * The file is written next to the given one then renamed, a checkpoint
+     * stopped while it is written doesn't replace the previous one.
+     * @param file the checkpoint file, null for no checkpoint
+     * @param interval the number of developed states between two checkpoints
+     */
+    public void setCheckpoint(File file, int interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("there must be at least 1 developed state between the checkpoints");
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Writes a checkpoint if interval states were developed since the last
+     * one.
+     */
+    private void saveCheckpoint(long initialPacked, long finalPacked) {
+        if (this.checkpointFile == null
+                || this.numberOfDevelopedStates - this.lastCheckpoint < this.checkpointInterval)
+            return;
+        this.lastCheckpoint = this.numberOfDevelopedStates;
+
+        File temporary = new File(this.checkpointFile.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            try {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeLong(initialPacked);
+                out.writeLong(finalPacked);
+                out.writeInt(this.numberOfDevelopedStates);
+                if (this.geometry == null)
+                    this.closed.write(out);
+                else
+                    this.table.write(out);
+                if (this.predecessors != null)
+                    this.predecessors.write(out);
+
+                // the states are written in the order of the iteration, which
+                // is the order they are pushed back in to rebuild the list
+                out.writeInt(this.opened.size());
+                for (Node node : this.opened) {
+                    if (this.geometry == null)
+                        out.writeInt(PackedState.rank(node.getPacked()));
+                    else
+                        out.writeLong(this.geometry.pack(node.getBoard()));
+                    out.writeInt(node.getScore());
+                    out.writeInt(node.getLevel());
                 }
+            } finally {
+                out.close();
             }
+            Files.move(temporary.toPath(), this.checkpointFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        // up
-        if (zi != 0) {
-            state[zi][zj] = state[zi - 1][zj];
-            state[zi - 1][zj] = 0;
-            node = new Node(
-                matrixToInt(state),
-                parent,
-                this.heuristic.score(state, parent.getLevel() + 1),
-                parent.getLevel() + 1
-            );
-            children[0] = node;
-            state[zi - 1][zj] = state[zi][zj];
-            state[zi][zj] = 0;
+    /**
+     * Reads the checkpoint file if it exists.
+     * @return true if the search was restored
+     * @throws IllegalArgumentException if the file is not the checkpoint of a
+     *         search between the same states
+     */
+    private boolean restoreCheckpoint(long initialPacked, long finalPacked) {
+        this.lastCheckpoint = 0;
+        if (this.checkpointFile == null || !this.checkpointFile.exists())
+            return false;
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.checkpointFile)));
+            try {
+                if (in.readInt() != CHECKPOINT_MAGIC || in.readLong() != initialPacked || in.readLong() != finalPacked)
+                    throw new IllegalArgumentException(this.checkpointFile + " is not a checkpoint of this search");
+                this.numberOfDevelopedStates = in.readInt();
+                this.lastCheckpoint = this.numberOfDevelopedStates;
+                if (this.geometry == null)
+                    this.closed.read(in);
+                else
+                    this.table.read(in);
+                if (this.predecessors != null)
+                    this.predecessors.read(in);
+
+                int size = in.readInt();
+                for (int i = 0; i < size; ++i) {
+                    long state = (this.geometry == null) ? PackedState.unrank(in.readInt()) : in.readLong();
+                    int score = in.readInt();
+                    this.opened.push(state, score, in.readInt());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return true;
+    }
 
-        // down
-        if (zi != state.length - 1) {
-            state[zi][zj] = state[zi + 1][zj];
-            state[zi + 1][zj] = 0;
-            node = new Node(
-                matrixToInt(state),
-                parent,
-                this.heuristic.score(state, parent.getLevel() + 1),
-                parent.getLevel() + 1
-            );
-            children[1] = node;
-            state[zi + 1][zj] = state[zi][zj];
-            state[zi][zj] = 0;
+    /**
+     * Rebuilds the chain of nodes of a board other than 3x3 following the
+     * parents kept by the table.
+     * @param state the last state of the path
+     * @param matrixState a matrix used as a buffer to evaluate the states
+     * @return the node of the last state
+     */
+    private Node buildBoardPath(long state, short[][] matrixState) {
+        long[] states = new long[this.table.getLevel(state) + 1];
+        for (int i = states.length - 1; i >= 0; --i) {
+            states[i] = state;
+            state = this.table.getParent(state);
         }
-        
-        // left
-        if (zj != 0) {
-            state[zi][zj] = state[zi][zj - 1];
-            state[zi][zj - 1] = 0;
-            node = new Node(
-                matrixToInt(state),
-                parent,
-                this.heuristic.score(state, parent.getLevel() + 1),
-                parent.getLevel() + 1
-            );
-            children[2] = node;
-            state[zi][zj - 1] = state[zi][zj];
-            state[zi][zj] = 0;
+
+        Node node = null;
+        for (int i = 0; i < states.length; ++i) {
+            byte[] board = new byte[this.geometry.getCells()];
+            this.geometry.unpack(states[i], board);
+            this.geometry.toMatrix(states[i], matrixState);
+            node = new Node(board, node, this.heuristic.score(matrixState, i), i);
         }
-        
-        // right
-        if (zj != state.length - 1) {
-            state[zi][zj] = state[zi][zj + 1];
-            state[zi][zj + 1] = 0;
-            node = new Node(
-                matrixToInt(state),
-                parent,
-                this.heuristic.score(state, parent.getLevel() + 1),
-                parent.getLevel() + 1
-            );
-            children[3] = node;
-            state[zi][zj + 1] = state[zi][zj];
-            state[zi][zj] = 0;
+        return node;
+    }
+
+    /**
+     * Rebuilds the chain of nodes from the initial state to the given state
+     * following the parents kept by the closed set.
+     * @param rank the rank of the last state of the path
+     * @param matrixState a matrix used as a buffer to evaluate the states
+     * @return the node of the last state
+     */
+    private Node buildPath(int rank, short[][] matrixState) {
+        long[] states = new long[this.closed.getLevel(rank) + 1];
+        for (int i = states.length - 1; i >= 0; --i) {
+            states[i] = PackedState.unrank(rank);
+            rank = this.closed.getParent(rank);
         }
+        return buildPath(states, matrixState);
+    }
 
-        return children;
+    /**
+     * Builds the chain of nodes of the states of a path from the initial
+     * state.
+     * @param states the packed states of the path
+     * @param matrixState a matrix used as a buffer to evaluate the states
+     * @return the node of the last state
+     */
+    private Node buildPath(long[] states, short[][] matrixState) {
+        Node node = null;
+        for (int i = 0; i < states.length; ++i) {
+            PackedState.toMatrix(states[i], matrixState);
+            node = new Node(states[i], node, this.heuristic.score(matrixState, i), i);
+        }
+        return node;
     }
 
     public static void intToMatrix(int state, short[][] matrix) {
@@ -217,16 +498,42 @@ public class AStar extends Solver {
         return this.opened;
     }
     public Collection<Node> getClosed() {
+        if (this.geometry != null)
+            return this.table;
         return this.closed;
     }
     public int getNumberOfDevelopedStates() {
         return this.numberOfDevelopedStates;
     }
+    public void setOpenList(OpenList opened) {
+        this.opened = opened;
+    }
+    /**
+     * Chooses how the levels and parents of the states of a 3x3 board are
+     * kept : in the long entries of the closed set (the default, 8 bytes per
+     * rank, 2.9 MB), or in a PredecessorTable holding the move reaching each
+     * state and its level in two byte arrays (2 bytes per rank, 725 KB), a
+     * quarter of the memory, the path being rebuilt by replaying the moves
+     * backwards. The levels then fit in a byte, a search going
+     * deeper than PredecessorTable.MAX_LEVEL (DepthFirst) fails with an
+     * IllegalArgumentException. The boards other than 3x3 always use a
+     * StateTable.
+     * @param compactParents true to use a PredecessorTable
+     */
+    public void setCompactParents(boolean compactParents) {
+        this.compactParents = compactParents;
+    }
     public void setMaxLevel(int maxLevel) {
         this.maxLevel = maxLevel;
     }
     public void setHeuristic(Heuristic heuristic) {
         this.heuristic = heuristic;
+        if (this.geometry != null) {
+            short[][] targetState = new short[this.geometry.getLines()][this.geometry.getColumns()];
+            this.geometry.toMatrix(this.finalBoard, targetState);
+            this.heuristic.setTargetState(targetState);
+            return;
+        }
         short[][] targetState = new short[3][3];
         intToMatrix(this.finalState, targetState);
         this.heuristic.setTargetState(targetState);
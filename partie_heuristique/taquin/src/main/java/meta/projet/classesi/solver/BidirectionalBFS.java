@@ -0,0 +1,219 @@
+package meta.projet.classesi.solver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Implements a bidirectional BFS solver : two breadth first searches grow
+ * from the initial state and from the final state, the smallest frontier
+ * being developed at each step, until they meet. Both searches keep their
+ * visited states, levels and parents in a ClosedSet indexed by the rank of
+ * the states, and their frontiers as arrays of ranks.
+ *
+ */
+public class BidirectionalBFS extends Solver {
+    private int initialState;
+    private int finalState;
+    private int numberOfDevelopedStates;
+
+    private Node solution;
+    private ClosedSet forward;
+    private ClosedSet backward;
+    private int[] forwardFrontier;
+    private int forwardSize;
+    private int[] backwardFrontier;
+    private int backwardSize;
+
+    /**
+     * BidirectionalBFS constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     */
+    public BidirectionalBFS(int initialState, int finalState) {
+        this.initialState = initialState;
+        this.finalState = finalState;
+        this.numberOfDevelopedStates = 0;
+    }
+
+    /**
+     * This method grows the two searches until a state is reached by both of
+     * them, the solution is then the path from the initial state to this
+     * state followed by the path from this state to the final state.
+     * @preturn boolean true if the algorithm found a solution, false otherwise
+     */
+    @Override
+    public boolean solve() {
+        int initialRank = PackedState.rank(PackedState.fromInt(this.initialState));
+        int finalRank = PackedState.rank(PackedState.fromInt(this.finalState));
+
+        this.numberOfDevelopedStates = 0;
+        this.solution = null;
+        this.forward = new ClosedSet(true);
+        this.backward = new ClosedSet(true);
+        this.forward.add(initialRank, 0, ClosedSet.NO_PARENT);
+        this.backward.add(finalRank, 0, ClosedSet.NO_PARENT);
+        this.forwardFrontier = new int[] {initialRank};
+        this.forwardSize = 1;
+        this.backwardFrontier = new int[] {finalRank};
+        this.backwardSize = 1;
+
+        if (initialRank == finalRank) {
+            this.solution = buildPath(initialRank);
+            return true;
+        }
+
+        while (this.forwardSize != 0 && this.backwardSize != 0) {
+            int meeting;
+            if (this.forwardSize <= this.backwardSize) {
+                meeting = developForward();
+            } else {
+                meeting = developBackward();
+            }
+
+            if (meeting >= 0) {
+                this.solution = buildPath(meeting);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Develops the whole frontier of the search from the initial state.
+     * @return the rank of the meeting state giving the shortest path, -1 if
+     *         the searches didn't meet
+     */
+    private int developForward() {
+        int[] next = new int[4 * this.forwardSize];
+        int nextSize = 0;
+        int meeting = -1;
+        int best = Integer.MAX_VALUE;
+
+        for (int i = 0; i < this.forwardSize; ++i) {
+            int rank = this.forwardFrontier[i];
+            long state = PackedState.unrank(rank);
+            int level = this.forward.getLevel(rank) + 1;
+            this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+
+            for (int direction = 0; direction < 4; ++direction) {
+                long child = PackedState.move(state, direction);
+                if (child == PackedState.NONE)
+                    continue;
+                int childRank = PackedState.rank(child);
+                if (this.forward.contains(childRank))
+                    continue;
+                this.forward.add(childRank, level, rank);
+                next[nextSize++] = childRank;
+
+                // the state was already reached from the final state
+                if (this.backward.contains(childRank) && level + this.backward.getLevel(childRank) < best) {
+                    best = level + this.backward.getLevel(childRank);
+                    meeting = childRank;
+                }
+            }
+        }
+
+        this.forwardFrontier = next;
+        this.forwardSize = nextSize;
+        return meeting;
+    }
+
+    /**
+     * Develops the whole frontier of the search from the final state.
+     * @return the rank of the meeting state giving the shortest path, -1 if
+     *         the searches didn't meet
+     */
+    private int developBackward() {
+        int[] next = new int[4 * this.backwardSize];
+        int nextSize = 0;
+        int meeting = -1;
+        int best = Integer.MAX_VALUE;
+
+        for (int i = 0; i < this.backwardSize; ++i) {
+            int rank = this.backwardFrontier[i];
+            long state = PackedState.unrank(rank);
+            int level = this.backward.getLevel(rank) + 1;
+            this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+
+            for (int direction = 0; direction < 4; ++direction) {
+                long child = PackedState.move(state, direction);
+                if (child == PackedState.NONE)
+                    continue;
+                int childRank = PackedState.rank(child);
+                if (this.backward.contains(childRank))
+                    continue;
+                this.backward.add(childRank, level, rank);
+                next[nextSize++] = childRank;
+
+                // the state was already reached from the initial state
+                if (this.forward.contains(childRank) && level + this.forward.getLevel(childRank) < best) {
+                    best = level + this.forward.getLevel(childRank);
+                    meeting = childRank;
+                }
+            }
+        }
+
+        this.backwardFrontier = next;
+        this.backwardSize = nextSize;
+        return meeting;
+    }
+
+    /**
+     * Stitches the parents of the two searches into a single chain of nodes.
+     * @param meeting the rank of a state reached by both searches
+     * @return the node of the final state
+     */
+    private Node buildPath(int meeting) {
+        int forwardLength = this.forward.getLevel(meeting);
+        int length = forwardLength + this.backward.getLevel(meeting);
+        int[] ranks = new int[length + 1];
+
+        int rank = meeting;
+        for (int i = forwardLength; i >= 0; --i) {
+            ranks[i] = rank;
+            rank = this.forward.getParent(rank);
+        }
+        rank = meeting;
+        for (int i = forwardLength; i <= length; ++i) {
+            ranks[i] = rank;
+            rank = this.backward.getParent(rank);
+        }
+
+        Node node = null;
+        for (int i = 0; i <= length; ++i)
+            node = new Node(PackedState.unrank(ranks[i]), node, i, i);
+        return node;
+    }
+
+    @Override
+    public Node getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return the nodes of the two frontiers
+     */
+    @Override
+    public Collection<Node> getOpened() {
+        ArrayList<Node> opened = new ArrayList<Node>();
+        for (int i = 0; i < this.forwardSize; ++i)
+            opened.add(new Node(PackedState.unrank(this.forwardFrontier[i]), null, 0, this.forward.getLevel(this.forwardFrontier[i])));
+        for (int i = 0; i < this.backwardSize; ++i)
+            opened.add(new Node(PackedState.unrank(this.backwardFrontier[i]), null, 0, this.backward.getLevel(this.backwardFrontier[i])));
+        return opened;
+    }
+
+    /**
+     * @return the nodes visited by the two searches
+     */
+    @Override
+    public Collection<Node> getClosed() {
+        ArrayList<Node> closed = new ArrayList<Node>(this.forward);
+        closed.addAll(this.backward);
+        return closed;
+    }
+
+    public int getNumberOfDevelopedStates() {
+        return this.numberOfDevelopedStates;
+    }
+}
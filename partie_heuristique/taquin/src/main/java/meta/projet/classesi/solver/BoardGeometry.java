@@ -0,0 +1,211 @@
+package meta.projet.classesi.solver;
+
+/**
+ * Describes a board of any number of lines and columns (3x3 for the 8-puzzle,
+ * 4x4 for the 15-puzzle, 5x5 for the 24-puzzle ...) : the neighbours of each
+ * cell and the codification of the states.
+ *
+ * The cells are numbered line by line starting from 0, as in PackedState and
+ * in IncrementalHeuristic.delta. Boards of up to 16 cells are packed in a
+ * long where every cell takes 4 bits, the cell 0 being the lowest 4 bits.
+ * Unlike PackedState there is no room left to cache the position of the 0,
+ * it is found by looking for the null 4 bits of the long. Larger boards are
+ * kept as arrays of bytes.
+ */
+public class BoardGeometry {
+    /**
+     * maximum number of cells of a packed board
+     */
+    public static final int MAX_PACKED_CELLS = 16;
+
+    private static final long LOW_BITS = 0x1111111111111111L;
+
+    private int lines;
+    private int columns;
+    private int cells;
+    // neighbours[p][d] is the cell reached when moving the 0 from the cell p
+    // in the direction d (see PackedState.UP ...), or -1
+    private int[][] neighbours;
+    // the lowest bit of each 4 bits used by the cells
+    private long cellsLowBits;
+
+    /**
+     * BoardGeometry constructor.
+     * @param lines the number of lines of the board
+     * @param columns the number of columns of the board
+     */
+    public BoardGeometry(int lines, int columns) {
+        if (lines < 2 || columns < 2)
+            throw new IllegalArgumentException("the board must have at least 2 lines and 2 columns");
+        this.lines = lines;
+        this.columns = columns;
+        this.cells = lines * columns;
+        this.neighbours = new int[this.cells][4];
+        for (int p = 0; p < this.cells; ++p) {
+            int i = p / columns, j = p % columns;
+            this.neighbours[p][PackedState.UP] = (i != 0) ? p - columns : -1;
+            this.neighbours[p][PackedState.DOWN] = (i != lines - 1) ? p + columns : -1;
+            this.neighbours[p][PackedState.LEFT] = (j != 0) ? p - 1 : -1;
+            this.neighbours[p][PackedState.RIGHT] = (j != columns - 1) ? p + 1 : -1;
+        }
+        this.cellsLowBits = (this.cells >= MAX_PACKED_CELLS)
+            ? LOW_BITS
+            : LOW_BITS & ((1L << (this.cells << 2)) - 1);
+    }
+
+    /**
+     * @param matrix a state in a matrix form
+     * @return the geometry of the matrix
+     */
+    public static BoardGeometry of(short[][] matrix) {
+        return new BoardGeometry(matrix.length, matrix[0].length);
+    }
+
+    public int getLines() {
+        return this.lines;
+    }
+
+    public int getColumns() {
+        return this.columns;
+    }
+
+    public int getCells() {
+        return this.cells;
+    }
+
+    /**
+     * @return true if the states of the board fit in a long
+     */
+    public boolean isPacked() {
+        return this.cells <= MAX_PACKED_CELLS;
+    }
+
+    /**
+     * @param p the position of the 0
+     * @param direction one of PackedState.UP, DOWN, LEFT and RIGHT
+     * @return the position of the cell swapped with the 0 when moving it in
+     *         the given direction, -1 if the move isn't possible
+     */
+    public int neighbour(int p, int direction) {
+        return this.neighbours[p][direction];
+    }
+
+    public byte[] fromMatrix(short[][] matrix) {
+        byte[] board = new byte[this.cells];
+        for (int p = 0; p < this.cells; ++p)
+            board[p] = (byte) matrix[p / this.columns][p % this.columns];
+        return board;
+    }
+
+    public void toMatrix(byte[] board, short[][] matrix) {
+        for (int p = 0; p < this.cells; ++p)
+            matrix[p / this.columns][p % this.columns] = board[p];
+    }
+
+    public long pack(byte[] board) {
+        long packed = 0;
+        for (int p = 0; p < this.cells; ++p)
+            packed = packed | ((long) board[p] << (p << 2));
+        return packed;
+    }
+
+    public void unpack(long packed, byte[] board) {
+        for (int p = 0; p < this.cells; ++p)
+            board[p] = (byte) ((packed >>> (p << 2)) & 0xF);
+    }
+
+    public void toMatrix(long packed, short[][] matrix) {
+        for (int p = 0; p < this.cells; ++p)
+            matrix[p / this.columns][p % this.columns] = (short) ((packed >>> (p << 2)) & 0xF);
+    }
+
+    /**
+     * @param packed a packed state
+     * @param p a cell
+     * @return the value of the cell p
+     */
+    public int tile(long packed, int p) {
+        return (int) ((packed >>> (p << 2)) & 0xF);
+    }
+
+    /**
+     * Finds the 0 of a packed state without going through the cells : the 4
+     * bits of each cell are folded on their lowest bit, the only null one is
+     * the cell of the 0.
+     * @param packed a packed state
+     * @return the position of the 0
+     */
+    public int blank(long packed) {
+        long folded = packed | (packed >>> 1) | (packed >>> 2) | (packed >>> 3);
+        return Long.numberOfTrailingZeros(~folded & this.cellsLowBits) >>> 2;
+    }
+
+    /**
+     * Switches the 0 with one of its neighbours.
+     * @param packed a packed state
+     * @param blank the position of the 0
+     * @param target the neighbour of the 0
+     * @return the new packed state
+     */
+    public long move(long packed, int blank, int target) {
+        long tile = (packed >>> (target << 2)) & 0xF;
+        // the cell of the 0 is already cleared, only the target cell needs to be
+        return (packed & ~(0xFL << (target << 2))) | (tile << (blank << 2));
+    }
+
+    /**
+     * A state can be reached from another one if the parity of the
+     * permutation of the cells (the 0 included) between them is the parity of
+     * the number of moves needed to bring the 0 to its place, which is the
+     * manhattan distance between its two positions.
+     * @param initial the first state
+     * @param target the second state
+     * @return true if the target state can be reached from the first one
+     */
+    public boolean isSolvable(byte[] initial, byte[] target) {
+        int[] positions = new int[this.cells];
+        for (int p = 0; p < this.cells; ++p)
+            positions[target[p]] = p;
+
+        // the parity of a permutation is the parity of its number of cycles
+        // of even length
+        boolean[] visited = new boolean[this.cells];
+        int parity = 0;
+        for (int p = 0; p < this.cells; ++p) {
+            if (visited[p])
+                continue;
+            int length = 0;
+            for (int q = p; !visited[q]; q = positions[initial[q]]) {
+                visited[q] = true;
+                length = length + 1;
+            }
+            parity = parity ^ ((length + 1) & 1);
+        }
+
+        int from = 0, to = 0;
+        for (int p = 0; p < this.cells; ++p) {
+            if (initial[p] == 0)
+                from = p;
+            if (target[p] == 0)
+                to = p;
+        }
+        int distance = Math.abs(from / this.columns - to / this.columns)
+            + Math.abs(from % this.columns - to % this.columns);
+        return parity == (distance & 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || o.getClass() != this.getClass())
+            return false;
+        BoardGeometry other = (BoardGeometry) o;
+        return this.lines == other.lines && this.columns == other.columns;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.lines + this.columns;
+    }
+}
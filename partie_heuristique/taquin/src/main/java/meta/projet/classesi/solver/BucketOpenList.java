@@ -0,0 +1,214 @@
+package meta.projet.classesi.solver;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implements the opened list as buckets indexed by the score (Dial's
+ * algorithm) : the scores of the taquin are small integers, so pushing and
+ * popping a state costs O(1) instead of O(log n) for a heap.
+ *
+ * Each score bucket is divided by level, the states with the same score are
+ * removed from the highest level to the lowest one (which is the same as
+ * breaking ties on the lowest heuristic value), and in LIFO order for the
+ * same level. The states are stored as primitive packed longs.
+ *
+ * The levels of a score bucket are indexed from the lowest level pushed in
+ * it, a bucket only spans the levels of its states : the levels of a score
+ * are close to each other with the usual heuristics, but they are not bounded
+ * with a score decreasing with the level (DepthFirst opens a bucket per
+ * level).
+ */
+public class BucketOpenList extends OpenList {
+    private static final int INITIAL_SCORES = 64;
+    private static final int INITIAL_LEVELS = 32;
+    private static final int INITIAL_BUCKET_SIZE = 16;
+
+    // buckets[score - base][level - firsts[score - base]] is a stack of states
+    // of sizes[score - base][level - firsts[score - base]] elements
+    private long[][][] buckets;
+    private int[][] sizes;
+    private int[] firsts;
+    // number of states per score
+    private int[] counts;
+    private int base;
+    // all the buckets before min are empty
+    private int min;
+    private int size;
+    private int lastScore;
+    private int lastLevel;
+
+    public BucketOpenList() {
+        this.buckets = null;
+        this.size = 0;
+    }
+
+    @Override
+    public void push(long state, int score, int level) {
+        if (this.buckets == null)
+            init(score);
+        if (score < this.base)
+            growScores(score - this.base);
+        else if (score - this.base >= this.buckets.length)
+            growScores(score - this.base - this.buckets.length + 1);
+
+        int index = score - this.base;
+        if (this.buckets[index] == null) {
+            this.buckets[index] = new long[INITIAL_LEVELS][];
+            this.sizes[index] = new int[INITIAL_LEVELS];
+            this.firsts[index] = level;
+        } else if (level < this.firsts[index]) {
+            growLevels(index, level - this.firsts[index]);
+        } else if (level - this.firsts[index] >= this.buckets[index].length) {
+            growLevels(index, level - this.firsts[index] - this.buckets[index].length + 1);
+        }
+
+        int offset = level - this.firsts[index];
+        long[] bucket = this.buckets[index][offset];
+        int bucketSize = this.sizes[index][offset];
+        if (bucket == null) {
+            bucket = new long[INITIAL_BUCKET_SIZE];
+            this.buckets[index][offset] = bucket;
+        } else if (bucketSize == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucketSize * 2);
+            this.buckets[index][offset] = bucket;
+        }
+
+        bucket[bucketSize] = state;
+        this.sizes[index][offset] = bucketSize + 1;
+        this.counts[index] = this.counts[index] + 1;
+        this.size = this.size + 1;
+        if (index < this.min)
+            this.min = index;
+    }
+
+    @Override
+    public long pop() {
+        if (this.size == 0)
+            throw new NoSuchElementException();
+
+        while (this.counts[this.min] == 0)
+            this.min = this.min + 1;
+
+        int[] levels = this.sizes[this.min];
+        int level = levels.length - 1;
+        while (levels[level] == 0)
+            level = level - 1;
+
+        levels[level] = levels[level] - 1;
+        this.counts[this.min] = this.counts[this.min] - 1;
+        this.size = this.size - 1;
+        this.lastScore = this.min + this.base;
+        this.lastLevel = level + this.firsts[this.min];
+        return this.buckets[this.min][level][levels[level]];
+    }
+
+    @Override
+    public int getLastScore() {
+        return this.lastScore;
+    }
+
+    @Override
+    public int getLastLevel() {
+        return this.lastLevel;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void clear() {
+        this.buckets = null;
+        this.sizes = null;
+        this.firsts = null;
+        this.counts = null;
+        this.size = 0;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return new Iterator<Node>() {
+            private int index = 0;
+            private int level = 0;
+            private int position = 0;
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return this.remaining > 0;
+            }
+
+            @Override
+            public Node next() {
+                if (this.remaining == 0)
+                    throw new NoSuchElementException();
+                while (sizes[this.index] == null || this.level >= sizes[this.index].length
+                        || this.position >= sizes[this.index][this.level]) {
+                    this.position = 0;
+                    if (sizes[this.index] == null || ++this.level >= sizes[this.index].length) {
+                        this.level = 0;
+                        this.index = this.index + 1;
+                    }
+                }
+                this.remaining = this.remaining - 1;
+                long state = buckets[this.index][this.level][this.position++];
+                return toNode(state, this.index + base, this.level + firsts[this.index]);
+            }
+        };
+    }
+
+    private void init(int score) {
+        this.buckets = new long[INITIAL_SCORES][][];
+        this.sizes = new int[INITIAL_SCORES][];
+        this.firsts = new int[INITIAL_SCORES];
+        this.counts = new int[INITIAL_SCORES];
+        this.base = score;
+        this.min = 0;
+    }
+
+    /**
+     * Adds buckets after the last one if n is positive, or before the first
+     * one if n is negative.
+     */
+    private void growScores(int n) {
+        int length = this.buckets.length + Math.max(Math.abs(n), this.buckets.length);
+        int offset = (n < 0) ? length - this.buckets.length : 0;
+
+        long[][][] newBuckets = new long[length][][];
+        int[][] newSizes = new int[length][];
+        int[] newFirsts = new int[length];
+        int[] newCounts = new int[length];
+        System.arraycopy(this.buckets, 0, newBuckets, offset, this.buckets.length);
+        System.arraycopy(this.sizes, 0, newSizes, offset, this.sizes.length);
+        System.arraycopy(this.firsts, 0, newFirsts, offset, this.firsts.length);
+        System.arraycopy(this.counts, 0, newCounts, offset, this.counts.length);
+
+        this.buckets = newBuckets;
+        this.sizes = newSizes;
+        this.firsts = newFirsts;
+        this.counts = newCounts;
+        this.base = this.base - offset;
+        this.min = this.min + offset;
+    }
+
+    /**
+     * Adds levels after the last one of a score bucket if n is positive, or
+     * before its first one if n is negative.
+     */
+    private void growLevels(int index, int n) {
+        int length = this.buckets[index].length + Math.max(Math.abs(n), this.buckets[index].length);
+        int offset = (n < 0) ? length - this.buckets[index].length : 0;
+
+        long[][] newBuckets = new long[length][];
+        int[] newSizes = new int[length];
+        System.arraycopy(this.buckets[index], 0, newBuckets, offset, this.buckets[index].length);
+        System.arraycopy(this.sizes[index], 0, newSizes, offset, this.sizes[index].length);
+
+        this.buckets[index] = newBuckets;
+        this.sizes[index] = newSizes;
+        this.firsts[index] = this.firsts[index] - offset;
+    }
+}
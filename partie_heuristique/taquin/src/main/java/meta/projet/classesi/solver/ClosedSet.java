@@ -0,0 +1,236 @@
+package meta.projet.classesi.solver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implements the closed list of the solvers as a bitmap of 9! bits indexed by
+ * the rank of the states (see PackedState.rank and Node.hashCode), so testing
+ * and adding a state costs a shift and a mask instead of hashing a Node.
+ *
+ * Optionally the set keeps, in a parallel long array, the best level (g
+ * value) reached for each state and the rank of its parent : the level plus
+ * one takes the 32 upper bits and the parent rank the 32 lower bits of each
+ * entry, an entry of 0 meaning that nothing was recorded for the state. The
+ * levels are not bounded by the depth of the space (the DepthFirst heuristic
+ * reaches tens of thousands), so they don't share an int with the parent.
+ *
+ * The set can still be used as a Collection of nodes, the nodes returned when
+ * iterating over it are rebuilt from the ranks (without parents).
+ */
+public class ClosedSet extends AbstractCollection<Node> {
+    /**
+     * parent rank of the states added without a parent
+     */
+    public static final int NO_PARENT = (1 << 19) - 1;
+
+    /**
+     * highest level an entry can hold
+     */
+    public static final int MAX_LEVEL = Integer.MAX_VALUE - 1;
+
+    private static final int PARENT_BITS = 32;
+    private static final long PARENT_MASK = (1L << PARENT_BITS) - 1;
+    // flag of the ranks of the states in the set written by write
+    private static final int IN_SET = 1 << 31;
+
+    private long[] bitmap;
+    private long[] entries;
+    private int size;
+
+    /**
+     * ClosedSet constructor, the levels and parents are not kept.
+     */
+    public ClosedSet() {
+        this(false);
+    }
+
+    /**
+     * ClosedSet constructor.
+     * @param trackParents if true the best level and the parent of each state
+     *                     are kept (2.9 MB more)
+     */
+    public ClosedSet(boolean trackParents) {
+        this.bitmap = new long[(PackedState.STATES + 63) >>> 6];
+        this.entries = trackParents ? new long[PackedState.STATES] : null;
+        this.size = 0;
+    }
+
+    public boolean contains(int rank) {
+        return (this.bitmap[rank >>> 6] & (1L << rank)) != 0;
+    }
+
+    /**
+     * Adds a state to the set.
+     * @param rank the rank of the state
+     * @return true if the state was not already in the set
+     */
+    public boolean add(int rank) {
+        long word = this.bitmap[rank >>> 6];
+        long bit = 1L << rank;
+        if ((word & bit) != 0)
+            return false;
+        this.bitmap[rank >>> 6] = word | bit;
+        this.size = this.size + 1;
+        return true;
+    }
+
+    /**
+     * Adds a state to the set and records its level and parent.
+     * @param rank the rank of the state
+     * @param level the level of the state
+     * @param parent the rank of the parent state, NO_PARENT for the root
+     * @return true if the state was not already in the set, the level and
+     *         parent of a state already in the set are kept
+     */
+    public boolean add(int rank, int level, int parent) {
+        if (!add(rank))
+            return false;
+        record(rank, level, parent);
+        return true;
+    }
+
+    /**
+     * Records the level and the parent of a state without adding it to the
+     * set, it is used to keep the best known level of opened states.
+     * @throws IllegalArgumentException if the level is not between 0 and
+     *         MAX_LEVEL or the parent is not a rank or NO_PARENT
+     */
+    public void record(int rank, int level, int parent) {
+        if (level < 0 || level > MAX_LEVEL)
+            throw new IllegalArgumentException("the level " + level + " is not between 0 and " + MAX_LEVEL);
+        if (parent < 0 || (parent >= PackedState.STATES && parent != NO_PARENT))
+            throw new IllegalArgumentException(parent + " is not the rank of a parent");
+        this.entries[rank] = ((long) (level + 1) << PARENT_BITS) | parent;
+    }
+
+    /**
+     * @return true if a level was recorded for the state (with record or add)
+     */
+    public boolean isRecorded(int rank) {
+        return this.entries[rank] != 0;
+    }
+
+    public int getLevel(int rank) {
+        return (int) (this.entries[rank] >>> PARENT_BITS) - 1;
+    }
+
+    public int getParent(int rank) {
+        return (int) (this.entries[rank] & PARENT_MASK);
+    }
+
+    public boolean isTrackingParents() {
+        return this.entries != null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Node))
+            return false;
+        return contains(o.hashCode());
+    }
+
+    @Override
+    public boolean add(Node node) {
+        if (this.entries == null)
+            return add(node.hashCode());
+
+        int parent = (node.getParent() == null) ? NO_PARENT : node.getParent().hashCode();
+        return add(node.hashCode(), node.getLevel(), parent);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.bitmap, 0);
+        if (this.entries != null)
+            Arrays.fill(this.entries, 0);
+        this.size = 0;
+    }
+
+    /**
+     * Writes the states of the set and the states having a recorded level,
+     * each one as its rank (flagged if it is in the set) followed by its
+     * level and parent if they are kept.
+     */
+    public void write(DataOutput out) throws IOException {
+        int count = 0;
+        for (int rank = 0; rank < PackedState.STATES; ++rank)
+            if (contains(rank) || (this.entries != null && this.entries[rank] != 0))
+                count = count + 1;
+
+        out.writeBoolean(this.entries != null);
+        out.writeInt(count);
+        for (int rank = 0; rank < PackedState.STATES; ++rank) {
+            boolean recorded = this.entries != null && this.entries[rank] != 0;
+            if (!contains(rank) && !recorded)
+                continue;
+            out.writeInt(contains(rank) ? rank | IN_SET : rank);
+            if (this.entries != null)
+                out.writeLong(this.entries[rank]);
+        }
+    }
+
+    /**
+     * Replaces the content of the set by the one written by write.
+     * @throws IllegalArgumentException if the set doesn't keep the levels and
+     *         parents as the written one
+     */
+    public void read(DataInput in) throws IOException {
+        if (in.readBoolean() != (this.entries != null))
+            throw new IllegalArgumentException("the levels and parents are not kept by both sets");
+        clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            int rank = in.readInt();
+            if (this.entries != null)
+                this.entries[rank & ~IN_SET] = in.readLong();
+            if ((rank & IN_SET) != 0)
+                add(rank & ~IN_SET);
+        }
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return new Iterator<Node>() {
+            private int next = nextRank(0);
+
+            @Override
+            public boolean hasNext() {
+                return this.next >= 0;
+            }
+
+            @Override
+            public Node next() {
+                if (this.next < 0)
+                    throw new NoSuchElementException();
+                int rank = this.next;
+                this.next = nextRank(rank + 1);
+                int level = (entries == null) ? 0 : getLevel(rank);
+                return new Node(PackedState.unrank(rank), null, 0, level);
+            }
+        };
+    }
+
+    private int nextRank(int from) {
+        int index = from >>> 6;
+        if (index >= this.bitmap.length)
+            return -1;
+        long word = this.bitmap[index] & (-1L << from);
+        while (word == 0) {
+            if (++index == this.bitmap.length)
+                return -1;
+            word = this.bitmap[index];
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+}
@@ -3,16 +3,22 @@ package meta.projet.classesi.solver;
 
 import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.HashSet;
 
 public class DFS extends Solver {
 
+    /**
+     * the order in which the 0 is moved when developing a state
+     */
+    private static final int[] DIRECTIONS = {
+        PackedState.LEFT, PackedState.RIGHT, PackedState.UP, PackedState.DOWN
+    };
+
     private Node Initial;
     private int Final;
 
     private Node solution;
     private ArrayDeque<Node> opened;
-    private HashSet<Node> closed;
+    private ClosedSet closed;
     private int depthMax;
     private int numberOfDevelopedStates;
     
@@ -27,7 +33,7 @@ public class DFS extends Solver {
         this.Initial = new Node(initialState,null,0,0);
         this.Final = finalState;
         this.solution = this.Initial;
-        this.closed = new HashSet<Node>();
+        this.closed = new ClosedSet();
         this.closed.add(this.Initial);
         this.opened = new ArrayDeque<Node>();
         this.depthMax = depthMax;
@@ -74,8 +80,10 @@ public class DFS extends Solver {
     @Override
     public boolean solve() {
         this.numberOfDevelopedStates = 0;
+        long finalPacked = PackedState.fromInt(Final);
+        int finalRank = PackedState.rank(finalPacked);
     opened.add(this.solution);    
-    while((opened.size() != 0) &&(!closed.contains(new Node(Final, solution, 0, solution.getLevel()+1)))){
+    while((opened.size() != 0) &&(!closed.contains(finalRank))){
         //We devellop a new node and run the loop again until oppened is empty or if found the solution
         solution = opened.removeFirst();//the new solution is the head of the stack
         this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
@@ -83,90 +91,28 @@ public class DFS extends Solver {
         if (solution.getLevel() > this.depthMax) continue;
         
          /**
-          * Retrieve all the adjacent value of the 0 in the matrix
-          * (Check the position method in the Codification class for more details)
+          * Retrieve the packed form of the current state, its neighbours are
+          * then computed by moving the 0 to the left, right, up and down
+          * (Check the move method in the PackedState class for more details)
           */
-        int Allpos = Codification.position(this.solution.getState());
-        int zpos = (Allpos / 10000) % 10;
-        int LeftCellVal = (Allpos / 1000) % 10, lcv = 0;
-        int RightCellVal = (Allpos / 100) % 10, rcv = 0;
-        int UpCellVal = (Allpos / 10) % 10, ucv = 0;
-        int DownCellVal = Allpos % 10, dcv = 0;
-        
-        //If the adjacent left cell exist
-        if(LeftCellVal != 0){
-            //We switch the value of the left cell and the 0 to get a new state
-            lcv = Codification.SwitchCell(solution.getState(),zpos,zpos - 1,LeftCellVal);
-            //if this state is the final state
-            if(lcv == Final)
-            {//We add the state to closed and we return true
-                closed.add(new Node(Final, solution, 0, solution.getLevel()+1));
-                return true;
-            }
-            else
-            {//If the state isn't in closed (not a visited node)
-                Node n = new Node(lcv, solution, 0, solution.getLevel()+1);
-                if(!closed.contains(n)){ 
-                //We add the state to opened
-                    opened.addFirst(n);
-                }
-            }
-        }
-        //If the adjacent right cell exist
-        if(RightCellVal != 0){
-            //We switch the value of the right cell and the 0 to get a new state
-            rcv = Codification.SwitchCell(solution.getState(),zpos,zpos + 1,RightCellVal);
-            //if this state is the final state
-            if(rcv == Final)
-            {//We add the state to closed and we return true
-                closed.add(new Node(Final, solution, 0, solution.getLevel()+1));
-                return true;
-            }
-            else
-            {//If the state isn't in closed (not a visited node)
-                Node n = new Node(rcv, solution, 0, solution.getLevel()+1);
-                if(!closed.contains(n)){
-                    //We add the state to opened
-                    opened.addFirst(n);
-                }
-            }
-        }
-        //If the adjacent upper cell exist
-        if(UpCellVal != 0){
-            //We switch the value of the upper cell and the 0 to get a new state
-            ucv = Codification.SwitchCell(solution.getState(),zpos,zpos - 3,UpCellVal);
-            //if this state is the final state
-            if(ucv == Final)
-            {//We add the state to closed and we return true
-                closed.add(new Node(Final, solution, 0, solution.getLevel()+1));
-                return true;
-            }
-            else
-            {//If the state isn't in closed (not a visited node)
-                Node n = new Node(ucv, solution, 0, solution.getLevel()+1);
-                if(!closed.contains(n)){
-                    //We add the state to opened
-                    opened.addFirst(n);
+        long current = this.solution.getPacked();
 
-                }
-            }
-        }
-        //If the adjacent left cell exist
-        if(DownCellVal != 0)
-        {//We switch the value of the left cell and the 0 to get a new state
-            dcv = Codification.SwitchCell(solution.getState(),zpos,zpos + 3,DownCellVal);
+        for (int direction : DIRECTIONS) {
+            long child = PackedState.move(current, direction);
+            //If the adjacent cell doesn't exist
+            if (child == PackedState.NONE)
+                continue;
             //if this state is the final state
-            if(dcv == Final)
+            if(child == finalPacked)
             {//We add the state to closed and we return true
-                closed.add(new Node(Final, solution, 0, solution.getLevel()+1));
+                closed.add(finalRank);
                 return true;
             }
             else
             {//If the state isn't in closed (not a visited node)
-                Node n = new Node(dcv, solution, 0, solution.getLevel()+1);
-                if(!closed.contains(n)){
-                     //We add the state to opened
-                    opened.addFirst(n);
+                if(!closed.contains(PackedState.rank(child))){ 
+                //We add the state to opened
+                    opened.addFirst(new Node(child, solution, 0, solution.getLevel()+1));
                 }
             }
         }
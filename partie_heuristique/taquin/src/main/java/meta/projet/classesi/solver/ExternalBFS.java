@@ -0,0 +1,487 @@
+package meta.projet.classesi.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Implements a BFS solver keeping the levels on disk, with delayed duplicate
+ * detection, for the boards of up to 16 cells (see BoardGeometry) : the heap
+ * only holds a buffer of children of a fixed size, so the search can explore
+ * spaces much larger than the memory.
+ *
+ * Each level is a file of the packed states of the level sorted in
+ * increasing order. A level is developed by reading its file, the children
+ * are added to the buffer which is sorted and written as a run (a sorted file
+ * of states without duplicates) each time it is full. The runs are then
+ * merged into the file of the next level, the duplicates being removed and
+ * the states of the two previous levels skipped while merging, as every
+ * neighbour of a state of a level is in the previous level, the level itself
+ * or the next one.
+ *
+ * The files are read through memory mapped windows of MAP_SIZE bytes, the
+ * runs are written through memory mapped buffers (their size is known when
+ * they are written) and the levels through a buffered stream. The levels are
+ * kept until the end of the search to rebuild the path : each state of the
+ * path is a neighbour of the next one found in the previous level by a binary
+ * search in its file.
+ */
+public class ExternalBFS extends Solver {
+
+    /**
+     * the order in which the 0 is moved when developing a state
+     */
+    private static final int[] DIRECTIONS = {
+        PackedState.LEFT, PackedState.RIGHT, PackedState.UP, PackedState.DOWN
+    };
+
+    // default number of children sorted in memory before being written as a run
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+    // bytes of a file mapped at once
+    private static final int MAP_SIZE = 1 << 26;
+
+    private BoardGeometry geometry;
+    private byte[] initialBoard;
+    private byte[] finalBoard;
+    private File directory;
+    private int bufferSize;
+
+    private Node solution;
+    private long numberOfDevelopedStates;
+    private long[] levelSizes;
+    private int numberOfLevels;
+    private int numberOfRuns;
+    private File files;
+
+    /**
+     * ExternalBFS constructor for the 3x3 board.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param directory the directory of the files of the levels and runs
+     */
+    public ExternalBFS(int initialState, int finalState, File directory) {
+        this(toMatrix(initialState), toMatrix(finalState), directory);
+    }
+
+    /**
+     * ExternalBFS constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param directory the directory of the files of the levels and runs
+     * @throws IllegalArgumentException if the board has more than 16 cells
+     */
+    public ExternalBFS(short[][] initialState, short[][] finalState, File directory) {
+        this.geometry = BoardGeometry.of(initialState);
+        if (!this.geometry.isPacked())
+            throw new IllegalArgumentException("ExternalBFS only supports boards of up to "
+                + BoardGeometry.MAX_PACKED_CELLS + " cells");
+        this.initialBoard = this.geometry.fromMatrix(initialState);
+        this.finalBoard = this.geometry.fromMatrix(finalState);
+        this.directory = directory;
+        this.bufferSize = DEFAULT_BUFFER_SIZE;
+        this.numberOfDevelopedStates = 0;
+    }
+
+    private static short[][] toMatrix(int state) {
+        short[][] matrix = new short[3][3];
+        AStar.intToMatrix(state, matrix);
+        return matrix;
+    }
+
+    /**
+     * @param bufferSize the number of children sorted in memory before being
+     *        written as a run, 2^22 (32 MB) by default
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 4)
+            throw new IllegalArgumentException("the buffer must hold the children of a state");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * This method develops the levels from the initialState until the
+     * finalState is generated. As for BFS, the solution stored in the
+     * solution member attribute is the parent of the final state. The states
+     * of a level are developed in the order of their packed form, so the
+     * number of developed states may differ from the one of BFS in the last
+     * level.
+     * The files are created in a new subdirectory of the directory, which is
+     * removed before returning.
+     * @preturn boolean true if the algorithm found a solution, false otherwise
+     */
+    @Override
+    public boolean solve() {
+        long initial = this.geometry.pack(this.initialBoard);
+        long target = this.geometry.pack(this.finalBoard);
+
+        this.solution = null;
+        this.numberOfDevelopedStates = 0;
+        this.levelSizes = new long[32];
+        this.numberOfLevels = 0;
+        this.numberOfRuns = 0;
+
+        // as BFS, the final state is only looked for among the children, and
+        // the search would never end if it is not reachable
+        if (initial == target || !this.geometry.isSolvable(this.initialBoard, this.finalBoard))
+            return false;
+
+        try {
+            this.files = Files.createTempDirectory(this.directory.toPath(), "bfs").toFile();
+            try {
+                long[] buffer = new long[this.bufferSize];
+                buffer[0] = initial;
+                addLevel(writeRun(levelFile(0), buffer, 1));
+
+                while (this.levelSizes[this.numberOfLevels - 1] != 0) {
+                    long parent = develop(this.numberOfLevels - 1, target, buffer);
+                    if (parent != PackedState.NONE) {
+                        this.solution = buildPath(parent, this.numberOfLevels - 1);
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                for (File file : this.files.listFiles())
+                    file.delete();
+                this.files.delete();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Develops a level, its children forming the next level.
+     * @return the state of the level generating the final state, NONE if it
+     *         isn't generated
+     */
+    private long develop(int level, long target, long[] buffer) throws IOException {
+        List<File> runs = new ArrayList<File>();
+        int size = 0;
+        StateReader states = new StateReader(levelFile(level));
+        try {
+            while (states.next()) {
+                long state = states.getState();
+                int blank = this.geometry.blank(state);
+                this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+                for (int direction : DIRECTIONS) {
+                    int cell = this.geometry.neighbour(blank, direction);
+                    if (cell < 0)
+                        continue;
+                    long child = this.geometry.move(state, blank, cell);
+                    if (child == target)
+                        return state;
+                    if (size == buffer.length) {
+                        runs.add(newRun(buffer, size));
+                        size = 0;
+                    }
+                    buffer[size++] = child;
+                }
+            }
+        } finally {
+            states.close();
+        }
+        runs.add(newRun(buffer, size));
+
+        addLevel(merge(runs, level));
+        for (File run : runs)
+            run.delete();
+        return PackedState.NONE;
+    }
+
+    /**
+     * Sorts the buffer and writes it as a run.
+     */
+    private File newRun(long[] buffer, int size) throws IOException {
+        Arrays.sort(buffer, 0, size);
+        File run = new File(this.files, "run-" + this.numberOfRuns + ".bin");
+        this.numberOfRuns = this.numberOfRuns + 1;
+        writeRun(run, buffer, size);
+        return run;
+    }
+
+    /**
+     * Writes the states of a sorted array, without duplicates, through
+     * memory mapped buffers.
+     * @return the number of states written
+     */
+    private static long writeRun(File file, long[] states, int size) throws IOException {
+        int distinct = 0;
+        for (int i = 0; i < size; ++i)
+            if (i == 0 || states[i] != states[distinct - 1])
+                states[distinct++] = states[i];
+
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = output.getChannel();
+            long length = 8L * distinct;
+            int i = 0;
+            for (long position = 0; position < length; position = position + MAP_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                    Math.min(MAP_SIZE, length - position));
+                while (window.hasRemaining())
+                    window.putLong(states[i++]);
+            }
+        } finally {
+            output.close();
+        }
+        return distinct;
+    }
+
+    /**
+     * Merges the runs into the file of the level following the given one,
+     * skipping the duplicates and the states of the level and of the previous
+     * one.
+     * @return the number of states of the new level
+     */
+    private long merge(List<File> runs, int level) throws IOException {
+        StateReader[] readers = new StateReader[runs.size()];
+        StateReader current = new StateReader(levelFile(level));
+        StateReader previous = (level > 0) ? new StateReader(levelFile(level - 1)) : null;
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(levelFile(level + 1)), 1 << 16));
+        long size = 0;
+        try {
+            // heap of the readers which are not empty, by their current state
+            int heapSize = 0;
+            for (int r = 0; r < readers.length; ++r) {
+                readers[r] = new StateReader(runs.get(r));
+                if (readers[r].next())
+                    readers[heapSize++] = readers[r];
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; --i)
+                siftDown(readers, i, heapSize);
+            current.next();
+            if (previous != null)
+                previous.next();
+
+            long last = PackedState.NONE;
+            while (heapSize > 0) {
+                long state = readers[0].getState();
+                if (readers[0].next()) {
+                    siftDown(readers, 0, heapSize);
+                } else {
+                    heapSize = heapSize - 1;
+                    StateReader empty = readers[0];
+                    readers[0] = readers[heapSize];
+                    readers[heapSize] = empty;
+                    siftDown(readers, 0, heapSize);
+                }
+
+                if (state == last)
+                    continue;
+                last = state;
+                if (current.skipTo(state) || (previous != null && previous.skipTo(state)))
+                    continue;
+                output.writeLong(state);
+                size = size + 1;
+            }
+        } finally {
+            output.close();
+            current.close();
+            if (previous != null)
+                previous.close();
+            for (StateReader reader : readers)
+                if (reader != null)
+                    reader.close();
+        }
+        return size;
+    }
+
+    private static void siftDown(StateReader[] heap, int i, int size) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1].getState() < heap[child].getState())
+                child = child + 1;
+            if (heap[i].getState() <= heap[child].getState())
+                return;
+            StateReader tmp = heap[i];
+            heap[i] = heap[child];
+            heap[child] = tmp;
+            i = child;
+        }
+    }
+
+    /**
+     * Rebuilds the chain of nodes from the initial state to a state of the
+     * given level, the parent of each state being one of its neighbours in
+     * the previous level.
+     */
+    private Node buildPath(long state, int level) throws IOException {
+        long[] states = new long[level + 1];
+        states[level] = state;
+        ByteBuffer read = ByteBuffer.allocate(8);
+        for (int l = level - 1; l >= 0; --l) {
+            RandomAccessFile file = new RandomAccessFile(levelFile(l), "r");
+            try {
+                int blank = this.geometry.blank(states[l + 1]);
+                for (int direction : DIRECTIONS) {
+                    int cell = this.geometry.neighbour(blank, direction);
+                    if (cell < 0)
+                        continue;
+                    long parent = this.geometry.move(states[l + 1], blank, cell);
+                    if (contains(file.getChannel(), parent, read)) {
+                        states[l] = parent;
+                        break;
+                    }
+                }
+            } finally {
+                file.close();
+            }
+        }
+
+        Node node = null;
+        for (int l = 0; l <= level; ++l) {
+            byte[] board = new byte[this.geometry.getCells()];
+            this.geometry.unpack(states[l], board);
+            node = new Node(board, node, 0, l);
+        }
+        return node;
+    }
+
+    /**
+     * @return true if the sorted file holds the state
+     */
+    private static boolean contains(FileChannel channel, long state, ByteBuffer read) throws IOException {
+        long low = 0;
+        long high = channel.size() / 8 - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            read.clear();
+            while (read.hasRemaining())
+                channel.read(read, 8 * middle + read.position());
+            long value = read.getLong(0);
+            if (value == state)
+                return true;
+            if (value < state)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return false;
+    }
+
+    private File levelFile(int level) {
+        return new File(this.files, "level-" + level + ".bin");
+    }
+
+    private void addLevel(long size) {
+        if (this.numberOfLevels == this.levelSizes.length)
+            this.levelSizes = Arrays.copyOf(this.levelSizes, 2 * this.levelSizes.length);
+        this.levelSizes[this.numberOfLevels] = size;
+        this.numberOfLevels = this.numberOfLevels + 1;
+    }
+
+    /**
+     * Reads the states of a file in order through memory mapped windows.
+     */
+    private static class StateReader {
+        private RandomAccessFile file;
+        private long length;
+        private long position;
+        private MappedByteBuffer window;
+        private long state;
+
+        StateReader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.length = this.file.length();
+            this.position = 0;
+        }
+
+        /**
+         * Reads the next state.
+         * @return false if the end of the file is reached
+         */
+        boolean next() throws IOException {
+            if (this.window == null || !this.window.hasRemaining()) {
+                if (this.position == this.length)
+                    return false;
+                int size = (int) Math.min(MAP_SIZE, this.length - this.position);
+                this.window = this.file.getChannel().map(FileChannel.MapMode.READ_ONLY, this.position, size);
+                this.position = this.position + size;
+            }
+            this.state = this.window.getLong();
+            return true;
+        }
+
+        /**
+         * Reads the states lower than the given one.
+         * @return true if the file holds the given state
+         */
+        boolean skipTo(long state) throws IOException {
+            while (this.state < state) {
+                if (!next()) {
+                    // no state of the file is left
+                    this.state = Long.MAX_VALUE;
+                    return false;
+                }
+            }
+            return this.state == state;
+        }
+
+        long getState() {
+            return this.state;
+        }
+
+        void close() throws IOException {
+            this.window = null;
+            this.file.close();
+        }
+    }
+
+    @Override
+    public Node getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return an empty collection, the levels are only kept on disk
+     */
+    @Override
+    public Collection<Node> getOpened() {
+        return Collections.<Node>emptyList();
+    }
+
+    /**
+     * @return an empty collection, the levels are only kept on disk
+     */
+    @Override
+    public Collection<Node> getClosed() {
+        return Collections.<Node>emptyList();
+    }
+
+    public long getNumberOfDevelopedStates() {
+        return this.numberOfDevelopedStates;
+    }
+
+    /**
+     * @return the number of states of each level written
+     */
+    public long[] getLevelSizes() {
+        return Arrays.copyOf(this.levelSizes, this.numberOfLevels);
+    }
+
+    public int getNumberOfLevels() {
+        return this.numberOfLevels;
+    }
+
+    /**
+     * @return the number of runs written by the last search
+     */
+    public int getNumberOfRuns() {
+        return this.numberOfRuns;
+    }
+}
@@ -0,0 +1,66 @@
+package meta.projet.classesi.solver;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Implements the opened list with a java.util.PriorityQueue of nodes ordered
+ * by Node.compareTo, it is the opened list AStar used before BucketOpenList
+ * and is kept to compare the two.
+ */
+public class HeapOpenList extends OpenList {
+    private PriorityQueue<Node> queue;
+    private Node last;
+
+    public HeapOpenList() {
+        this.queue = new PriorityQueue<Node>();
+    }
+
+    @Override
+    public void push(long state, int score, int level) {
+        this.queue.add(new Node(state, null, score, level));
+    }
+
+    @Override
+    public long pop() {
+        this.last = this.queue.poll();
+        return this.last.getPacked();
+    }
+
+    @Override
+    public int getLastScore() {
+        return this.last.getScore();
+    }
+
+    @Override
+    public int getLastLevel() {
+        return this.last.getLevel();
+    }
+
+    @Override
+    public int size() {
+        return this.queue.size();
+    }
+
+    @Override
+    public void clear() {
+        this.queue.clear();
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        final Iterator<Node> nodes = this.queue.iterator();
+        return new Iterator<Node>() {
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public Node next() {
+                Node node = nodes.next();
+                return toNode(node.getPacked(), node.getScore(), node.getLevel());
+            }
+        };
+    }
+}
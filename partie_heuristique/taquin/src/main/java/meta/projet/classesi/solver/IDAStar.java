@@ -0,0 +1,256 @@
+package meta.projet.classesi.solver;
+
+import meta.projet.classesi.solver.heuristic.Heuristic;
+import meta.projet.classesi.solver.heuristic.IncrementalHeuristic;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Implements IDAStar solver : successive depth first searches bounded by the
+ * score of the states, the bound being raised to the lowest score that
+ * exceeded it until the final state is reached. Only the current path is kept
+ * in memory, the moves are applied on a single matrix and undone when
+ * backtracking, so no Node is created during the search.
+ *
+ * The board can be of any size (see BoardGeometry), the 15-puzzle and the
+ * 24-puzzle being solved with a PatternDatabase or MinMoves.
+ *
+ */
+public class IDAStar extends Solver {
+    private static final int FOUND = -1;
+
+    private BoardGeometry geometry;
+    private byte[] initialBoard;
+    private byte[] finalBoard;
+    private Heuristic heuristic;
+    private int numberOfDevelopedStates;
+
+    private Node solution;
+
+    // state of the current search
+    private short[][] state;
+    private short[][] targetState;
+    private int blank;
+    private int missPlaced;
+    private IncrementalHeuristic incremental;
+    // path[l] is the direction in which the 0 was moved at the level l
+    private int[] path;
+    private int solutionLength;
+
+    /**
+     * IDAStar constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param heuristic the heuristic that the solver will use to evaluate states
+     *                  valide values are objects of the classes :
+     *                  - MinMoves
+     *                  - MissPlaced
+     *                  - PatternDatabase
+     *                  - DistanceOracle
+     */
+    public IDAStar(int initialState, int finalState, Heuristic heuristic) {
+        this(toMatrix(initialState), toMatrix(finalState), heuristic);
+    }
+
+    /**
+     * IDAStar constructor for a board of any size.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param heuristic the heuristic that the solver will use to evaluate states
+     */
+    public IDAStar(short[][] initialState, short[][] finalState, Heuristic heuristic) {
+        this.geometry = BoardGeometry.of(initialState);
+        this.initialBoard = this.geometry.fromMatrix(initialState);
+        this.finalBoard = this.geometry.fromMatrix(finalState);
+        this.heuristic = heuristic;
+        this.numberOfDevelopedStates = 0;
+
+        this.targetState = new short[this.geometry.getLines()][this.geometry.getColumns()];
+        this.geometry.toMatrix(this.finalBoard, this.targetState);
+        this.heuristic.setTargetState(this.targetState);
+    }
+
+    private static short[][] toMatrix(int state) {
+        short[][] matrix = new short[3][3];
+        AStar.intToMatrix(state, matrix);
+        return matrix;
+    }
+
+    /**
+     * This method uses IDAStar algorithm to find the sequence of actions to
+     * reach the finalState from the initialState. The solution if found will
+     * be stored in solution member attribute.
+     * @preturn boolean true if the algorithm found a solution, false otherwise
+     */
+    @Override
+    public boolean solve() {
+        int columns = this.geometry.getColumns();
+
+        this.numberOfDevelopedStates = 0;
+        this.solution = null;
+        // the search would never end if the final state is not reachable
+        if (!this.geometry.isSolvable(this.initialBoard, this.finalBoard))
+            return false;
+
+        this.state = new short[this.geometry.getLines()][columns];
+        this.geometry.toMatrix(this.initialBoard, this.state);
+        this.incremental = (this.heuristic instanceof IncrementalHeuristic)
+            ? (IncrementalHeuristic) this.heuristic : null;
+        this.missPlaced = 0;
+        for (int p = 0; p < this.geometry.getCells(); ++p) {
+            if (this.initialBoard[p] == 0)
+                this.blank = p;
+            if (this.state[p / columns][p % columns] != this.targetState[p / columns][p % columns])
+                this.missPlaced = this.missPlaced + 1;
+        }
+
+        int score = this.heuristic.score(this.state, 0);
+        int bound = score;
+        this.path = new int[0];
+
+        while (true) {
+            if (this.path.length <= bound)
+                this.path = new int[bound + 1];
+
+            int next = search(0, score, bound, -1);
+            if (next == FOUND) {
+                this.solution = buildPath();
+                return true;
+            }
+            bound = next;
+        }
+    }
+
+    /**
+     * Depth first search from the current state.
+     * @param level the level of the current state
+     * @param score the score of the current state
+     * @param bound the maximum score of the states to develop
+     * @param lastDirection the direction of the move that led to the current
+     *                      state, the opposite move is not developed
+     * @return FOUND if the final state was reached, the lowest score above the
+     *         bound otherwise
+     */
+    private int search(int level, int score, int bound, int lastDirection) {
+        if (score > bound)
+            return score;
+        if (this.missPlaced == 0) {
+            this.solutionLength = level;
+            return FOUND;
+        }
+
+        this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+        int min = Integer.MAX_VALUE;
+        for (int direction = 0; direction < 4; ++direction) {
+            // UP and DOWN, LEFT and RIGHT are opposite
+            if (direction == (lastDirection ^ 1))
+                continue;
+            int cell = this.geometry.neighbour(this.blank, direction);
+            if (cell < 0)
+                continue;
+
+            int from = cell, to = this.blank;
+            int tile = this.state[from / this.geometry.getColumns()][from % this.geometry.getColumns()];
+            move(cell);
+
+            int childScore = (this.incremental != null)
+                ? this.incremental.delta(score, tile, from, to)
+                : this.heuristic.score(this.state, level + 1);
+            this.path[level] = direction;
+            int result = (level + 1 < this.path.length)
+                ? search(level + 1, childScore, bound, direction)
+                : childScore;
+
+            // undo the move
+            move(to);
+
+            if (result == FOUND)
+                return FOUND;
+            if (result < min)
+                min = result;
+        }
+        return min;
+    }
+
+    /**
+     * Moves the 0 to the given adjacent cell, updating the number of miss
+     * placed cells.
+     */
+    private void move(int cell) {
+        int columns = this.geometry.getColumns();
+        int bi = this.blank / columns, bj = this.blank % columns;
+        int ci = cell / columns, cj = cell % columns;
+
+        if (this.state[bi][bj] != this.targetState[bi][bj])
+            this.missPlaced = this.missPlaced - 1;
+        if (this.state[ci][cj] != this.targetState[ci][cj])
+            this.missPlaced = this.missPlaced - 1;
+
+        this.state[bi][bj] = this.state[ci][cj];
+        this.state[ci][cj] = 0;
+
+        if (this.state[bi][bj] != this.targetState[bi][bj])
+            this.missPlaced = this.missPlaced + 1;
+        if (this.state[ci][cj] != this.targetState[ci][cj])
+            this.missPlaced = this.missPlaced + 1;
+
+        this.blank = cell;
+    }
+
+    /**
+     * Rebuilds the chain of nodes by replaying the moves of the path from the
+     * initial state.
+     * @return the node of the final state
+     */
+    private Node buildPath() {
+        byte[] board = this.initialBoard.clone();
+        int blank = 0;
+        for (int p = 0; p < board.length; ++p)
+            if (board[p] == 0)
+                blank = p;
+
+        Node node = new Node(board.clone(), null, 0, 0);
+        for (int level = 0; level < this.solutionLength; ++level) {
+            int cell = this.geometry.neighbour(blank, this.path[level]);
+            board[blank] = board[cell];
+            board[cell] = 0;
+            blank = cell;
+            node = new Node(board.clone(), node, level + 1, level + 1);
+        }
+        return node;
+    }
+
+    @Override
+    public Node getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return an empty collection, the solver doesn't keep any opened state
+     */
+    @Override
+    public Collection<Node> getOpened() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return an empty collection, the solver doesn't keep any closed state
+     */
+    @Override
+    public Collection<Node> getClosed() {
+        return Collections.emptyList();
+    }
+
+    public int getNumberOfDevelopedStates() {
+        return this.numberOfDevelopedStates;
+    }
+
+    public void setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+        this.heuristic.setTargetState(this.targetState);
+    }
+    public void setInitialState(int initialState) {
+        this.initialBoard = this.geometry.fromMatrix(toMatrix(initialState));
+    }
+}
@@ -5,14 +5,55 @@
 
 package meta.projet.classesi.solver;
 
+import java.util.Arrays;
+
 public class Node implements Comparable<Node> {
     private int state;
+    private long packed;
+    // the cells of the states of the boards other than 3x3, null otherwise
+    private byte[] board;
     private Node parent;
     private int score;
     private int level;
     
     public Node(int state, Node parent, int score, int level) {
         this.state = state;
+        this.packed = PackedState.fromInt(state);
+        this.parent = parent;
+        this.score = score;
+        this.level = level;
+    }
+
+    /**
+     * Node constructor from a packed state (see PackedState), the solvers
+     * use it to avoid converting the decimal form back and forth.
+     */
+    public Node(long packed, Node parent, int score, int level) {
+        this.state = PackedState.toInt(packed);
+        this.packed = packed;
+        this.parent = parent;
+        this.score = score;
+        this.level = level;
+    }
+
+    /**
+     * Node constructor from the cells of a board of any size (see
+     * BoardGeometry), the states of a 3x3 board are converted to the decimal
+     * and packed forms, the other ones have no decimal form (the state is -1)
+     * and are only kept as a board.
+     */
+    public Node(byte[] board, Node parent, int score, int level) {
+        if (board.length == PackedState.CELLS) {
+            int state = 0;
+            for (int p = 0; p < PackedState.CELLS; ++p)
+                state = state * 10 + board[p];
+            this.state = state;
+            this.packed = PackedState.fromInt(state);
+        } else {
+            this.state = -1;
+            this.packed = PackedState.NONE;
+            this.board = board;
+        }
         this.parent = parent;
         this.score = score;
         this.level = level;
@@ -26,6 +67,8 @@ public class Node implements Comparable<Node> {
             return false;
 
         Node other = (Node) o;
+        if (this.board != null || other.board != null)
+            return Arrays.equals(this.board, other.board);
         
         return this.state == other.state;
     }
@@ -37,6 +80,8 @@ public class Node implements Comparable<Node> {
 
     @Override
     public int hashCode() {
+        if (this.board != null)
+            return Arrays.hashCode(this.board);
         //return this.state;
         /**
          * the 1st digit divids the array into 9 chunks of 8! numbers
@@ -45,35 +90,29 @@ public class Node implements Comparable<Node> {
          *    ...
          *     the 8th digit divids the array into 3 chunks of 1! numbers
          *      the 9th digit 
+         * (see PackedState.rank)
          */
 
-        int tmp = this.state;
-
-        // 8!, 7!, 6!, 5!, 4!, 3!, 2!, 1!
-        int[] chunkSize = {40320, 5040, 720, 120, 24, 6, 2, 1};
-        short[] digits = new short[8];
-        int key = 0;
-        int chunkIndex;
-
-        for (int i = 0; i < 8; ++i) {
-            digits[i] = (short)(tmp % 10);
-            tmp = tmp / 10;
-
-            chunkIndex = digits[i];
-
-            for (int j = i - 1; j >= 0; --j)
-                if (digits[j] < digits[i])
-                    --chunkIndex;
-
-            key = key + chunkSize[i] * chunkIndex;    
-        }
-
-        return key;
+        return PackedState.rank(this.packed);
     }
 
     public int getState() {
         return this.state;
     }
+    public long getPacked() {
+        return this.packed;
+    }
+    /**
+     * @return the cells of the state line by line
+     */
+    public byte[] getBoard() {
+        if (this.board != null)
+            return this.board;
+        byte[] board = new byte[PackedState.CELLS];
+        for (int p = 0; p < PackedState.CELLS; ++p)
+            board[p] = (byte) PackedState.tile(this.packed, p);
+        return board;
+    }
     public Node getParent() {
         return this.parent;
     }
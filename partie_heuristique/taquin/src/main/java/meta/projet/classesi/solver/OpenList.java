@@ -0,0 +1,62 @@
+package meta.projet.classesi.solver;
+
+import java.util.AbstractCollection;
+
+/**
+ * The opened list of the AStar solver. The states are kept in their packed
+ * form (see PackedState) with their score and level, the entry with the
+ * lowest score is the first to be removed.
+ *
+ * The opened list can still be used as a Collection of nodes, the nodes
+ * returned when iterating over it are rebuilt from the packed states (without
+ * parents), as a board if a geometry is set (see setGeometry).
+ */
+public abstract class OpenList extends AbstractCollection<Node> {
+    // the geometry of the states of the boards other than 3x3, null for a 3x3
+    // board
+    private BoardGeometry geometry;
+
+    /**
+     * Adds a state to the opened list.
+     * @param state the packed state
+     * @param score the score of the state given by the heuristic (level included)
+     * @param level the level of the state
+     */
+    public abstract void push(long state, int score, int level);
+
+    /**
+     * Removes the state with the lowest score.
+     * @return the packed state removed
+     */
+    public abstract long pop();
+
+    /**
+     * @return the score of the last state removed with pop
+     */
+    public abstract int getLastScore();
+
+    /**
+     * @return the level of the last state removed with pop
+     */
+    public abstract int getLastLevel();
+
+    /**
+     * Sets the geometry of the packed states, the nodes returned when
+     * iterating are built from their cells for the boards other than 3x3.
+     * @param geometry the geometry of the board, null for a 3x3 board
+     */
+    public void setGeometry(BoardGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    /**
+     * @return the node of a packed state, without parent
+     */
+    protected Node toNode(long state, int score, int level) {
+        if (this.geometry == null)
+            return new Node(state, null, score, level);
+        byte[] board = new byte[this.geometry.getCells()];
+        this.geometry.unpack(state, board);
+        return new Node(board, null, score, level);
+    }
+}
@@ -0,0 +1,107 @@
+package meta.projet.classesi.solver;
+
+import meta.projet.classesi.solver.heuristic.DistanceOracle;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Implements a solver using the exact distances of a DistanceOracle : from
+ * the initial state it always moves to a child one move closer to the final
+ * state, so the solution is optimal and no state is stored.
+ *
+ */
+public class OracleSolver extends Solver {
+    private int initialState;
+    private int finalState;
+    private DistanceOracle oracle;
+    private int numberOfDevelopedStates;
+
+    private Node solution;
+
+    /**
+     * OracleSolver constructor, the oracle is saved in the temporary directory.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     */
+    public OracleSolver(int initialState, int finalState) {
+        this(initialState, finalState, new DistanceOracle());
+    }
+
+    /**
+     * OracleSolver constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param oracle the oracle, its target state is set to finalState
+     */
+    public OracleSolver(int initialState, int finalState, DistanceOracle oracle) {
+        this.initialState = initialState;
+        this.finalState = finalState;
+        this.oracle = oracle;
+        this.numberOfDevelopedStates = 0;
+
+        short[][] targetState = new short[3][3];
+        AStar.intToMatrix(this.finalState, targetState);
+        this.oracle.setTargetState(targetState);
+    }
+
+    /**
+     * This method follows the distances of the oracle from the initialState
+     * to the finalState. The solution if found will be stored in solution
+     * member attribute.
+     * @preturn boolean true if the final state is reachable, false otherwise
+     */
+    @Override
+    public boolean solve() {
+        long current = PackedState.fromInt(this.initialState);
+        this.numberOfDevelopedStates = 0;
+        this.solution = null;
+
+        if (!this.oracle.isReachable(current))
+            return false;
+
+        int distance = this.oracle.distance(current);
+        int level = 0;
+        this.solution = new Node(current, null, distance, level);
+
+        while (distance > 0) {
+            this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+            for (int direction = 0; direction < 4; ++direction) {
+                long child = PackedState.move(current, direction);
+                if (child != PackedState.NONE && this.oracle.distance(child) == distance - 1) {
+                    current = child;
+                    break;
+                }
+            }
+            distance = distance - 1;
+            level = level + 1;
+            this.solution = new Node(current, this.solution, distance + level, level);
+        }
+        return true;
+    }
+
+    @Override
+    public Node getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return an empty collection, the solver doesn't keep any opened state
+     */
+    @Override
+    public Collection<Node> getOpened() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return an empty collection, the solver doesn't keep any closed state
+     */
+    @Override
+    public Collection<Node> getClosed() {
+        return Collections.emptyList();
+    }
+
+    public int getNumberOfDevelopedStates() {
+        return this.numberOfDevelopedStates;
+    }
+}
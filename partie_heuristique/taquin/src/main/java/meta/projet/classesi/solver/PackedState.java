@@ -0,0 +1,219 @@
+package meta.projet.classesi.solver;
+
+/**
+ * Implements the codification of the matrix into a long where every cell
+ * takes 4 bits, the cell 0 (upper left corner) being the lowest 4 bits and
+ * the cell 8 (lower right corner) the bits 32 to 35. The position of the 0
+ * is cached in the bits 36 to 39 so the neighbours of a state are computed
+ * with shifts and masks only, without any allocation.
+ */
+public class PackedState {
+    /**
+     * the directions in which the 0 can be moved
+     */
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    /**
+     * value returned by move when the 0 can't be moved in the given direction
+     */
+    public static final long NONE = -1L;
+
+    public static final int CELLS = 9;
+
+    /**
+     * number of permutations of the 9 cells, the ranks are in [0, STATES)
+     */
+    public static final int STATES = 362880;
+
+    private static final int BLANK_SHIFT = 36;
+    private static final long TILES_MASK = (1L << BLANK_SHIFT) - 1;
+
+    /**
+     * NEIGHBOURS[p][d] is the cell reached when moving the 0 from the cell p
+     * in the direction d, or -1 if the move goes out of the matrix.
+     */
+    private static final int[][] NEIGHBOURS = new int[CELLS][4];
+
+    // 0!, 1!, 2!, ..., 8!
+    private static final int[] FACTORIALS = {1, 1, 2, 6, 24, 120, 720, 5040, 40320};
+
+    static {
+        for (int p = 0; p < CELLS; ++p) {
+            int i = p / 3, j = p % 3;
+            NEIGHBOURS[p][UP] = (i != 0) ? p - 3 : -1;
+            NEIGHBOURS[p][DOWN] = (i != 2) ? p + 3 : -1;
+            NEIGHBOURS[p][LEFT] = (j != 0) ? p - 1 : -1;
+            NEIGHBOURS[p][RIGHT] = (j != 2) ? p + 1 : -1;
+        }
+    }
+
+    /**
+     * static method that converts the decimal codification used by Node
+     * (for example 123804765) to the packed one.
+     * @param state the matrix in an integer form
+     * @return the matrix in a packed form
+     */
+    public static long fromInt(int state) {
+        long packed = 0;
+        int blank = 0;
+        for (int p = CELLS - 1; p >= 0; --p) {
+            long tile = state % 10;
+            state = state / 10;
+            if (tile == 0)
+                blank = p;
+            packed = packed | (tile << (p << 2));
+        }
+        return packed | ((long) blank << BLANK_SHIFT);
+    }
+
+    /**
+     * static method that converts a packed state back to the decimal
+     * codification used by Node.
+     * @param packed the matrix in a packed form
+     * @return the matrix in an integer form
+     */
+    public static int toInt(long packed) {
+        int state = 0;
+        for (int p = 0; p < CELLS; ++p)
+            state = state * 10 + (int) ((packed >>> (p << 2)) & 0xF);
+        return state;
+    }
+
+    public static long fromMatrix(short[][] matrix) {
+        long packed = 0;
+        int blank = 0;
+        for (int p = 0; p < CELLS; ++p) {
+            long tile = matrix[p / 3][p % 3];
+            if (tile == 0)
+                blank = p;
+            packed = packed | (tile << (p << 2));
+        }
+        return packed | ((long) blank << BLANK_SHIFT);
+    }
+
+    public static void toMatrix(long packed, short[][] matrix) {
+        for (int p = 0; p < CELLS; ++p)
+            matrix[p / 3][p % 3] = (short) ((packed >>> (p << 2)) & 0xF);
+    }
+
+    /**
+     * @param packed the matrix in a packed form
+     * @return the position (from 0 to 8) of the 0 in the matrix
+     */
+    public static int blank(long packed) {
+        return (int) (packed >>> BLANK_SHIFT);
+    }
+
+    /**
+     * @param packed the matrix in a packed form
+     * @param p a position from 0 to 8
+     * @return the value of the cell at the position p
+     */
+    public static int tile(long packed, int p) {
+        return (int) ((packed >>> (p << 2)) & 0xF);
+    }
+
+    /**
+     * @param p the position of the 0
+     * @param direction one of UP, DOWN, LEFT and RIGHT
+     * @return the position of the cell swapped with the 0 when moving it in
+     *         the given direction, -1 if the move isn't possible
+     */
+    public static int neighbour(int p, int direction) {
+        return NEIGHBOURS[p][direction];
+    }
+
+    /**
+     * static method which moves the 0 in the given direction, switching it
+     * with the adjacent cell.
+     * @param packed the matrix in a packed form
+     * @param direction one of UP, DOWN, LEFT and RIGHT
+     * @return the new matrix in a packed form, NONE if the move isn't possible
+     */
+    public static long move(long packed, int direction) {
+        int blank = (int) (packed >>> BLANK_SHIFT);
+        int target = NEIGHBOURS[blank][direction];
+        if (target < 0)
+            return NONE;
+
+        int shift = target << 2;
+        long tile = (packed >>> shift) & 0xF;
+        // the cell of the 0 is already cleared, only the target cell needs to be
+        return (packed & TILES_MASK & ~(0xFL << shift))
+            | (tile << (blank << 2))
+            | ((long) target << BLANK_SHIFT);
+    }
+
+    /**
+     * @param packed the matrix in a packed form
+     * @return the parity of the number of inversions of the tiles (the 0
+     *         excluded), two states are reachable from each other only if
+     *         they have the same parity
+     */
+    public static int parity(long packed) {
+        int parity = 0;
+        int seen = 0;
+        for (int p = CELLS - 1; p >= 0; --p) {
+            int tile = (int) ((packed >>> (p << 2)) & 0xF);
+            if (tile == 0)
+                continue;
+            // the smaller tiles placed after this one
+            parity = parity ^ (Integer.bitCount(seen & ((1 << tile) - 1)) & 1);
+            seen = seen | (1 << tile);
+        }
+        return parity;
+    }
+
+    /**
+     * static method that computes the rank of the permutation in [0, 9!),
+     * it is the same key as the one computed by Node.hashCode : the cell p
+     * (from 8 to 1) divides the ranks into chunks of p! numbers, the index
+     * of the chunk being the value of the cell minus the number of smaller
+     * values in the cells after it.
+     * @param packed the matrix in a packed form
+     * @return the rank of the matrix
+     */
+    public static int rank(long packed) {
+        int rank = 0;
+        int seen = 0;
+        for (int p = CELLS - 1; p > 0; --p) {
+            int tile = (int) ((packed >>> (p << 2)) & 0xF);
+            rank = rank + FACTORIALS[p] * (tile - Integer.bitCount(seen & ((1 << tile) - 1)));
+            seen = seen | (1 << tile);
+        }
+        return rank;
+    }
+
+    /**
+     * static method that computes the matrix from its rank, it is the inverse
+     * of the rank method.
+     * @param rank a rank in [0, 9!)
+     * @return the matrix in a packed form
+     */
+    public static long unrank(int rank) {
+        long packed = 0;
+        int blank = 0;
+        int seen = 0;
+        for (int p = CELLS - 1; p >= 0; --p) {
+            int chunkIndex = rank / FACTORIALS[p];
+            rank = rank % FACTORIALS[p];
+
+            // the tile is the chunkIndex-th smallest value not used yet
+            int tile = 0;
+            while (chunkIndex > 0 || (seen & (1 << tile)) != 0) {
+                if ((seen & (1 << tile)) == 0)
+                    --chunkIndex;
+                ++tile;
+            }
+            seen = seen | (1 << tile);
+
+            if (tile == 0)
+                blank = p;
+            packed = packed | ((long) tile << (p << 2));
+        }
+        return packed | ((long) blank << BLANK_SHIFT);
+    }
+}
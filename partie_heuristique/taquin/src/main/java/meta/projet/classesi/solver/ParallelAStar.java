@@ -0,0 +1,398 @@
+package meta.projet.classesi.solver;
+
+import meta.projet.classesi.solver.heuristic.Heuristic;
+import meta.projet.classesi.solver.heuristic.IncrementalHeuristic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implements a parallel AStar solver (hash distributed AStar) : every state
+ * is owned by one worker thread chosen by a hash of its rank, each worker
+ * develops the states it owns with its own opened list and closed set, and
+ * sends the children owned by the other workers through their inboxes.
+ *
+ * The inboxes are lock free queues receiving batches of children, a child
+ * taking three longs in a batch : the packed state, its level and parent
+ * rank (see encode), then its score. The levels are not bounded by the depth
+ * of the space (the DepthFirst heuristic reaches tens of thousands), each one
+ * takes the 32 upper bits of its long.
+ *
+ * As the states are not developed in the order of their scores, a state can
+ * be reached later with a lower level, it is then opened again. The first
+ * solution found is only an upper bound of the solution length : the states
+ * with a score reaching it are dropped, and the search stops once all the
+ * workers are idle with an empty opened list and no batch is in flight, the
+ * best solution found being then optimal (if the heuristic is admissible).
+ */
+public class ParallelAStar extends Solver {
+    // children per batch sent to another worker
+    private static final int BATCH_SIZE = 64;
+    // longs per child in a batch
+    private static final int CHILD_LONGS = 3;
+    // number of states developed by a worker between two flushes of its batches
+    private static final int FLUSH_PERIOD = 256;
+
+    private static final int PARENT_BITS = 32;
+
+    private int initialState;
+    private int finalState;
+    private Heuristic heuristic;
+    private int numberOfThreads;
+
+    private Node solution;
+    private Worker[] workers;
+    // best solution found, its length in the upper 32 bits and its rank in the lower ones
+    private AtomicLong incumbent;
+    // number of workers not idle plus number of batches sent and not yet received
+    private AtomicLong pending;
+    private volatile Throwable failure;
+
+    /**
+     * ParallelAStar constructor, one worker is used per available processor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param heuristic the heuristic that the solver will use to evaluate states,
+     *                  it is shared by the workers
+     */
+    public ParallelAStar(int initialState, int finalState, Heuristic heuristic) {
+        this(initialState, finalState, heuristic, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * ParallelAStar constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param heuristic the heuristic that the solver will use to evaluate states,
+     *                  it is shared by the workers, valide values are objects
+     *                  of the classes :
+     *                  - MinMoves
+     *                  - MissPlaced
+     *                  - PatternDatabase
+     *                  - DistanceOracle
+     * @param numberOfThreads the number of workers, each one keeps its own
+     *                        closed set (2.9 MB)
+     */
+    public ParallelAStar(int initialState, int finalState, Heuristic heuristic, int numberOfThreads) {
+        if (numberOfThreads < 1)
+            throw new IllegalArgumentException("numberOfThreads must be at least 1");
+        this.initialState = initialState;
+        this.finalState = finalState;
+        this.heuristic = heuristic;
+        this.numberOfThreads = numberOfThreads;
+
+        short[][] targetState = new short[3][3];
+        AStar.intToMatrix(this.finalState, targetState);
+        this.heuristic.setTargetState(targetState);
+    }
+
+    /**
+     * This method runs the workers from the initialState until the optimal
+     * path to the finalState is proven. The solution if found will be stored
+     * in solution member attribute.
+     * @preturn boolean true if the algorithm found a solution, false otherwise
+     */
+    @Override
+    public boolean solve() {
+        long initial = PackedState.fromInt(this.initialState);
+        long target = PackedState.fromInt(this.finalState);
+
+        this.solution = null;
+        this.failure = null;
+        this.incumbent = new AtomicLong(Long.MAX_VALUE);
+        this.pending = new AtomicLong(this.numberOfThreads);
+        this.workers = new Worker[this.numberOfThreads];
+        for (int i = 0; i < this.numberOfThreads; ++i)
+            this.workers[i] = new Worker(i, target);
+
+        // the search would explore all the reachable states for nothing
+        if (PackedState.parity(initial) != PackedState.parity(target))
+            return false;
+
+        short[][] matrixState = new short[3][3];
+        PackedState.toMatrix(initial, matrixState);
+        int initialRank = PackedState.rank(initial);
+        this.workers[owner(initialRank)].receive(initial, this.heuristic.score(matrixState, 0), 0, ClosedSet.NO_PARENT);
+
+        for (Worker worker : this.workers)
+            worker.start();
+        try {
+            for (Worker worker : this.workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            this.failure = e;
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (this.failure != null)
+            throw new IllegalStateException("a worker failed", this.failure);
+        if (this.incumbent.get() == Long.MAX_VALUE)
+            return false;
+        this.solution = buildPath((int) this.incumbent.get(), matrixState);
+        return true;
+    }
+
+    /**
+     * @param rank the rank of a state
+     * @return the index of the worker owning the state
+     */
+    private int owner(int rank) {
+        // fibonacci hashing, the upper bits are mapped on the workers
+        long hash = (rank * 0x9E3779B1) & 0xFFFFFFFFL;
+        return (int) ((hash * this.numberOfThreads) >>> 32);
+    }
+
+    private int getIncumbentLength() {
+        return (int) (this.incumbent.get() >>> 32);
+    }
+
+    /**
+     * Keeps the solution if it is shorter than the best one found.
+     */
+    private void offerSolution(int level, int rank) {
+        long candidate = ((long) level << 32) | rank;
+        long current = this.incumbent.get();
+        while (candidate < current && !this.incumbent.compareAndSet(current, candidate))
+            current = this.incumbent.get();
+    }
+
+    /**
+     * Encodes the level and the parent rank of a child in a long.
+     */
+    private static long encode(int level, int parent) {
+        return ((long) level << PARENT_BITS) | parent;
+    }
+
+    /**
+     * Rebuilds the chain of nodes from the initial state to the given state
+     * following the parents kept by the closed sets of the owners.
+     * @param rank the rank of the last state of the path
+     * @param matrixState a matrix used as a buffer to evaluate the states
+     * @return the node of the last state
+     */
+    private Node buildPath(int rank, short[][] matrixState) {
+        int[] ranks = new int[this.workers[owner(rank)].closed.getLevel(rank) + 1];
+        for (int i = ranks.length - 1; i >= 0; --i) {
+            ranks[i] = rank;
+            rank = this.workers[owner(rank)].closed.getParent(rank);
+        }
+
+        Node node = null;
+        for (int i = 0; i < ranks.length; ++i) {
+            long state = PackedState.unrank(ranks[i]);
+            PackedState.toMatrix(state, matrixState);
+            node = new Node(state, node, this.heuristic.score(matrixState, i), i);
+        }
+        return node;
+    }
+
+    @Override
+    public Node getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return the states left in the opened lists of the workers
+     */
+    @Override
+    public Collection<Node> getOpened() {
+        ArrayList<Node> opened = new ArrayList<Node>();
+        if (this.workers != null)
+            for (Worker worker : this.workers)
+                opened.addAll(worker.opened);
+        return opened;
+    }
+
+    /**
+     * @return the states developed by the workers
+     */
+    @Override
+    public Collection<Node> getClosed() {
+        ArrayList<Node> closed = new ArrayList<Node>();
+        if (this.workers != null)
+            for (Worker worker : this.workers)
+                closed.addAll(worker.closed);
+        return closed;
+    }
+
+    /**
+     * @return the number of states developed by all the workers, a state
+     *         opened again is counted each time it is developed
+     */
+    public int getNumberOfDevelopedStates() {
+        int sum = 0;
+        if (this.workers != null)
+            for (Worker worker : this.workers)
+                sum = sum + worker.numberOfDevelopedStates;
+        return sum;
+    }
+
+    public int getNumberOfThreads() {
+        return this.numberOfThreads;
+    }
+
+    /**
+     * A worker develops the states it owns, the closed set keeps the best
+     * level and the parent of the states opened by the worker, and marks the
+     * ones already developed.
+     */
+    private class Worker extends Thread {
+        private int id;
+        private long target;
+        private OpenList opened;
+        private ClosedSet closed;
+        private ConcurrentLinkedQueue<long[]> inbox;
+        // outgoing batches, one per worker
+        private long[][] batches;
+        private int[] batchSizes;
+        private short[][] matrixState;
+        private int numberOfDevelopedStates;
+
+        Worker(int id, long target) {
+            super("ParallelAStar-" + id);
+            this.id = id;
+            this.target = target;
+            this.opened = new BucketOpenList();
+            this.closed = new ClosedSet(true);
+            this.inbox = new ConcurrentLinkedQueue<long[]>();
+            this.batches = new long[numberOfThreads][CHILD_LONGS * BATCH_SIZE];
+            this.batchSizes = new int[numberOfThreads];
+            this.matrixState = new short[3][3];
+            this.numberOfDevelopedStates = 0;
+        }
+
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        private void work() {
+            int sinceFlush = 0;
+            while (failure == null) {
+                long[] batch;
+                while ((batch = this.inbox.poll()) != null) {
+                    for (int i = 0; i < batch.length; i += CHILD_LONGS)
+                        receive(batch[i], batch[i + 1], (int) batch[i + 2]);
+                    pending.decrementAndGet();
+                }
+
+                if (!this.opened.isEmpty()) {
+                    develop();
+                    sinceFlush = sinceFlush + 1;
+                    if (sinceFlush == FLUSH_PERIOD) {
+                        flush();
+                        sinceFlush = 0;
+                    }
+                    continue;
+                }
+
+                // nothing to develop, the worker becomes idle until a batch comes
+                flush();
+                sinceFlush = 0;
+                pending.decrementAndGet();
+                while (this.inbox.isEmpty()) {
+                    if (pending.get() == 0 || failure != null)
+                        return;
+                    Thread.yield();
+                }
+                pending.incrementAndGet();
+            }
+        }
+
+        /**
+         * Develops the best state of the opened list.
+         */
+        private void develop() {
+            long current = this.opened.pop();
+            int score = this.opened.getLastScore();
+            int level = this.opened.getLastLevel();
+            int rank = PackedState.rank(current);
+
+            // no better solution can be found from the state
+            if (score >= getIncumbentLength())
+                return;
+            // the state was reached again with a lower level
+            if (this.closed.getLevel(rank) < level)
+                return;
+            if (current == this.target) {
+                offerSolution(level, rank);
+                return;
+            }
+
+            this.closed.add(rank);
+            this.numberOfDevelopedStates = this.numberOfDevelopedStates + 1;
+            IncrementalHeuristic incremental = (heuristic instanceof IncrementalHeuristic)
+                ? (IncrementalHeuristic) heuristic : null;
+            int blank = PackedState.blank(current);
+
+            for (int direction = 0; direction < 4; ++direction) {
+                long child = PackedState.move(current, direction);
+                if (child == PackedState.NONE)
+                    continue;
+
+                int childScore;
+                if (incremental != null) {
+                    int from = PackedState.blank(child);
+                    childScore = incremental.delta(score, PackedState.tile(current, from), from, blank);
+                } else {
+                    PackedState.toMatrix(child, this.matrixState);
+                    childScore = heuristic.score(this.matrixState, level + 1);
+                }
+                if (childScore >= getIncumbentLength())
+                    continue;
+
+                int destination = owner(PackedState.rank(child));
+                if (destination == this.id) {
+                    receive(child, childScore, level + 1, rank);
+                } else {
+                    long[] batch = this.batches[destination];
+                    int size = this.batchSizes[destination];
+                    batch[size] = child;
+                    batch[size + 1] = encode(level + 1, rank);
+                    batch[size + 2] = childScore;
+                    this.batchSizes[destination] = size + CHILD_LONGS;
+                    if (size + CHILD_LONGS == batch.length)
+                        send(destination);
+                }
+            }
+        }
+
+        private void receive(long state, long encoded, int score) {
+            receive(state, score, (int) (encoded >>> PARENT_BITS), (int) encoded);
+        }
+
+        /**
+         * Opens a state owned by the worker unless it was already opened with
+         * a lower or equal level.
+         */
+        void receive(long state, int score, int level, int parent) {
+            int rank = PackedState.rank(state);
+            if (this.closed.isRecorded(rank) && this.closed.getLevel(rank) <= level)
+                return;
+            this.closed.record(rank, level, parent);
+            this.opened.push(state, score, level);
+        }
+
+        private void send(int destination) {
+            long[] batch = Arrays.copyOf(this.batches[destination], this.batchSizes[destination]);
+            this.batchSizes[destination] = 0;
+            // the batch is counted before it can be received
+            pending.incrementAndGet();
+            workers[destination].inbox.offer(batch);
+        }
+
+        private void flush() {
+            for (int destination = 0; destination < this.batches.length; ++destination)
+                if (this.batchSizes[destination] != 0)
+                    send(destination);
+        }
+    }
+}
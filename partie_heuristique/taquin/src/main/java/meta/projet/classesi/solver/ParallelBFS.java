@@ -0,0 +1,359 @@
+package meta.projet.classesi.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Implements a level synchronous parallel BFS solver : each level is held as
+ * an array of ranks and divided into chunks developed by the tasks of a
+ * ForkJoinPool, the next level being built once the whole level is developed.
+ *
+ * A level is developed in three steps :
+ * - the chunks generate the children not visited yet, each child is claimed
+ *   by the first of its parents in the order of the level (the lowest index
+ *   of the parent times 4 plus the index of the direction, kept with an
+ *   atomic minimum), which is the parent BFS would give to it ;
+ * - the chunks count the children they claimed, the offset of each chunk in
+ *   the next level is the sum of the counts of the previous chunks ;
+ * - the chunks copy their children at their offsets and mark them in the
+ *   visited bitmap (compare and set on its words).
+ * The next level is then in the same order as in the queue of BFS, so the
+ * solution, the number of developed states and the path are the same as the
+ * ones of BFS.
+ */
+public class ParallelBFS extends Solver {
+
+    /**
+     * the order in which the 0 is moved when developing a state
+     */
+    private static final int[] DIRECTIONS = {
+        PackedState.LEFT, PackedState.RIGHT, PackedState.UP, PackedState.DOWN
+    };
+
+    // number of states of a level developed by a task
+    private static final int CHUNK_SIZE = 512;
+
+    private int initialState;
+    private int finalState;
+    private ForkJoinPool pool;
+
+    private Node solution;
+    private int numberOfDevelopedStates;
+    private AtomicLongArray visited;
+    // claims[rank] is the lowest parent index * 4 + direction index reaching the state
+    private AtomicIntegerArray claims;
+    private int[] parents;
+    private int[] frontier;
+    private int frontierSize;
+    private int[] frontierSizes;
+    private long[] levelTimes;
+    private int numberOfLevels;
+
+    /**
+     * ParallelBFS constructor, the common pool is used.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     */
+    public ParallelBFS(int initialState, int finalState) {
+        this(initialState, finalState, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * ParallelBFS constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param finalState the target state that the solver needs to reach
+     * @param pool the pool running the tasks
+     */
+    public ParallelBFS(int initialState, int finalState, ForkJoinPool pool) {
+        this.initialState = initialState;
+        this.finalState = finalState;
+        this.pool = pool;
+        this.numberOfDevelopedStates = 0;
+    }
+
+    /**
+     * This method develops the levels from the initialState until the
+     * finalState is generated. As for BFS, the solution stored in the
+     * solution member attribute is the parent of the final state.
+     * @preturn boolean true if the algorithm found a solution, false otherwise
+     */
+    @Override
+    public boolean solve() {
+        int initialRank = PackedState.rank(PackedState.fromInt(this.initialState));
+        int finalRank = PackedState.rank(PackedState.fromInt(this.finalState));
+
+        this.solution = null;
+        this.numberOfDevelopedStates = 0;
+        this.visited = new AtomicLongArray((PackedState.STATES + 63) >>> 6);
+        this.claims = new AtomicIntegerArray(PackedState.STATES);
+        this.parents = new int[PackedState.STATES];
+        this.frontierSizes = new int[32];
+        this.levelTimes = new long[32];
+        this.numberOfLevels = 0;
+
+        for (int rank = 0; rank < PackedState.STATES; ++rank)
+            this.claims.lazySet(rank, Integer.MAX_VALUE);
+        mark(initialRank);
+        this.parents[initialRank] = ClosedSet.NO_PARENT;
+        this.frontier = new int[] {initialRank};
+        this.frontierSize = 1;
+
+        while (this.frontierSize != 0) {
+            long start = System.nanoTime();
+            Level level = new Level();
+            this.pool.invoke(new ChunkTask(level, ChunkTask.EXPAND, 0, level.chunks));
+            this.pool.invoke(new ChunkTask(level, ChunkTask.COUNT, 0, level.chunks));
+            int size = 0;
+            for (int chunk = 0; chunk < level.chunks; ++chunk) {
+                level.offsets[chunk] = size;
+                size = size + level.counts[chunk];
+            }
+            level.next = new int[size];
+            this.pool.invoke(new ChunkTask(level, ChunkTask.COPY, 0, level.chunks));
+            addLevel(System.nanoTime() - start);
+
+            // the final state is in the next level, its parent is the first
+            // state of the level generating it
+            if (finalRank != initialRank && isVisited(finalRank)) {
+                this.numberOfDevelopedStates = this.numberOfDevelopedStates + this.claims.get(finalRank) / 4 + 1;
+                this.solution = buildPath(this.parents[finalRank]);
+                return true;
+            }
+
+            this.numberOfDevelopedStates = this.numberOfDevelopedStates + this.frontierSize;
+            this.frontier = level.next;
+            this.frontierSize = size;
+        }
+        return false;
+    }
+
+    /**
+     * The chunks of the level being developed and the children they claimed.
+     */
+    private class Level {
+        private int chunks;
+        private int[][] children;
+        private int[][] codes;
+        private int[] sizes;
+        private int[] counts;
+        private int[] offsets;
+        private int[] next;
+
+        Level() {
+            this.chunks = (frontierSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            this.children = new int[this.chunks][];
+            this.codes = new int[this.chunks][];
+            this.sizes = new int[this.chunks];
+            this.counts = new int[this.chunks];
+            this.offsets = new int[this.chunks];
+        }
+    }
+
+    /**
+     * Runs a step of the development of a level on the chunks [from, to),
+     * splitting them in halves until a single chunk is left.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        static final int EXPAND = 0;
+        static final int COUNT = 1;
+        static final int COPY = 2;
+
+        private Level level;
+        private int step;
+        private int from;
+        private int to;
+
+        ChunkTask(Level level, int step, int from, int to) {
+            this.level = level;
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new ChunkTask(this.level, this.step, this.from, middle),
+                    new ChunkTask(this.level, this.step, middle, this.to));
+            } else if (this.step == EXPAND) {
+                expand(this.level, this.from);
+            } else if (this.step == COUNT) {
+                count(this.level, this.from);
+            } else {
+                copy(this.level, this.from);
+            }
+        }
+    }
+
+    /**
+     * Generates the children of a chunk not visited yet and claims them.
+     */
+    private void expand(Level level, int chunk) {
+        int first = chunk * CHUNK_SIZE;
+        int last = Math.min(first + CHUNK_SIZE, this.frontierSize);
+        int[] children = new int[4 * (last - first)];
+        int[] codes = new int[children.length];
+        int size = 0;
+
+        for (int i = first; i < last; ++i) {
+            long state = PackedState.unrank(this.frontier[i]);
+            for (int d = 0; d < DIRECTIONS.length; ++d) {
+                long child = PackedState.move(state, DIRECTIONS[d]);
+                if (child == PackedState.NONE)
+                    continue;
+                int rank = PackedState.rank(child);
+                if (isVisited(rank))
+                    continue;
+                children[size] = rank;
+                codes[size] = 4 * i + d;
+                size = size + 1;
+                claim(rank, 4 * i + d);
+            }
+        }
+        level.children[chunk] = children;
+        level.codes[chunk] = codes;
+        level.sizes[chunk] = size;
+    }
+
+    /**
+     * Counts the children kept by a chunk, once all the chunks are expanded.
+     */
+    private void count(Level level, int chunk) {
+        int count = 0;
+        for (int k = 0; k < level.sizes[chunk]; ++k)
+            if (this.claims.get(level.children[chunk][k]) == level.codes[chunk][k])
+                count = count + 1;
+        level.counts[chunk] = count;
+    }
+
+    /**
+     * Copies the children kept by a chunk at its offset in the next level.
+     */
+    private void copy(Level level, int chunk) {
+        int offset = level.offsets[chunk];
+        for (int k = 0; k < level.sizes[chunk]; ++k) {
+            int rank = level.children[chunk][k];
+            int code = level.codes[chunk][k];
+            if (this.claims.get(rank) != code)
+                continue;
+            level.next[offset] = rank;
+            offset = offset + 1;
+            this.parents[rank] = this.frontier[code / 4];
+            mark(rank);
+        }
+    }
+
+    /**
+     * Keeps the lowest code claiming the state.
+     */
+    private void claim(int rank, int code) {
+        int current = this.claims.get(rank);
+        while (code < current && !this.claims.compareAndSet(rank, current, code))
+            current = this.claims.get(rank);
+    }
+
+    private boolean isVisited(int rank) {
+        return (this.visited.get(rank >>> 6) & (1L << rank)) != 0;
+    }
+
+    private void mark(int rank) {
+        int index = rank >>> 6;
+        long word = this.visited.get(index);
+        while (!this.visited.compareAndSet(index, word, word | (1L << rank)))
+            word = this.visited.get(index);
+    }
+
+    private void addLevel(long time) {
+        if (this.numberOfLevels == this.frontierSizes.length) {
+            this.frontierSizes = Arrays.copyOf(this.frontierSizes, 2 * this.numberOfLevels);
+            this.levelTimes = Arrays.copyOf(this.levelTimes, 2 * this.numberOfLevels);
+        }
+        this.frontierSizes[this.numberOfLevels] = this.frontierSize;
+        this.levelTimes[this.numberOfLevels] = time;
+        this.numberOfLevels = this.numberOfLevels + 1;
+    }
+
+    /**
+     * Rebuilds the chain of nodes from the initial state to the given state.
+     * @param rank the rank of the last state of the path
+     * @return the node of the last state
+     */
+    private Node buildPath(int rank) {
+        int length = 0;
+        for (int r = rank; this.parents[r] != ClosedSet.NO_PARENT; r = this.parents[r])
+            length = length + 1;
+
+        int[] ranks = new int[length + 1];
+        for (int i = length; i >= 0; --i) {
+            ranks[i] = rank;
+            rank = this.parents[rank];
+        }
+
+        Node node = null;
+        for (int i = 0; i <= length; ++i)
+            node = new Node(PackedState.unrank(ranks[i]), node, 0, i);
+        return node;
+    }
+
+    @Override
+    public Node getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return the nodes of the last level developed
+     */
+    @Override
+    public Collection<Node> getOpened() {
+        ArrayList<Node> opened = new ArrayList<Node>();
+        for (int i = 0; i < this.frontierSize; ++i)
+            opened.add(new Node(PackedState.unrank(this.frontier[i]), null, 0, 0));
+        return opened;
+    }
+
+    /**
+     * @return the visited states, copied from the visited bitmap
+     */
+    @Override
+    public Collection<Node> getClosed() {
+        ClosedSet closed = new ClosedSet();
+        for (int rank = 0; rank < PackedState.STATES; ++rank)
+            if (isVisited(rank))
+                closed.add(rank);
+        return closed;
+    }
+
+    public int getNumberOfDevelopedStates() {
+        return this.numberOfDevelopedStates;
+    }
+
+    /**
+     * @return the number of levels developed
+     */
+    public int getNumberOfLevels() {
+        return this.numberOfLevels;
+    }
+
+    /**
+     * @return the number of states of each level developed, the level 0
+     *         being the initial state
+     */
+    public int[] getFrontierSizes() {
+        return Arrays.copyOf(this.frontierSizes, this.numberOfLevels);
+    }
+
+    /**
+     * @return the time taken to develop each level, in nanoseconds
+     */
+    public long[] getLevelTimes() {
+        return Arrays.copyOf(this.levelTimes, this.numberOfLevels);
+    }
+}
@@ -0,0 +1,142 @@
+package meta.projet.classesi.solver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps the predecessor and the level (g value) of the states of the 3x3
+ * board without any object per state : two arrays of 9! bytes indexed by the
+ * rank of the states (see PackedState.rank), 725 KB for the whole space.
+ *
+ * The predecessor of a state is kept as the direction of the move of the 0
+ * which reached it, the path to a state is rebuilt by replaying the moves
+ * backwards from it : the parent of a state is the state with the 0 moved
+ * in the opposite direction.
+ */
+public class PredecessorTable {
+    /**
+     * move of the states recorded without a parent
+     */
+    public static final int NO_MOVE = 4;
+
+    /**
+     * highest level a byte can hold
+     */
+    public static final int MAX_LEVEL = 255;
+
+    // the direction of the move plus one (NO_MOVE + 1 for the root), 0 if
+    // nothing was recorded for the state
+    private byte[] moves;
+    private byte[] levels;
+
+    public PredecessorTable() {
+        this.moves = new byte[PackedState.STATES];
+        this.levels = new byte[PackedState.STATES];
+    }
+
+    /**
+     * Records the level and the predecessor of a state, the previous ones are
+     * replaced if the state was already recorded.
+     * @param rank the rank of the state
+     * @param level the level of the state, at most MAX_LEVEL
+     * @param move the direction of the move of the 0 from the parent to the
+     *             state (PackedState.UP ...), NO_MOVE for the root
+     */
+    public void record(int rank, int level, int move) {
+        if (level > MAX_LEVEL)
+            throw new IllegalArgumentException("the level " + level + " doesn't fit in a byte");
+        this.moves[rank] = (byte) (move + 1);
+        this.levels[rank] = (byte) level;
+    }
+
+    public boolean isRecorded(int rank) {
+        return this.moves[rank] != 0;
+    }
+
+    public int getLevel(int rank) {
+        return this.levels[rank] & 0xFF;
+    }
+
+    /**
+     * @return the direction of the move which reached the state, NO_MOVE for
+     *         the root
+     */
+    public int getMove(int rank) {
+        return this.moves[rank] - 1;
+    }
+
+    /**
+     * @param state a recorded state in a packed form
+     * @return the parent of the state, PackedState.NONE for the root
+     */
+    public long getParent(long state) {
+        int move = getMove(PackedState.rank(state));
+        if (move == NO_MOVE)
+            return PackedState.NONE;
+        // UP and DOWN, LEFT and RIGHT only differ by their lowest bit
+        return PackedState.move(state, move ^ 1);
+    }
+
+    /**
+     * @param state a recorded state in a packed form
+     * @return the states of the path from the root to the state
+     */
+    public long[] getPath(long state) {
+        long[] path = new long[getLevel(PackedState.rank(state)) + 1];
+        for (int i = path.length - 1; i >= 0; --i) {
+            path[i] = state;
+            state = getParent(state);
+        }
+        return path;
+    }
+
+    /**
+     * @return the chain of nodes from the root to the state, without scores
+     */
+    public Node buildPath(long state) {
+        long[] path = getPath(state);
+        Node node = null;
+        for (int i = 0; i < path.length; ++i)
+            node = new Node(path[i], node, 0, i);
+        return node;
+    }
+
+    public void clear() {
+        Arrays.fill(this.moves, (byte) 0);
+        Arrays.fill(this.levels, (byte) 0);
+    }
+
+    /**
+     * Writes the recorded states, each one as its rank, its move and its
+     * level.
+     */
+    public void write(DataOutput out) throws IOException {
+        int count = 0;
+        for (int rank = 0; rank < PackedState.STATES; ++rank)
+            if (this.moves[rank] != 0)
+                count = count + 1;
+        out.writeInt(count);
+        for (int rank = 0; rank < PackedState.STATES; ++rank) {
+            if (this.moves[rank] == 0)
+                continue;
+            out.writeInt(rank);
+            out.writeByte(this.moves[rank]);
+            out.writeByte(this.levels[rank]);
+        }
+    }
+
+    /**
+     * Replaces the content of the table by the one written by write.
+     */
+    public void read(DataInput in) throws IOException {
+        clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            int rank = in.readInt();
+            this.moves[rank] = in.readByte();
+            this.levels[rank] = in.readByte();
+        }
+    }
+}
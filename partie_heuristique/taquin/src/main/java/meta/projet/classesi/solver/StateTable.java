@@ -0,0 +1,220 @@
+package meta.projet.classesi.solver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implements the closed list of AStar for the boards without ranks (see
+ * BoardGeometry) : an open addressing hash table of packed states keeping the
+ * best level reached for each state, the packed state of its parent and
+ * whether it was developed.
+ *
+ * As ClosedSet, the table is a Collection of the developed nodes, the nodes
+ * being rebuilt from the packed states (without parents).
+ */
+public class StateTable extends AbstractCollection<Node> {
+    /**
+     * parent of the states recorded without a parent
+     */
+    public static final long NO_PARENT = -1L;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int DEVELOPED = 1 << 31;
+    // the moves to the parents written by write
+    private static final int NO_DIRECTION = 4;
+    private static final int DEVELOPED_FLAG = 8;
+
+    private BoardGeometry geometry;
+    // a packed state is never 0 (its cells are all different), 0 is a free slot
+    private long[] keys;
+    private long[] parents;
+    // the level of the state, the highest bit is set once it is developed
+    private int[] entries;
+    private int mask;
+    private int recorded;
+    private int size;
+
+    /**
+     * StateTable constructor.
+     * @param geometry the geometry of the packed states
+     */
+    public StateTable(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.keys = new long[INITIAL_CAPACITY];
+        this.parents = new long[INITIAL_CAPACITY];
+        this.entries = new int[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        this.recorded = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @return the slot of the state, or the free slot where it would be added
+     */
+    private int slot(long state) {
+        int slot = (int) ((state * 0x9E3779B97F4A7C15L) >>> 40) & this.mask;
+        while (this.keys[slot] != 0 && this.keys[slot] != state)
+            slot = (slot + 1) & this.mask;
+        return slot;
+    }
+
+    /**
+     * Records the level and the parent of a state, the previous ones are
+     * replaced if the state was already recorded.
+     */
+    public void record(long state, int level, long parent) {
+        int slot = slot(state);
+        if (this.keys[slot] == 0) {
+            this.keys[slot] = state;
+            this.entries[slot] = level;
+            this.recorded = this.recorded + 1;
+        } else {
+            this.entries[slot] = (this.entries[slot] & DEVELOPED) | level;
+        }
+        this.parents[slot] = parent;
+
+        if (2 * this.recorded > this.keys.length)
+            grow();
+    }
+
+    public boolean isRecorded(long state) {
+        return this.keys[slot(state)] != 0;
+    }
+
+    public int getLevel(long state) {
+        return this.entries[slot(state)] & ~DEVELOPED;
+    }
+
+    public long getParent(long state) {
+        return this.parents[slot(state)];
+    }
+
+    /**
+     * Marks a recorded state as developed.
+     * @return true if the state was not already developed
+     */
+    public boolean develop(long state) {
+        int slot = slot(state);
+        if ((this.entries[slot] & DEVELOPED) != 0)
+            return false;
+        this.entries[slot] = this.entries[slot] | DEVELOPED;
+        this.size = this.size + 1;
+        return true;
+    }
+
+    public boolean isDeveloped(long state) {
+        int slot = slot(state);
+        return this.keys[slot] != 0 && (this.entries[slot] & DEVELOPED) != 0;
+    }
+
+    private void grow() {
+        long[] keys = this.keys;
+        long[] parents = this.parents;
+        int[] entries = this.entries;
+        this.keys = new long[2 * keys.length];
+        this.parents = new long[2 * keys.length];
+        this.entries = new int[2 * keys.length];
+        this.mask = this.keys.length - 1;
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == 0)
+                continue;
+            int slot = slot(keys[i]);
+            this.keys[slot] = keys[i];
+            this.parents[slot] = parents[i];
+            this.entries[slot] = entries[i];
+        }
+    }
+
+    /**
+     * Writes the recorded states, each one as its packed state, a byte giving
+     * the direction of the move of the 0 back to its parent (NO_DIRECTION for
+     * the states without parent) with the flag DEVELOPED_FLAG, and its level.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(this.recorded);
+        for (int i = 0; i < this.keys.length; ++i) {
+            if (this.keys[i] == 0)
+                continue;
+            int direction = NO_DIRECTION;
+            if (this.parents[i] != NO_PARENT) {
+                int blank = this.geometry.blank(this.keys[i]);
+                int parentBlank = this.geometry.blank(this.parents[i]);
+                direction = 0;
+                while (this.geometry.neighbour(blank, direction) != parentBlank)
+                    direction = direction + 1;
+            }
+            out.writeLong(this.keys[i]);
+            out.writeByte(((this.entries[i] & DEVELOPED) != 0) ? direction | DEVELOPED_FLAG : direction);
+            out.writeInt(this.entries[i] & ~DEVELOPED);
+        }
+    }
+
+    /**
+     * Replaces the content of the table by the one written by write.
+     */
+    public void read(DataInput in) throws IOException {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.parents = new long[INITIAL_CAPACITY];
+        this.entries = new int[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        this.recorded = 0;
+        this.size = 0;
+
+        int recorded = in.readInt();
+        for (int i = 0; i < recorded; ++i) {
+            long state = in.readLong();
+            int flags = in.readByte();
+            int level = in.readInt();
+            int direction = flags & ~DEVELOPED_FLAG;
+            long parent = NO_PARENT;
+            if (direction != NO_DIRECTION) {
+                int blank = this.geometry.blank(state);
+                parent = this.geometry.move(state, blank, this.geometry.neighbour(blank, direction));
+            }
+            record(state, level, parent);
+            if ((flags & DEVELOPED_FLAG) != 0)
+                develop(state);
+        }
+    }
+
+    /**
+     * @return the number of developed states
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return new Iterator<Node>() {
+            private int slot = next(0);
+
+            private int next(int from) {
+                while (from < keys.length && (keys[from] == 0 || (entries[from] & DEVELOPED) == 0))
+                    from = from + 1;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.slot < keys.length;
+            }
+
+            @Override
+            public Node next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                byte[] board = new byte[geometry.getCells()];
+                geometry.unpack(keys[this.slot], board);
+                Node node = new Node(board, null, 0, entries[this.slot] & ~DEVELOPED);
+                this.slot = next(this.slot + 1);
+                return node;
+            }
+        };
+    }
+}
@@ -1,12 +1,17 @@
 package meta.projet.classesi.solver.heuristic;
 
-public class BreadthFirst implements Heuristic {
+public class BreadthFirst implements IncrementalHeuristic {
 
     //@Override
     public int score(short[][] state, int level) {
         return level;
     }
 
+    //@Override
+    public int delta(int parentScore, int movedTile, int from, int to) {
+        return parentScore + 1;
+    }
+
     public void setTargetState(short[][] targetState) {
     }
 }
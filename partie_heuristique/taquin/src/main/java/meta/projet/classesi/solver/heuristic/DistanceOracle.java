@@ -0,0 +1,155 @@
+package meta.projet.classesi.solver.heuristic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import meta.projet.classesi.solver.ClosedSet;
+import meta.projet.classesi.solver.PackedState;
+
+/**
+ * The exact number of moves between any state and the target state, it is
+ * a perfect heuristic.
+ *
+ * The distances are computed once with a breadth first search from the target
+ * state over the 181440 reachable states, and kept in a table of 4 bits per
+ * state indexed by the rank of the state (see PackedState.rank and
+ * Node.hashCode), that is 9!/2 bytes. The parity of the distance is the
+ * parity of the distance between the 0 and its place in the target state, so
+ * only the half of the distance is stored (the 8-puzzle needs at most 31
+ * moves, 15 once halved).
+ *
+ * The table is saved in a file of the given directory and memory mapped, the
+ * next solvers using the same target state start without any search.
+ */
+public class DistanceOracle implements Heuristic {
+    private File directory;
+    private short[][] targetState;
+    private long target;
+    private int targetBlank;
+    private int targetParity;
+    private ByteBuffer table;
+
+    public DistanceOracle() {
+        this(new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * DistanceOracle constructor.
+     * @param directory the directory where the table is saved
+     */
+    public DistanceOracle(File directory) {
+        this.directory = directory;
+    }
+
+    //@Override
+    public int score(short[][] state, int level) {
+        return distance(PackedState.fromMatrix(state)) + level;
+    }
+
+    /**
+     * @param state the packed state
+     * @return the minimal number of moves to reach the target state, the
+     *         result is meaningless if the state is not reachable
+     */
+    public int distance(long state) {
+        int rank = PackedState.rank(state);
+        int half = (this.table.get(rank >>> 1) >>> ((rank & 1) << 2)) & 0xF;
+        int blank = PackedState.blank(state);
+        int parity = (Math.abs(blank / 3 - this.targetBlank / 3) + Math.abs(blank % 3 - this.targetBlank % 3)) & 1;
+        return 2 * half + parity;
+    }
+
+    /**
+     * @param state the packed state
+     * @return true if the target state can be reached from the state, that is
+     *         if the number of inversions of the tiles (0 excluded) has the
+     *         same parity as in the target state
+     */
+    public boolean isReachable(long state) {
+        return PackedState.parity(state) == this.targetParity;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the target state is not a 3x3 board,
+     *         the ranks only exist for the 8-puzzle
+     */
+    public void setTargetState(short[][] targetState) {
+        if (targetState.length != 3 || targetState[0].length != 3)
+            throw new IllegalArgumentException("the distance oracle only supports 3x3 boards");
+        this.targetState = targetState;
+        this.target = PackedState.fromMatrix(targetState);
+        this.targetBlank = PackedState.blank(this.target);
+        this.targetParity = PackedState.parity(this.target);
+
+        File file = new File(this.directory, "oracle-" + String.format("%09d", PackedState.toInt(this.target)) + ".bin");
+        try {
+            if (!file.exists() || file.length() != PackedState.STATES / 2)
+                write(file, build());
+            this.table = map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds the table with a breadth first search from the target state.
+     * @return the halves of the distances, 2 per byte (the lowest 4 bits for
+     *         the even ranks)
+     */
+    public byte[] build() {
+        byte[] table = new byte[PackedState.STATES / 2];
+        ClosedSet visited = new ClosedSet();
+        int[] queue = new int[PackedState.STATES / 2];
+        int head = 0, tail = 0;
+
+        int targetRank = PackedState.rank(this.target);
+        visited.add(targetRank);
+        queue[tail++] = targetRank;
+
+        // the queue holds the states of the current level then the ones of the next
+        int levelEnd = tail;
+        int distance = 0;
+        while (head < tail) {
+            if (head == levelEnd) {
+                distance = distance + 1;
+                levelEnd = tail;
+            }
+            long state = PackedState.unrank(queue[head++]);
+            for (int direction = 0; direction < 4; ++direction) {
+                long child = PackedState.move(state, direction);
+                if (child == PackedState.NONE)
+                    continue;
+                int rank = PackedState.rank(child);
+                if (visited.add(rank)) {
+                    table[rank >>> 1] |= (byte) (((distance + 1) / 2) << ((rank & 1) << 2));
+                    queue[tail++] = rank;
+                }
+            }
+        }
+        return table;
+    }
+
+    private static void write(File file, byte[] table) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(table);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+    }
+}
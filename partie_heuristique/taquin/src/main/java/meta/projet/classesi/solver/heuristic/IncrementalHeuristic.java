@@ -0,0 +1,20 @@
+package meta.projet.classesi.solver.heuristic;
+
+/**
+ * A heuristic whose score can be updated when a tile moves, without
+ * evaluating the whole state.
+ */
+public interface IncrementalHeuristic extends Heuristic {
+    /**
+     * Computes the score of a child state from the score of its parent in 
+     * O(1), the child is obtained by sliding one tile into the 0 and is one
+     * level deeper than its parent.
+     * @param parentScore the score of the parent state
+     * @param movedTile the value of the tile that was moved
+     * @param from the cell of the tile in the parent state
+     * @param to the cell of the tile in the child state
+     * (the cells are numbered line by line starting from 0)
+     * @return the score of the child state
+     */
+    public int delta(int parentScore, int movedTile, int from, int to);
+}
@@ -5,33 +5,50 @@ package meta.projet.classesi.solver.heuristic;
  * The minimal sum of movements of each square from 1 to 8, to reach its right
  * place like in the target state.
  */
-public class MinMoves implements Heuristic {
+public class MinMoves implements IncrementalHeuristic {
     private short[][] targetState;
+    /**
+     * distances[t][p] is the manhaten distance between the cell p and the
+     * cell of the tile t in the target state (0 for the tile 0)
+     */
+    private int[][] distances;
 
     public MinMoves() {
     }
 
     public MinMoves(short[][] targetState) {
-        this.targetState = targetState;
+        setTargetState(targetState);
     }
 
     //@Override
     public int score(short[][] state, int level) {
         int sum = 0;
-        for (int i = 0; i < this.targetState.length; ++i)
-            for (int j = 0; j < this.targetState[0].length; ++j)
-                // for each number in target
-                // find manhaten distance between
-                // it's correct and current position
-                if (targetState[i][j] != 0)
-                    for (int k = 0; k < state.length; ++k)
-                        for (int l = 0; l < state[0].length; ++l)
-                            if (targetState[i][j] == state[k][l])
-                                sum = sum + Math.abs(i - k) + Math.abs(j - l);
+        int columns = state[0].length;
+        for (int i = 0; i < state.length; ++i)
+            for (int j = 0; j < columns; ++j)
+                sum = sum + this.distances[state[i][j]][i * columns + j];
         return sum + level;
     }
 
+    //@Override
+    public int delta(int parentScore, int movedTile, int from, int to) {
+        return parentScore + this.distances[movedTile][to] - this.distances[movedTile][from] + 1;
+    }
+
     public void setTargetState(short[][] targetState) {
         this.targetState = targetState;
+
+        int columns = targetState[0].length;
+        int cells = targetState.length * columns;
+        this.distances = new int[cells][cells];
+        for (int i = 0; i < targetState.length; ++i)
+            for (int j = 0; j < columns; ++j)
+                // for each number in target
+                // find manhaten distance between
+                // it's correct and every position
+                if (targetState[i][j] != 0)
+                    for (int p = 0; p < cells; ++p)
+                        this.distances[targetState[i][j]][p] =
+                            Math.abs(i - p / columns) + Math.abs(j - p % columns);
     }
 }
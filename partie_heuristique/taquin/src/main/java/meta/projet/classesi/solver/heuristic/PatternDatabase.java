@@ -0,0 +1,306 @@
+package meta.projet.classesi.solver.heuristic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Additive pattern database : the tiles are divided into disjoint patterns
+ * (by default groups of 4 consecutive tiles, 1 to 4 and 5 to 8 for the
+ * 8-puzzle, 1 to 4, 5 to 8, 9 to 12 and 13 to 15 for the 15-puzzle), and for every placement of the tiles of a
+ * pattern the table gives the minimal number of moves of these tiles needed
+ * to reach their places in the target state, the other tiles being ignored.
+ * As only the moves of the tiles of a pattern are counted, the values of the
+ * different patterns can be added and the score stays admissible.
+ *
+ * The tables are built with a retrograde breadth first search from the target
+ * state and saved in a file of the given directory (one byte per placement),
+ * the file is then memory mapped so the next solvers using the same target
+ * state start without building the tables again.
+ */
+public class PatternDatabase implements Heuristic {
+    private static final int DEFAULT_PATTERN_SIZE = 4;
+
+    private static final byte UNKNOWN = (byte) 0xFF;
+
+    private File directory;
+    // the patterns given to the constructor, null for the default ones
+    private int[][] givenPatterns;
+    private int[][] patterns;
+    private short[][] targetState;
+    private int cells;
+    // patternOfTile[t] is the pattern of the tile t, -1 for the tile 0
+    private int[] patternOfTile;
+    // weights[t] is cells^i, i being the index of the tile t in its pattern
+    private int[] weights;
+    // offsets[k] is the offset of the table of the pattern k in the file
+    private int[] offsets;
+    private ByteBuffer tables;
+    // the index of the placement of each pattern computed by score, one array
+    // per thread as the solvers may share the heuristic (ParallelAStar)
+    private ThreadLocal<int[]> indexes;
+
+    public PatternDatabase() {
+        this(new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * PatternDatabase constructor.
+     * @param directory the directory where the tables are saved
+     */
+    public PatternDatabase(File directory) {
+        this(directory, null);
+    }
+
+    /**
+     * PatternDatabase constructor.
+     * @param directory the directory where the tables are saved
+     * @param patterns the disjoint patterns, every tile except 0 must be in
+     *                 one of them, null for the default ones
+     */
+    public PatternDatabase(File directory, int[][] patterns) {
+        this.directory = directory;
+        this.givenPatterns = patterns;
+    }
+
+    //@Override
+    public int score(short[][] state, int level) {
+        int columns = state[0].length;
+        int[] indexes = this.indexes.get();
+        Arrays.fill(indexes, 0);
+
+        for (int i = 0; i < state.length; ++i) {
+            for (int j = 0; j < columns; ++j) {
+                int tile = state[i][j];
+                if (tile != 0)
+                    indexes[this.patternOfTile[tile]] += (i * columns + j) * this.weights[tile];
+            }
+        }
+
+        int sum = 0;
+        for (int k = 0; k < this.patterns.length; ++k)
+            sum = sum + this.tables.get(this.offsets[k] + indexes[k]);
+        return sum + level;
+    }
+
+    public void setTargetState(short[][] targetState) {
+        this.targetState = targetState;
+        this.cells = targetState.length * targetState[0].length;
+        this.patterns = (this.givenPatterns != null) ? this.givenPatterns : defaultPatterns(this.cells);
+        final int numberOfPatterns = this.patterns.length;
+        this.indexes = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[numberOfPatterns];
+            }
+        };
+
+        this.patternOfTile = new int[this.cells];
+        this.weights = new int[this.cells];
+        this.offsets = new int[this.patterns.length + 1];
+        Arrays.fill(this.patternOfTile, -1);
+        for (int k = 0; k < this.patterns.length; ++k) {
+            for (int i = 0; i < this.patterns[k].length; ++i) {
+                this.patternOfTile[this.patterns[k][i]] = k;
+                this.weights[this.patterns[k][i]] = pow(this.cells, i);
+            }
+            this.offsets[k + 1] = this.offsets[k] + pow(this.cells, this.patterns[k].length);
+        }
+
+        File file = new File(this.directory, fileName());
+        try {
+            if (!file.exists() || file.length() != this.offsets[this.patterns.length])
+                write(file, build());
+            this.tables = map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds the tables of all the patterns.
+     * @return the tables one after the other
+     */
+    public byte[] build() {
+        byte[] tables = new byte[this.offsets[this.patterns.length]];
+        for (int k = 0; k < this.patterns.length; ++k) {
+            byte[] table = buildPattern(this.patterns[k]);
+            System.arraycopy(table, 0, tables, this.offsets[k], table.length);
+        }
+        return tables;
+    }
+
+    /**
+     * Builds the table of a pattern with a 0-1 breadth first search from the
+     * target state : an abstract state is the positions of the tiles of the
+     * pattern and of the 0, moving the 0 into a tile of the pattern costs 1,
+     * into any other tile costs 0.
+     * @param pattern the tiles of the pattern
+     * @return the minimal cost for each placement of the tiles of the pattern,
+     *         the index of a placement is sum(position(tile i) * cells^i)
+     */
+    private byte[] buildPattern(int[] pattern) {
+        int columns = this.targetState[0].length;
+        int size = pattern.length;
+        int placements = pow(this.cells, size);
+        // the 0 is the last digit of an abstract state
+        byte[] distances = new byte[placements * this.cells];
+        Arrays.fill(distances, UNKNOWN);
+
+        int[] positions = new int[size + 1];
+        for (int p = 0; p < this.cells; ++p) {
+            int tile = this.targetState[p / columns][p % columns];
+            if (tile == 0)
+                positions[size] = p;
+            for (int i = 0; i < size; ++i)
+                if (pattern[i] == tile)
+                    positions[i] = p;
+        }
+
+        // the search goes cost by cost : the moves costing 0 are appended to
+        // the layer being developed, the moves costing 1 to the next one
+        int[] layer = new int[distances.length];
+        int[] next = new int[distances.length];
+        int layerSize = 0, nextSize = 0;
+        int start = encode(positions);
+        distances[start] = 0;
+        layer[layerSize++] = start;
+
+        for (int cost = 0; layerSize > 0; ++cost) {
+            for (int k = 0; k < layerSize; ++k) {
+                int state = layer[k];
+                // the state was reached later with a lower cost
+                if (distances[state] != cost)
+                    continue;
+                decode(state, positions);
+                int blank = positions[size];
+                int bi = blank / columns, bj = blank % columns;
+
+                for (int d = 0; d < 4; ++d) {
+                    int ni = bi + ((d == 0) ? -1 : (d == 1) ? 1 : 0);
+                    int nj = bj + ((d == 2) ? -1 : (d == 3) ? 1 : 0);
+                    if (ni < 0 || ni >= this.targetState.length || nj < 0 || nj >= columns)
+                        continue;
+                    int neighbour = ni * columns + nj;
+
+                    int moved = -1;
+                    for (int i = 0; i < size; ++i)
+                        if (positions[i] == neighbour)
+                            moved = i;
+
+                    if (moved >= 0)
+                        positions[moved] = blank;
+                    positions[size] = neighbour;
+                    int reached = encode(positions);
+                    if (moved >= 0)
+                        positions[moved] = neighbour;
+                    positions[size] = blank;
+
+                    int reachedCost = (moved >= 0) ? cost + 1 : cost;
+                    if (distances[reached] != UNKNOWN && distances[reached] <= reachedCost)
+                        continue;
+                    distances[reached] = (byte) reachedCost;
+                    if (moved >= 0)
+                        next[nextSize++] = reached;
+                    else
+                        layer[layerSize++] = reached;
+                }
+            }
+
+            int[] tmp = layer;
+            layer = next;
+            next = tmp;
+            layerSize = nextSize;
+            nextSize = 0;
+        }
+
+        // the score of a placement is the minimum over the positions of the 0
+        byte[] table = new byte[placements];
+        Arrays.fill(table, UNKNOWN);
+        for (int state = 0; state < distances.length; ++state) {
+            int placement = state % placements;
+            if (distances[state] != UNKNOWN && (table[placement] == UNKNOWN || distances[state] < table[placement]))
+                table[placement] = distances[state];
+        }
+        return table;
+    }
+
+    private int encode(int[] positions) {
+        int state = 0;
+        for (int i = positions.length - 1; i >= 0; --i)
+            state = state * this.cells + positions[i];
+        return state;
+    }
+
+    private void decode(int state, int[] positions) {
+        for (int i = 0; i < positions.length; ++i) {
+            positions[i] = state % this.cells;
+            state = state / this.cells;
+        }
+    }
+
+    /**
+     * @return the tiles from 1 to cells - 1 in groups of DEFAULT_PATTERN_SIZE
+     */
+    private static int[][] defaultPatterns(int cells) {
+        int[][] patterns = new int[(cells - 1 + DEFAULT_PATTERN_SIZE - 1) / DEFAULT_PATTERN_SIZE][];
+        for (int k = 0; k < patterns.length; ++k) {
+            patterns[k] = new int[Math.min(DEFAULT_PATTERN_SIZE, cells - 1 - k * DEFAULT_PATTERN_SIZE)];
+            for (int i = 0; i < patterns[k].length; ++i)
+                patterns[k][i] = k * DEFAULT_PATTERN_SIZE + i + 1;
+        }
+        return patterns;
+    }
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; ++i)
+            result = result * base;
+        return result;
+    }
+
+    private String fileName() {
+        // the tiles above 9 take two digits, they are then separated by dots
+        String separator = (this.cells > 10) ? "." : "";
+        StringBuilder name = new StringBuilder("pdb-");
+        for (int p = 0; p < this.cells; ++p) {
+            if (p != 0)
+                name.append(separator);
+            name.append(this.targetState[p / this.targetState[0].length][p % this.targetState[0].length]);
+        }
+        for (int[] pattern : this.patterns) {
+            name.append('-');
+            for (int i = 0; i < pattern.length; ++i) {
+                if (i != 0)
+                    name.append(separator);
+                name.append(pattern[i]);
+            }
+        }
+        return name.append(".bin").toString();
+    }
+
+    private static void write(File file, byte[] tables) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(tables);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel is closed
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import meta.projet.classesi.solver.DFS;
 import meta.projet.classesi.solver.BFS;
 import meta.projet.classesi.solver.heuristic.MinMoves;
 import meta.projet.classesi.solver.heuristic.MissPlaced;
+import meta.projet.classesi.solver.heuristic.PatternDatabase;
 
 
 
@@ -97,13 +98,20 @@ public class UI {
                 new MinMoves(),
                 getMaxNiveauAStar()
             );
-		}else{
+		}else if(heuristique.equals("MissPlaced")){
 			solver = new AStar(
 					getEtatInitAStar(),
 	                123804765,
 	                new MissPlaced(),
 	                getMaxNiveauAStar()
 	            );
+		}else{
+			solver = new AStar(
+					getEtatInitAStar(),
+	                123804765,
+	                new PatternDatabase(),
+	                getMaxNiveauAStar()
+	            );
 		}
             if (solver.solve()) {
                 
@@ -485,7 +493,7 @@ public class UI {
 		frmProjetMetaheuristique.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frmProjetMetaheuristique.setUndecorated(true);
 		
-		comboBox.setModel(new DefaultComboBoxModel<String>(new String[] {"MinMoves", "MissPlaced"}));
+		comboBox.setModel(new DefaultComboBoxModel<String>(new String[] {"MinMoves", "MissPlaced", "PatternDatabase"}));
 	    comboBox.setBounds(464, 518, 178, 22);
 	    panel_1.add(comboBox);
 		
@@ -1,8 +1,27 @@
 package meta.projet;
 
+import java.io.File;
 import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import meta.projet.service.Algorithm;
+import meta.projet.service.ParameterGrid;
+import meta.projet.service.SolverJob;
+import meta.projet.service.SolverResult;
+import meta.projet.service.SolverService;
+import meta.projet.service.SuccessiveHalvingTuner;
+import meta.projet.service.SweepRunner;
 
 import meta.projet.solver.GASolver;
+import meta.projet.solver.IslandGASolver;
 import meta.projet.solver.PSOSolver;
 import meta.projet.solver.heuristic.MinMoves;
 
@@ -35,11 +54,6 @@ public class App {
     
         short[][] targetState = {{1, 2, 3}, {8, 0, 4}, {7, 6, 5}};
 
-        int[] populationSizesGA = {10, 50, 100};
-        int[] numberOfCrossovers = {20, 30, 50};
-        int[] numberOfMutations = {20, 50, 100, 150};
-        int[] tolerancesGA = {30, 60, 100};
-    
         int[] populationSizesPSO = {10, 100, 200, 500, 1000};
     
         int[] tolerancesPSO = {3, 5, 7, 10};
@@ -53,65 +67,18 @@ public class App {
         switch(choice)
         {
             case 1:
-                System.out.println("initial state; best solution length; population size; initial sequence length; max iterations; selection ratio; number of crossovers; number of mutations; crossover ratio; tolerance; solution best fitness; solution iteration; solution length; execution time");
-                results.write("initial state; best solution length; population size; initial sequence length; max iterations; selection ratio; number of crossovers; number of mutations; crossover ratio; tolerance; solution best fitness; solution iteration; solution length; execution time\n");
-                for (int i = 0; i < initialStates.length; ++i) {
-                    for (int j = 0; j < populationSizesGA.length; ++j) {
-                        for (int k = 0; k < numberOfCrossovers.length; ++k) {
-                            for (int l = 0; l < numberOfMutations.length; ++l) {
-                                for (int m = 0; m < tolerancesGA.length; ++m) {
-                                    GASolver solver = new GASolver(
-                                        initialStates[i], // initialState
-                                        targetState, // targetState
-                                        populationSizesGA[j], // populationSize
-                                        new MinMoves(), // heuristic
-                                        1, // initialSequenceLength
-                                        5000, // maxIter
-                                        0.5f, // selectionRation
-                                        numberOfCrossovers[k], // numberOfCrossovers
-                                        numberOfMutations[l], // numberOfMutations
-                                        0.5f, // crossoverRatio
-                                        tolerancesGA[m] // tolerance 
-                                    );
-                                    startTime = System.nanoTime();
-                                    solver.solve();
-                                    endTime = System.nanoTime();
-
-                                    System.out.println(initialStatesInt[i] + "; " +
-                                        solutionsLengths[i] + "; " +
-                                        populationSizesGA[j] + "; " +
-                                        "1; " +
-                                        "5000; " +
-                                        "0.5; " +
-                                        numberOfCrossovers[k] + "; " +
-                                        numberOfMutations[l] + "; " +
-                                        "0.5; " +
-                                        tolerancesGA[m] + "; " +
-                                        solver.getBestFitness() + "; " +
-                                        solver.getSolutionIteration() + "; " +
-                                        solver.getSolution().length + "; " +
-                                        (endTime - startTime)
-                                    );
-                                    results.write(initialStatesInt[i] + "; " +
-                                        solutionsLengths[i] + "; " +
-                                        populationSizesGA[j] + "; " +
-                                        "1; " +
-                                        "5000; " +
-                                        "0.5; " +
-                                        numberOfCrossovers[k] + "; " +
-                                        numberOfMutations[l] + "; " +
-                                        "0.5; " +
-                                        tolerancesGA[m] + "; " +
-                                        solver.getBestFitness() + "; " +
-                                        solver.getSolutionIteration() + "; " +
-                                        solver.getSolution().length + "; " +
-                                        (endTime - startTime) + "\n"
-                                    );
-                                }
-                            }
-                        }
-                    }
-                }
+                // every GA configuration on every instance, resumed from
+                // results-ga.csv if it was stopped
+                ParameterGrid grid = new ParameterGrid()
+                    .add("populationSize", 10, 50, 100)
+                    .add("numberOfCrossovers", 20, 30, 50)
+                    .add("numberOfMutations", 20, 50, 100, 150)
+                    .add("tol", 30, 60, 100);
+                SweepRunner sweep = new SweepRunner(Algorithm.GA, initialStates, targetState, grid);
+                startTime = System.nanoTime();
+                int runs = sweep.run(new File("results-ga.csv"));
+                endTime = System.nanoTime();
+                System.out.println(runs + " of " + sweep.getNumberOfRuns() + " runs solved in " + (endTime - startTime) + " ns");
                 break;
             case 2:
                 System.out.println("initial state; best solution length; initial sequence length; max iterations; number of particles; w; c1; c2; initial velocity; tolerance; solution best fitness; solution iteration; solution length; execution time");
@@ -164,8 +131,215 @@ public class App {
                         }
                     }
                 }
+                break;
+            case 3:
+                // 15-puzzle
+                short[][][] initialStates15 = {
+                    {{1, 2, 3, 4}, {5, 6, 7, 8}, {9, 10, 0, 11}, {13, 14, 15, 12}}, // 2
+                    {{1, 2, 3, 4}, {5, 6, 0, 8}, {9, 10, 7, 11}, {13, 14, 15, 12}}, // 3
+                    {{1, 2, 3, 4}, {5, 0, 6, 8}, {9, 10, 7, 11}, {13, 14, 15, 12}} // 4
+                };
+                short[][] targetState15 = {{1, 2, 3, 4}, {5, 6, 7, 8}, {9, 10, 11, 12}, {13, 14, 15, 0}};
+
+                System.out.println("solver; instance; solution best fitness; solution iteration; solution length; execution time");
+                for (int i = 0; i < initialStates15.length; ++i) {
+                    GASolver solver = new GASolver(initialStates15[i], targetState15, 50, new MinMoves(),
+                        1, 5000, 0.5f, 30, 50, 0.5f, 60);
+                    startTime = System.nanoTime();
+                    solver.solve();
+                    endTime = System.nanoTime();
+                    System.out.println("GA; " + i + "; " + solver.getBestFitness() + "; " +
+                        solver.getSolutionIteration() + "; " + solver.getSolution().length + "; " +
+                        (endTime - startTime));
+
+                    PSOSolver s = new PSOSolver(initialStates15[i], targetState15, 30.0f, 1.5f, 1.0f, 500, 100, (float)1, 5);
+                    startTime = System.nanoTime();
+                    s.solve();
+                    endTime = System.nanoTime();
+                    System.out.println("PSO; " + i + "; " + s.getCurrentBestEvaluation() + "; " +
+                        s.getSolutionIteration() + "; " + s.getSequenceSize() + "; " +
+                        (endTime - startTime));
+                }
+                break;
+            case 4:
+                // all the instances solved twice by a SolverService, the
+                // second time from its cache
+                SolverService service = new SolverService(Runtime.getRuntime().availableProcessors(), 64);
+                List<SolverJob> jobs = new ArrayList<SolverJob>();
+                for (int pass = 0; pass < 2; ++pass) {
+                    for (int i = 0; i < initialStates.length; ++i) {
+                        jobs.add(new SolverJob(initialStates[i], targetState, Algorithm.GA));
+                        jobs.add(new SolverJob(initialStates[i], targetState, Algorithm.PSO));
+                    }
+                }
+
+                startTime = System.nanoTime();
+                List<CompletableFuture<SolverResult>> futures = service.submitAll(jobs.stream());
+                System.out.println("solver; initial state; solved; solution best fitness; solution iteration; solution length; execution time");
+                for (int i = 0; i < futures.size(); ++i) {
+                    SolverResult result = futures.get(i).get();
+                    System.out.println(result.getAlgorithm() + "; " +
+                        initialStatesInt[(i / 2) % initialStates.length] + "; " +
+                        result.isSolved() + "; " +
+                        result.getBestFitness() + "; " +
+                        result.getSolutionIteration() + "; " +
+                        result.getSolutionLength() + "; " +
+                        result.getExecutionTime());
+                }
+                endTime = System.nanoTime();
+                System.out.println("total time : " + (endTime - startTime) + " | cache hits : " + service.getCacheHits());
+                service.shutdown();
+                break;
+            case 5:
+                // island model against a single population, with the GA
+                // parameters of the case 3
+                int numberOfIslands = Runtime.getRuntime().availableProcessors();
+                int migrationInterval = 20;
+                System.out.println("initial state; best solution length; solver; solution best fitness; solution iteration; solution length; execution time; speedup");
+                for (int i = 0; i < initialStates.length; ++i) {
+                    GASolver solver = new GASolver(initialStates[i], targetState, 50, new MinMoves(),
+                        1, 5000, 0.5f, 30, 50, 0.5f, 60);
+                    startTime = System.nanoTime();
+                    solver.solve();
+                    endTime = System.nanoTime();
+                    long singleTime = endTime - startTime;
+                    System.out.println(initialStatesInt[i] + "; " + solutionsLengths[i] + "; GA; " +
+                        solver.getBestFitness() + "; " + solver.getSolutionIteration() + "; " +
+                        solver.getSolution().length + "; " + singleTime + "; 1");
+
+                    IslandGASolver islands = new IslandGASolver(initialStates[i], targetState,
+                        numberOfIslands, migrationInterval, 2, 50, new MinMoves(),
+                        1, 5000, 0.5f, 30, 50, 0.5f, 60);
+                    startTime = System.nanoTime();
+                    islands.solve();
+                    endTime = System.nanoTime();
+                    System.out.println(initialStatesInt[i] + "; " + solutionsLengths[i] + "; GA x" + numberOfIslands + "; " +
+                        islands.getBestFitness() + "; " + islands.getSolutionIteration() + "; " +
+                        islands.getSolution().length + "; " + (endTime - startTime) + "; " +
+                        String.format("%.2f", (double) singleTime / (endTime - startTime)));
+
+                    // best fitness of each island at each migration
+                    for (int k = 0; k < islands.getNumberOfIslands(); ++k) {
+                        StringBuilder line = new StringBuilder("    island " + k + (k == islands.getSolutionIsland() ? " *" : "") + " :");
+                        int[] convergence = islands.getConvergence(k);
+                        for (int g = migrationInterval - 1; g < convergence.length; g = g + migrationInterval)
+                            line.append(" ").append(convergence[g]);
+                        if (convergence.length % migrationInterval != 0)
+                            line.append(" ").append(convergence[convergence.length - 1]);
+                        System.out.println(line);
+                    }
+                }
+                break;
+            case 6:
+                // PSO with the biggest swarm of the case 2, its particles
+                // updated in the calling thread then in a fork/join pool
+                ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                int numParticles = populationSizesPSO[populationSizesPSO.length - 1];
+                System.out.println("initial state; best solution length; update; solution best fitness; solution iteration; solution length; execution time");
+                for (int i = 0; i < initialStates.length; ++i) {
+                    for (int parallel = 0; parallel < 2; ++parallel) {
+                        PSOSolver s = new PSOSolver(initialStates[i], targetState, 30.0f, 1.5f, 1.0f, 500, numParticles, (float)1, 5);
+                        if (parallel == 1)
+                            s.setParallel(pool);
+                        startTime = System.nanoTime();
+                        s.solve();
+                        endTime = System.nanoTime();
+                        System.out.println(initialStatesInt[i] + "; " + solutionsLengths[i] + "; " +
+                            (parallel == 1 ? "parallel x" + pool.getParallelism() : "sequential") + "; " +
+                            s.getCurrentBestEvaluation() + "; " + s.getSolutionIteration() + "; " +
+                            s.getSequenceSize() + "; " + (endTime - startTime));
+                    }
+                }
+                pool.shutdown();
+                break;
+            case 7:
+                // many PSO solves at the same time must give the results of
+                // the solves run one after the other
+                final int copies = 4;
+                String[] expected = new String[initialStates.length];
+                for (int i = 0; i < initialStates.length; ++i)
+                    expected[i] = psoResult(initialStates[i], targetState);
+
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+                List<Future<String>> solves = new ArrayList<Future<String>>();
+                for (int c = 0; c < copies; ++c) {
+                    for (int i = 0; i < initialStates.length; ++i) {
+                        final short[][] initialState = initialStates[i];
+                        solves.add(executor.submit(new Callable<String>() {
+                            public String call() {
+                                return psoResult(initialState, targetState);
+                            }
+                        }));
+                    }
+                }
+                boolean deterministic = true;
+                System.out.println("initial state; copy; result; expected");
+                for (int k = 0; k < solves.size(); ++k) {
+                    int i = k % initialStates.length;
+                    String result = solves.get(k).get();
+                    deterministic = deterministic && result.equals(expected[i]);
+                    System.out.println(initialStatesInt[i] + "; " + (k / initialStates.length) + "; " + result + "; " + expected[i]);
+                }
+                executor.shutdown();
+                System.out.println("deterministic : " + deterministic);
+                break;
+            case 8:
+                // the best GA configuration of the case 1, by successive
+                // halving from 5000 / 3^4 generations
+                ParameterGrid tuningGrid = new ParameterGrid()
+                    .add("populationSize", 10, 50, 100)
+                    .add("numberOfCrossovers", 20, 30, 50)
+                    .add("numberOfMutations", 20, 50, 100, 150)
+                    .add("tol", 30, 60, 100);
+                SuccessiveHalvingTuner tuner = new SuccessiveHalvingTuner(Algorithm.GA, initialStates, targetState,
+                    tuningGrid, 5000 / 81, 5000, 3);
+                startTime = System.nanoTime();
+                System.out.println("best configuration : " + tuner.tune());
+                endTime = System.nanoTime();
+                System.out.println(tuner.getNumberOfRounds() + " rounds, " + tuner.getNumberOfIterations() + " generations of " +
+                    tuner.getFullBudgetIterations() + " for the full sweep, " + (endTime - startTime) + " ns");
+                break;
+            case 9:
+                // a GA stopped after 2500 generations and resumed from its
+                // checkpoint must end as the one never stopped
+                File checkpoint = new File("checkpoint-ga.bin");
+                boolean identical = true;
+                System.out.println("initial state; best fitness; solution iteration; resumed best fitness; resumed solution iteration");
+                for (int i = 0; i < initialStates.length; ++i) {
+                    GASolver uninterrupted = new GASolver(initialStates[i], targetState, 50, new MinMoves(), 1, 5000, 0.5f, 30, 50, 0.5f, 60);
+                    uninterrupted.solve();
+
+                    GASolver stopped = new GASolver(initialStates[i], targetState, 50, new MinMoves(), 1, 5000, 0.5f, 30, 50, 0.5f, 60);
+                    stopped.initialize();
+                    while (stopped.getIteration() < 2500 && !stopped.isFound())
+                        stopped.nextGeneration();
+                    stopped.checkpoint(checkpoint);
+
+                    GASolver resumed = new GASolver(initialStates[i], targetState, 50, new MinMoves(), 1, 5000, 0.5f, 30, 50, 0.5f, 60);
+                    resumed.setCheckpoint(checkpoint, 1000);
+                    resumed.solve();
+                    checkpoint.delete();
+
+                    identical = identical && uninterrupted.getBestFitness() == resumed.getBestFitness()
+                        && uninterrupted.getSolutionIteration() == resumed.getSolutionIteration()
+                        && Arrays.equals(uninterrupted.getSolution(), resumed.getSolution());
+                    System.out.println(initialStatesInt[i] + "; " + uninterrupted.getBestFitness() + "; " + uninterrupted.getSolutionIteration()
+                        + "; " + resumed.getBestFitness() + "; " + resumed.getSolutionIteration());
+                }
+                System.out.println("identical : " + identical);
+                break;
         }
     
         results.close();
     }
+
+    /**
+     * @return the best fitness, the iteration and the sequence size of a PSO
+     *         solve with the parameters of the case 3
+     */
+    private static String psoResult(short[][] initialState, short[][] targetState) {
+        PSOSolver s = new PSOSolver(initialState, targetState, 30.0f, 1.5f, 1.0f, 500, 100, (float)1, 5);
+        s.solve();
+        return s.getCurrentBestEvaluation() + " " + s.getSolutionIteration() + " " + s.getSequenceSize();
+    }
 }
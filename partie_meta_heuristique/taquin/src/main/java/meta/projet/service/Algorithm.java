@@ -0,0 +1,8 @@
+package meta.projet.service;
+
+/**
+ * The metaheuristics a SolverService can run.
+ */
+public enum Algorithm {
+    GA, PSO
+}
@@ -0,0 +1,78 @@
+package meta.projet.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values taken by the parameters of a sweep (see SweepRunner) : every
+ * combination of the values of the parameters is a configuration.
+ *
+ * The configurations are numbered as by nested loops over the parameters in
+ * the order they were added, the last parameter changing first.
+ */
+public class ParameterGrid {
+    private List<String> names;
+    private List<Number[]> values;
+
+    public ParameterGrid() {
+        this.names = new ArrayList<String>();
+        this.values = new ArrayList<Number[]>();
+    }
+
+    /**
+     * Adds a parameter to the grid.
+     * @param name the name of the parameter, as in SolverJob
+     * @param values the values of the parameter
+     * @return the grid
+     */
+    public ParameterGrid add(String name, Number... values) {
+        if (values.length == 0)
+            throw new IllegalArgumentException("the parameter " + name + " has no value");
+        if (this.names.contains(name))
+            throw new IllegalArgumentException("the parameter " + name + " is already in the grid");
+        this.names.add(name);
+        this.values.add(values.clone());
+        return this;
+    }
+
+    /**
+     * @return the names of the parameters, in the order they were added
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(this.names);
+    }
+
+    /**
+     * @return the number of configurations
+     */
+    public int size() {
+        int size = 1;
+        for (Number[] parameterValues : this.values)
+            size = size * parameterValues.length;
+        return size;
+    }
+
+    /**
+     * @param index the number of a configuration, from 0 to size() - 1
+     * @return the value of each parameter in the configuration
+     */
+    public Map<String, Number> get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("configuration " + index + " of " + size());
+        Map<String, Number> configuration = new LinkedHashMap<String, Number>();
+        for (int k = this.names.size() - 1; k >= 0; --k) {
+            Number[] parameterValues = this.values.get(k);
+            configuration.put(this.names.get(k), parameterValues[index % parameterValues.length]);
+            index = index / parameterValues.length;
+        }
+
+        // back to the order of the parameters
+        Map<String, Number> ordered = new LinkedHashMap<String, Number>();
+        for (String name : this.names)
+            ordered.put(name, configuration.get(name));
+        return ordered;
+    }
+}
@@ -0,0 +1,125 @@
+package meta.projet.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A state to solve by a SolverService : the initial and the target states,
+ * the algorithm and its parameters, and the time allowed to the solver.
+ *
+ * The parameters are named as the arguments of the constructors of GASolver
+ * and PSOSolver, the missing ones take the values used by App :
+ * - GA : populationSize (50), initialSequenceLength (1), maxIter (5000),
+ *   selectionRatio (0.5), numberOfCrossovers (30), numberOfMutations (50),
+ *   crossoverRatio (0.5), tol (60), the heuristic being MinMoves ;
+ * - PSO : w (30), c1 (1.5), c2 (1), maxIteration (500), numParticles (100),
+ *   initialVelocity (1), tol (5).
+ * Both take a seed (42), given to the setSeed of the solver.
+ */
+public class SolverJob {
+    private static final Map<String, Number> GA_PARAMETERS = new HashMap<String, Number>();
+    private static final Map<String, Number> PSO_PARAMETERS = new HashMap<String, Number>();
+
+    static {
+        GA_PARAMETERS.put("populationSize", 50);
+        GA_PARAMETERS.put("initialSequenceLength", 1);
+        GA_PARAMETERS.put("maxIter", 5000);
+        GA_PARAMETERS.put("selectionRatio", 0.5f);
+        GA_PARAMETERS.put("numberOfCrossovers", 30);
+        GA_PARAMETERS.put("numberOfMutations", 50);
+        GA_PARAMETERS.put("crossoverRatio", 0.5f);
+        GA_PARAMETERS.put("tol", 60);
+        GA_PARAMETERS.put("seed", 42L);
+
+        PSO_PARAMETERS.put("w", 30.0f);
+        PSO_PARAMETERS.put("c1", 1.5f);
+        PSO_PARAMETERS.put("c2", 1.0f);
+        PSO_PARAMETERS.put("maxIteration", 500);
+        PSO_PARAMETERS.put("numParticles", 100);
+        PSO_PARAMETERS.put("initialVelocity", 1.0f);
+        PSO_PARAMETERS.put("tol", 5);
+        PSO_PARAMETERS.put("seed", 42L);
+    }
+
+    private short[][] initialState;
+    private short[][] targetState;
+    private Algorithm algorithm;
+    private Map<String, Number> parameters;
+    private long timeout;
+
+    /**
+     * SolverJob constructor, the default parameters are used and the solver
+     * has no time limit.
+     */
+    public SolverJob(short[][] initialState, short[][] targetState, Algorithm algorithm) {
+        this(initialState, targetState, algorithm, Collections.<String, Number>emptyMap(), 0);
+    }
+
+    /**
+     * SolverJob constructor.
+     * @param initialState the initial state that the solver starts from
+     * @param targetState the target state that the solver needs to reach
+     * @param algorithm the metaheuristic to run
+     * @param parameters the parameters replacing the default ones
+     * @param timeout the time allowed to the solver in milliseconds, 0 for no
+     *        limit
+     */
+    public SolverJob(short[][] initialState, short[][] targetState, Algorithm algorithm,
+            Map<String, Number> parameters, long timeout) {
+        Map<String, Number> defaults = (algorithm == Algorithm.GA) ? GA_PARAMETERS : PSO_PARAMETERS;
+        for (String name : parameters.keySet())
+            if (!defaults.containsKey(name))
+                throw new IllegalArgumentException("unknown " + algorithm + " parameter : " + name);
+
+        this.initialState = copy(initialState);
+        this.targetState = copy(targetState);
+        this.algorithm = algorithm;
+        this.parameters = new HashMap<String, Number>(defaults);
+        this.parameters.putAll(parameters);
+        this.timeout = timeout;
+    }
+
+    private static short[][] copy(short[][] state) {
+        short[][] copy = new short[state.length][];
+        for (int i = 0; i < state.length; ++i)
+            copy[i] = Arrays.copyOf(state[i], state[i].length);
+        return copy;
+    }
+
+    public short[][] getInitialState() {
+        return this.initialState;
+    }
+
+    public short[][] getTargetState() {
+        return this.targetState;
+    }
+
+    public Algorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    public int getInt(String name) {
+        return this.parameters.get(name).intValue();
+    }
+
+    public float getFloat(String name) {
+        return this.parameters.get(name).floatValue();
+    }
+
+    public long getLong(String name) {
+        return this.parameters.get(name).longValue();
+    }
+
+    /**
+     * @return all the parameters of the job, the default ones included
+     */
+    Map<String, Number> getParameters() {
+        return Collections.unmodifiableMap(this.parameters);
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+}
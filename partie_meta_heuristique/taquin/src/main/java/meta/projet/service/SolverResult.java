@@ -0,0 +1,68 @@
+package meta.projet.service;
+
+/**
+ * The outcome of a SolverJob.
+ *
+ * The best fitness is the one of the solver : the heuristic of the best
+ * sequence for GA (0 when the target state is reached), the number of well
+ * placed cells for PSO (the number of cells of the board when it is reached).
+ */
+public class SolverResult {
+    private Algorithm algorithm;
+    private boolean solved;
+    private int bestFitness;
+    private int solutionIteration;
+    private int solutionLength;
+    private float[] solution;
+    private long executionTime;
+
+    public SolverResult(Algorithm algorithm, boolean solved, int bestFitness,
+            int solutionIteration, int solutionLength, float[] solution, long executionTime) {
+        this.algorithm = algorithm;
+        this.solved = solved;
+        this.bestFitness = bestFitness;
+        this.solutionIteration = solutionIteration;
+        this.solutionLength = solutionLength;
+        this.solution = solution;
+        this.executionTime = executionTime;
+    }
+
+    public Algorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * @return true if the best sequence reaches the target state
+     */
+    public boolean isSolved() {
+        return this.solved;
+    }
+
+    public int getBestFitness() {
+        return this.bestFitness;
+    }
+
+    public int getSolutionIteration() {
+        return this.solutionIteration;
+    }
+
+    public int getSolutionLength() {
+        return this.solutionLength;
+    }
+
+    /**
+     * @return the best sequence of moves, only its first getSolutionLength()
+     *         genes are used
+     */
+    public float[] getSolution() {
+        return this.solution;
+    }
+
+    /**
+     * @return the time taken by the solver in nanoseconds, the time of the
+     *         first run for the results served from the cache
+     */
+    public long getExecutionTime() {
+        return this.executionTime;
+    }
+}
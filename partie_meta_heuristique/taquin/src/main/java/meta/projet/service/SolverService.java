@@ -0,0 +1,302 @@
+package meta.projet.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import meta.projet.solver.GASolver;
+import meta.projet.solver.PSOSolver;
+import meta.projet.solver.heuristic.MinMoves;
+
+/**
+ * Runs SolverJobs on an executor, each job giving a CompletableFuture of its
+ * SolverResult.
+ *
+ * The futures are kept in a bounded cache indexed by the initial state, the
+ * target state, the algorithm and the parameters (seed and budget included)
+ * of the jobs, the least recently used one being removed when the cache is
+ * full : a job already submitted gets the future of the first one, whether
+ * it is still running or not. Only the solved results stay in the cache, the
+ * jobs failing, running out of time or ending without a solution are removed
+ * from it once they complete.
+ *
+ * The time of a job is counted from the start of its solver, not from its
+ * submission, the time spent waiting for a thread of the executor doesn't
+ * count. When a job runs out of time its future completes with a
+ * TimeoutException and the thread of the solver is interrupted, GASolver and
+ * PSOSolver stop at the end of the current iteration.
+ */
+public class SolverService {
+    private ExecutorService executor;
+    private boolean ownedExecutor;
+    private ScheduledExecutorService timer;
+    private Map<Key, CompletableFuture<SolverResult>> cache;
+    private int cacheHits;
+
+    /**
+     * SolverService constructor, the jobs are run by a pool of the given
+     * number of threads which is shut down with the service.
+     * @param numberOfThreads the number of jobs run at the same time
+     * @param cacheSize the maximum number of results kept
+     */
+    public SolverService(int numberOfThreads, int cacheSize) {
+        this(Executors.newFixedThreadPool(numberOfThreads), cacheSize);
+        this.ownedExecutor = true;
+    }
+
+    /**
+     * SolverService constructor.
+     * @param executor the executor running the jobs, it isn't shut down with
+     *        the service
+     * @param cacheSize the maximum number of results kept
+     */
+    public SolverService(ExecutorService executor, final int cacheSize) {
+        this.executor = executor;
+        this.ownedExecutor = false;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solver-service-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.cache = new LinkedHashMap<Key, CompletableFuture<SolverResult>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<SolverResult>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.cacheHits = 0;
+    }
+
+    /**
+     * Submits a job, or gives the future of the same job if it is cached.
+     * @param job the job to run
+     * @return the future result of the job
+     */
+    public CompletableFuture<SolverResult> submit(final SolverJob job) {
+        final Key key = new Key(job);
+        final CompletableFuture<SolverResult> result;
+        synchronized (this.cache) {
+            CompletableFuture<SolverResult> cached = this.cache.get(key);
+            if (cached != null) {
+                this.cacheHits = this.cacheHits + 1;
+                return cached;
+            }
+            result = new CompletableFuture<SolverResult>();
+            this.cache.put(key, result);
+        }
+
+        this.executor.execute(new Execution(job, result));
+
+        result.whenComplete(new BiConsumer<SolverResult, Throwable>() {
+            @Override
+            public void accept(SolverResult value, Throwable failure) {
+                if (failure != null || !value.isSolved()) {
+                    synchronized (cache) {
+                        cache.remove(key, result);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Submits a stream of jobs.
+     * @param jobs the jobs to run
+     * @return the future results, in the order of the jobs
+     */
+    public List<CompletableFuture<SolverResult>> submitAll(Stream<SolverJob> jobs) {
+        List<CompletableFuture<SolverResult>> results = new ArrayList<CompletableFuture<SolverResult>>();
+        Iterator<SolverJob> iterator = jobs.iterator();
+        while (iterator.hasNext())
+            results.add(submit(iterator.next()));
+        return results;
+    }
+
+    /**
+     * @return the GASolver of a GA job, seeded
+     */
+    static GASolver newGASolver(SolverJob job) {
+        GASolver ga = new GASolver(job.getInitialState(), job.getTargetState(),
+            job.getInt("populationSize"), new MinMoves(), job.getInt("initialSequenceLength"),
+            job.getInt("maxIter"), job.getFloat("selectionRatio"), job.getInt("numberOfCrossovers"),
+            job.getInt("numberOfMutations"), job.getFloat("crossoverRatio"), job.getInt("tol"));
+        ga.setSeed(job.getLong("seed"));
+        return ga;
+    }
+
+    /**
+     * @return the PSOSolver of a PSO job, seeded
+     */
+    static PSOSolver newPSOSolver(SolverJob job) {
+        PSOSolver pso = new PSOSolver(job.getInitialState(), job.getTargetState(),
+            job.getFloat("w"), job.getFloat("c1"), job.getFloat("c2"), job.getInt("maxIteration"),
+            job.getInt("numParticles"), job.getFloat("initialVelocity"), job.getInt("tol"));
+        pso.setSeed(job.getLong("seed"));
+        return pso;
+    }
+
+    /**
+     * Runs the solver of a job on the calling thread.
+     */
+    static SolverResult run(SolverJob job) {
+        long startTime, endTime;
+        switch (job.getAlgorithm()) {
+            case GA:
+                GASolver ga = newGASolver(job);
+                startTime = System.nanoTime();
+                ga.solve();
+                endTime = System.nanoTime();
+                return new SolverResult(Algorithm.GA, ga.getBestFitness() == 0, ga.getBestFitness(),
+                    ga.getSolutionIteration(), ga.getSolution().length, ga.getSolution(), endTime - startTime);
+            case PSO:
+                PSOSolver pso = newPSOSolver(job);
+                startTime = System.nanoTime();
+                pso.solve();
+                endTime = System.nanoTime();
+                int cells = job.getInitialState().length * job.getInitialState()[0].length;
+                return new SolverResult(Algorithm.PSO, pso.getCurrentBestEvaluation() == cells,
+                    pso.getCurrentBestEvaluation(), pso.getSolutionIteration(), pso.getSequenceSize(),
+                    pso.getGBest(), endTime - startTime);
+            default:
+                throw new IllegalArgumentException("unknown algorithm : " + job.getAlgorithm());
+        }
+    }
+
+    /**
+     * @return the number of jobs served from the cache
+     */
+    public int getCacheHits() {
+        synchronized (this.cache) {
+            return this.cacheHits;
+        }
+    }
+
+    /**
+     * @return the number of results kept
+     */
+    public int getCacheSize() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    /**
+     * Stops the timer of the timeouts, and the executor if it was created by
+     * the service. The jobs already submitted are still run.
+     */
+    public void shutdown() {
+        this.timer.shutdown();
+        if (this.ownedExecutor)
+            this.executor.shutdown();
+    }
+
+    /**
+     * Runs the solver of a job on a thread of the executor, the timeout of the
+     * job starting with the solver.
+     */
+    private class Execution implements Runnable {
+        private SolverJob job;
+        private CompletableFuture<SolverResult> result;
+        private Thread worker;
+
+        Execution(SolverJob job, CompletableFuture<SolverResult> result) {
+            this.job = job;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                this.worker = Thread.currentThread();
+            }
+            ScheduledFuture<?> timeout = null;
+            if (this.job.getTimeout() > 0) {
+                timeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        expire();
+                    }
+                }, this.job.getTimeout(), TimeUnit.MILLISECONDS);
+            }
+
+            try {
+                this.result.complete(SolverService.run(this.job));
+            } catch (Throwable t) {
+                this.result.completeExceptionally(t);
+            } finally {
+                if (timeout != null)
+                    timeout.cancel(false);
+                // the thread goes back to the executor, it must not be
+                // interrupted once the job is done
+                synchronized (this) {
+                    this.worker = null;
+                }
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Completes the result with a TimeoutException and interrupts the
+         * solver if it is still running.
+         */
+        private synchronized void expire() {
+            if (this.worker != null && this.result.completeExceptionally(new TimeoutException(
+                    this.job.getAlgorithm() + " job timed out after " + this.job.getTimeout() + " ms")))
+                this.worker.interrupt();
+        }
+    }
+
+    /**
+     * The key of the cache : the initial state, the target state, the
+     * algorithm and the parameters of a job.
+     */
+    private static class Key {
+        private short[][] initialState;
+        private short[][] targetState;
+        private Algorithm algorithm;
+        private Map<String, Number> parameters;
+
+        Key(SolverJob job) {
+            this.initialState = job.getInitialState();
+            this.targetState = job.getTargetState();
+            this.algorithm = job.getAlgorithm();
+            this.parameters = job.getParameters();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || o.getClass() != this.getClass())
+                return false;
+            Key other = (Key) o;
+            return this.algorithm == other.algorithm
+                && this.parameters.equals(other.parameters)
+                && Arrays.deepEquals(this.initialState, other.initialState)
+                && Arrays.deepEquals(this.targetState, other.targetState);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * Arrays.deepHashCode(this.initialState) + Arrays.deepHashCode(this.targetState))
+                + this.algorithm.hashCode()) + this.parameters.hashCode();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package meta.projet.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import meta.projet.solver.GASolver;
+import meta.projet.solver.PSOSolver;
+
+/**
+ * Looks for the best configuration of a ParameterGrid by successive halving :
+ * every configuration solves all the initial states with a small budget of
+ * iterations, then only the best 1 / eta of them (rounded up) go on with a
+ * budget eta times bigger, and so on until the maximum budget is reached.
+ *
+ * The solvers of a configuration are kept between two rounds, a promoted
+ * configuration resumes its populations (GASolver.nextGeneration,
+ * PSOSolver.nextIteration) instead of starting over, so a configuration
+ * reaching the maximum budget costs the same as a single full run.
+ *
+ * The configurations are ranked by the number of states they didn't solve,
+ * then by the sum of the fitness of their best individuals on all the states
+ * (0 for a solved state, the number of misplaced cells for PSO), then by the
+ * number of iterations they ran.
+ */
+public class SuccessiveHalvingTuner {
+    private Algorithm algorithm;
+    private short[][][] initialStates;
+    private short[][] targetState;
+    private ParameterGrid grid;
+    private int minBudget;
+    private int maxBudget;
+    private int eta;
+    private int numberOfThreads;
+
+    private long numberOfIterations;
+    private int numberOfRounds;
+
+    /**
+     * SuccessiveHalvingTuner constructor, the configurations are run by as
+     * many threads as there are processors.
+     * @param algorithm the metaheuristic to tune
+     * @param initialStates the initial states solved by every configuration
+     * @param targetState the target state of all the runs
+     * @param grid the configurations, the maximum number of iterations is set
+     *        by the tuner
+     * @param minBudget the number of iterations of the first round
+     * @param maxBudget the maximum number of iterations of a configuration
+     * @param eta the factor between the budgets of two rounds, and between
+     *        the numbers of configurations
+     */
+    public SuccessiveHalvingTuner(Algorithm algorithm, short[][][] initialStates, short[][] targetState,
+            ParameterGrid grid, int minBudget, int maxBudget, int eta) {
+        if (minBudget < 1 || maxBudget < minBudget || eta < 2)
+            throw new IllegalArgumentException("the budgets must be 1 <= minBudget <= maxBudget and eta at least 2");
+        this.algorithm = algorithm;
+        this.initialStates = initialStates;
+        this.targetState = targetState;
+        this.grid = grid;
+        this.minBudget = minBudget;
+        this.maxBudget = maxBudget;
+        this.eta = eta;
+        this.numberOfThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Runs the successive halving.
+     * @return the best configuration
+     */
+    public Map<String, Number> tune() throws InterruptedException, ExecutionException {
+        List<Candidate> all = new ArrayList<Candidate>();
+        for (int c = 0; c < this.grid.size(); ++c)
+            all.add(new Candidate(this.grid.get(c)));
+        List<Candidate> candidates = new ArrayList<Candidate>(all);
+
+        this.numberOfIterations = 0;
+        this.numberOfRounds = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads);
+        try {
+            int budget = this.minBudget;
+            while (true) {
+                final int roundBudget = budget;
+                List<Callable<Void>> rounds = new ArrayList<Callable<Void>>();
+                for (final Candidate candidate : candidates) {
+                    rounds.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            candidate.run(roundBudget);
+                            return null;
+                        }
+                    });
+                }
+                for (Future<Void> round : executor.invokeAll(rounds))
+                    round.get();
+                this.numberOfRounds = this.numberOfRounds + 1;
+
+                // the sort is stable, equal configurations keep the order of the grid
+                Collections.sort(candidates, new Comparator<Candidate>() {
+                    @Override
+                    public int compare(Candidate c1, Candidate c2) {
+                        return Long.compare(c1.score(), c2.score());
+                    }
+                });
+                if (budget == this.maxBudget)
+                    break;
+                candidates = new ArrayList<Candidate>(candidates.subList(0, (candidates.size() + this.eta - 1) / this.eta));
+                budget = (int) Math.min((long) budget * this.eta, this.maxBudget);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (Candidate candidate : all)
+            this.numberOfIterations = this.numberOfIterations + candidate.iterations;
+        return candidates.get(0).configuration;
+    }
+
+    /**
+     * @return the number of iterations run by all the solvers of the last
+     *         tuning, each state of each configuration counting
+     */
+    public long getNumberOfIterations() {
+        return this.numberOfIterations;
+    }
+
+    /**
+     * @return the number of iterations of a sweep running every configuration
+     *         with the maximum budget
+     */
+    public long getFullBudgetIterations() {
+        return (long) this.grid.size() * this.initialStates.length * this.maxBudget;
+    }
+
+    public int getNumberOfRounds() {
+        return this.numberOfRounds;
+    }
+
+    /**
+     * A configuration and its solvers, one per initial state.
+     */
+    private class Candidate {
+        private Map<String, Number> configuration;
+        private GASolver[] gaSolvers;
+        private PSOSolver[] psoSolvers;
+        private int cells;
+        private long iterations;
+
+        Candidate(Map<String, Number> configuration) {
+            this.configuration = configuration;
+            this.cells = targetState.length * targetState[0].length;
+            this.iterations = 0;
+        }
+
+        /**
+         * Runs the solvers up to budget iterations, they are created on the
+         * first round.
+         */
+        void run(int budget) {
+            if (gaSolvers == null && psoSolvers == null) {
+                gaSolvers = new GASolver[initialStates.length];
+                psoSolvers = new PSOSolver[initialStates.length];
+                for (int i = 0; i < initialStates.length; ++i) {
+                    Map<String, Number> parameters = new HashMap<String, Number>(this.configuration);
+                    parameters.put((algorithm == Algorithm.GA) ? "maxIter" : "maxIteration", maxBudget);
+                    SolverJob job = new SolverJob(initialStates[i], targetState, algorithm, parameters, 0);
+                    if (algorithm == Algorithm.GA) {
+                        gaSolvers[i] = SolverService.newGASolver(job);
+                        gaSolvers[i].initialize();
+                    } else {
+                        psoSolvers[i] = SolverService.newPSOSolver(job);
+                        psoSolvers[i].initialize();
+                    }
+                }
+            }
+
+            for (int i = 0; i < initialStates.length; ++i) {
+                if (algorithm == Algorithm.GA) {
+                    GASolver solver = gaSolvers[i];
+                    while (solver.getIteration() < budget && !solver.isFound()) {
+                        solver.nextGeneration();
+                        this.iterations = this.iterations + 1;
+                    }
+                } else {
+                    PSOSolver solver = psoSolvers[i];
+                    while (solver.getIteration() < budget && !solver.isFinished()) {
+                        solver.nextIteration();
+                        this.iterations = this.iterations + 1;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the number of unsolved states in the 16 high bits, the sum
+         *         of the fitness in the next 16 bits, the sum of the
+         *         iterations in the low ones, the lower the better
+         */
+        long score() {
+            long unsolved = 0, fitness = 0, solverIterations = 0;
+            for (int i = 0; i < initialStates.length; ++i) {
+                if (algorithm == Algorithm.GA) {
+                    unsolved = unsolved + (gaSolvers[i].isFound() ? 0 : 1);
+                    fitness = fitness + (gaSolvers[i].isFound() ? 0 : gaSolvers[i].getCurrentBestFitness());
+                    solverIterations = solverIterations + gaSolvers[i].getIteration();
+                } else {
+                    unsolved = unsolved + (psoSolvers[i].getCurrentBestEvaluation() == this.cells ? 0 : 1);
+                    fitness = fitness + this.cells - psoSolvers[i].getCurrentBestEvaluation();
+                    solverIterations = solverIterations + psoSolvers[i].getIteration();
+                }
+            }
+            return (unsolved << 48) | (fitness << 32) | solverIterations;
+        }
+    }
+}
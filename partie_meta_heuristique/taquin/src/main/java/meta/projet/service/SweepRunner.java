@@ -0,0 +1,207 @@
+package meta.projet.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs an algorithm on every configuration of a ParameterGrid for each of the
+ * given initial states, the runs being solved in parallel.
+ *
+ * The run r solves the initial state r / grid.size() with the configuration
+ * r % grid.size(), as the nested loops of App. Each run has its own seed,
+ * computed from the seed of the sweep and the number of the run (unless the
+ * grid sets the seed), so a run gives the same result whatever the order the
+ * runs are solved in.
+ *
+ * The results are written to a CSV file (separated by ';', a line per run, in
+ * the order the runs end) by the calling thread only. When the file already
+ * holds results of the same sweep, its runs are not solved again : a sweep
+ * stopped before its end is resumed by running it again on the same file.
+ */
+public class SweepRunner {
+    private Algorithm algorithm;
+    private short[][][] initialStates;
+    private short[][] targetState;
+    private ParameterGrid grid;
+    private int numberOfThreads;
+    private long seed;
+
+    /**
+     * SweepRunner constructor, the runs are solved by as many threads as
+     * there are processors.
+     * @param algorithm the metaheuristic to run
+     * @param initialStates the initial states to solve
+     * @param targetState the target state of all the runs
+     * @param grid the parameters of the runs, the other ones taking the
+     *        default values of SolverJob
+     */
+    public SweepRunner(Algorithm algorithm, short[][][] initialStates, short[][] targetState, ParameterGrid grid) {
+        this.algorithm = algorithm;
+        this.initialStates = initialStates;
+        this.targetState = targetState;
+        this.grid = grid;
+        this.numberOfThreads = Runtime.getRuntime().availableProcessors();
+        this.seed = 42;
+        // unknown parameters are rejected before any run
+        getJob(0);
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * @param seed the seed the seeds of the runs are computed from
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getNumberOfRuns() {
+        return this.initialStates.length * this.grid.size();
+    }
+
+    /**
+     * @return the job of the run r
+     */
+    public SolverJob getJob(int r) {
+        Map<String, Number> parameters = this.grid.get(r % this.grid.size());
+        if (!parameters.containsKey("seed"))
+            parameters.put("seed", new SplittableRandom(this.seed + r).nextLong());
+        return new SolverJob(this.initialStates[r / this.grid.size()], this.targetState, this.algorithm, parameters, 0);
+    }
+
+    /**
+     * @return the first line of the output file
+     */
+    private String header() {
+        StringBuilder header = new StringBuilder("run; instance");
+        for (String name : this.grid.getNames())
+            header.append("; ").append(name);
+        if (!this.grid.getNames().contains("seed"))
+            header.append("; seed");
+        header.append("; solved; solution best fitness; solution iteration; solution length; execution time");
+        return header.toString();
+    }
+
+    /**
+     * Solves the runs which are not in the output file yet.
+     * @param output the CSV file of the results, created if it doesn't exist
+     * @return the number of runs solved
+     * @throws IllegalArgumentException if the output file holds the results
+     *         of another sweep
+     * @throws ExecutionException if a run failed, the runs ended before it
+     *         being kept in the file
+     */
+    public int run(File output) throws IOException, InterruptedException, ExecutionException {
+        Set<Integer> done = readDone(output);
+        ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads);
+        CompletionService<Object[]> runs = new ExecutorCompletionService<Object[]>(executor);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(output, true));
+        try {
+            if (done == null)
+                writer.write(header() + "\n");
+
+            int submitted = 0;
+            for (int r = 0; r < getNumberOfRuns(); ++r) {
+                if (done != null && done.contains(r))
+                    continue;
+                final int run = r;
+                final SolverJob job = getJob(r);
+                runs.submit(new Callable<Object[]>() {
+                    @Override
+                    public Object[] call() {
+                        return new Object[] {run, job, SolverService.run(job)};
+                    }
+                });
+                submitted = submitted + 1;
+            }
+
+            StringBuilder line = new StringBuilder();
+            for (int k = 0; k < submitted; ++k) {
+                Object[] result = runs.take().get();
+                line.setLength(0);
+                format((Integer) result[0], (SolverJob) result[1], (SolverResult) result[2], line);
+                writer.write(line.toString());
+                // a run takes far longer than a write, the line is kept even
+                // if the sweep is stopped
+                writer.flush();
+            }
+            return submitted;
+        } finally {
+            executor.shutdownNow();
+            writer.close();
+        }
+    }
+
+    private void format(int r, SolverJob job, SolverResult result, StringBuilder line) {
+        line.append(r).append("; ").append(r / this.grid.size());
+        Map<String, Number> parameters = this.grid.get(r % this.grid.size());
+        for (Number value : parameters.values())
+            line.append("; ").append(value);
+        if (!parameters.containsKey("seed"))
+            line.append("; ").append(job.getLong("seed"));
+        line.append("; ").append(result.isSolved())
+            .append("; ").append(result.getBestFitness())
+            .append("; ").append(result.getSolutionIteration())
+            .append("; ").append(result.getSolutionLength())
+            .append("; ").append(result.getExecutionTime())
+            .append('\n');
+    }
+
+    /**
+     * Reads the runs already in the output file, the last line being removed
+     * if it wasn't written completely.
+     * @return the numbers of the runs, null if the file doesn't exist or is
+     *         empty
+     */
+    private Set<Integer> readDone(File output) throws IOException {
+        if (!output.exists() || output.length() == 0)
+            return null;
+
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        long end = file.length();
+        try {
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n')
+                    break;
+                end = end - 1;
+            }
+            file.setLength(end);
+        } finally {
+            file.close();
+        }
+        if (end == 0)
+            return null;
+
+        Set<Integer> done = new HashSet<Integer>();
+        BufferedReader reader = new BufferedReader(new FileReader(output));
+        try {
+            String header = reader.readLine();
+            if (!header().equals(header))
+                throw new IllegalArgumentException(output + " holds the results of another sweep : " + header);
+            String line;
+            while ((line = reader.readLine()) != null)
+                done.add(Integer.parseInt(line.substring(0, line.indexOf(';'))));
+        } finally {
+            reader.close();
+        }
+        return done;
+    }
+}
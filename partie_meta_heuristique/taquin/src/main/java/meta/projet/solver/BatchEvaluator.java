@@ -0,0 +1,211 @@
+package meta.projet.solver;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates a whole population of sequences at once : the boards of the
+ * population are kept as a structure of arrays (one byte per cell, the board
+ * i taking the cells i * cells to i * cells + cells - 1), the k-th gene of all
+ * the sequences is decoded and applied before the gene k + 1, then the final
+ * boards are scored with a table giving the score of each tile on each cell.
+ *
+ * The moves are decoded as in GASolver (the gene is mapped on the moves of
+ * the 0 allowed from its cell, in the order up, right, down, left) or, when
+ * backtracking is forbidden, as in PSOSolver (the move opposite to the last
+ * one is removed from the allowed moves, see BoardGeometry). The targets of
+ * the moves are copied in flat tables indexed by the position of the 0 and
+ * the last move.
+ */
+public class BatchEvaluator {
+    // index of the last move of a sequence with no move yet
+    private static final int NO_MOVE = 4;
+
+    private int cells;
+    private boolean noBacktrack;
+    private byte[] initialBoard;
+    private int initialBlank;
+    // scoreTable[tile * cells + p] is the score of the tile on the cell p
+    private int[] scoreTable;
+
+    // for the position p of the 0 and the last move m (Movement ordinal or
+    // NO_MOVE), the state is p * 5 + m
+    private int[] numberOfMoves;
+    private int[] targets;
+    private byte[] moves;
+    // intervals[n] is the width of the interval of a move among n moves
+    private float[] intervals;
+
+    private int capacity;
+    private byte[] boards;
+    private int[] blanks;
+    private byte[] lastMoves;
+    private int[] scores;
+
+    /**
+     * BatchEvaluator constructor.
+     * @param geometry the geometry of the board
+     * @param initialState the state the sequences start from
+     * @param noBacktrack true to decode the moves as PSOSolver
+     * @param scoreTable the score of each tile on each cell (see
+     *        manhattanTable and matchedTilesTable)
+     */
+    public BatchEvaluator(BoardGeometry geometry, short[][] initialState, boolean noBacktrack, int[] scoreTable) {
+        this.cells = geometry.getCells();
+        this.noBacktrack = noBacktrack;
+        this.scoreTable = scoreTable;
+        this.initialBoard = new byte[this.cells];
+        for (int p = 0; p < this.cells; ++p) {
+            this.initialBoard[p] = (byte) initialState[p / geometry.getColumns()][p % geometry.getColumns()];
+            if (this.initialBoard[p] == 0)
+                this.initialBlank = p;
+        }
+
+        Movement[] movements = Movement.values();
+        this.numberOfMoves = new int[5 * this.cells];
+        this.targets = new int[4 * 5 * this.cells];
+        this.moves = new byte[4 * 5 * this.cells];
+        for (int p = 0; p < this.cells; ++p) {
+            for (int last = 0; last <= NO_MOVE; ++last) {
+                int state = 5 * p + last;
+                Movement lastMove = (last == NO_MOVE) ? null : movements[last];
+                this.numberOfMoves[state] = geometry.getNumberOfMoves(p, lastMove);
+                for (int i = 0; i < this.numberOfMoves[state]; ++i) {
+                    this.targets[4 * state + i] = geometry.getMoveTarget(p, lastMove, i);
+                    this.moves[4 * state + i] = (byte) geometry.getMove(p, lastMove, i).ordinal();
+                }
+            }
+        }
+        this.intervals = new float[5];
+        for (int n = 1; n <= 4; ++n)
+            this.intervals[n] = (float) 1 / n;
+
+        this.capacity = 0;
+    }
+
+    /**
+     * @return the table of the manhattan distances of the tiles to their
+     *         cell in the target state, the score of MinMoves
+     */
+    public static int[] manhattanTable(BoardGeometry geometry, short[][] targetState) {
+        int columns = geometry.getColumns();
+        int cells = geometry.getCells();
+        int[] table = new int[cells * cells];
+        for (int i = 0; i < geometry.getLines(); ++i)
+            for (int j = 0; j < columns; ++j)
+                if (targetState[i][j] != 0)
+                    for (int p = 0; p < cells; ++p)
+                        table[targetState[i][j] * cells + p] = Math.abs(i - p / columns) + Math.abs(j - p % columns);
+        return table;
+    }
+
+    /**
+     * @return the table counting the cells (the 0 included) matching the
+     *         target state, the fitness of PSOSolver
+     */
+    public static int[] matchedTilesTable(BoardGeometry geometry, short[][] targetState) {
+        int columns = geometry.getColumns();
+        int cells = geometry.getCells();
+        int[] table = new int[cells * cells];
+        for (int p = 0; p < cells; ++p)
+            table[targetState[p / columns][p % columns] * cells + p] = 1;
+        return table;
+    }
+
+    private void reset(int n) {
+        if (n > this.capacity) {
+            this.capacity = Math.max(n, 2 * this.capacity);
+            this.boards = new byte[this.capacity * this.cells];
+            this.blanks = new int[this.capacity];
+            this.lastMoves = new byte[this.capacity];
+            this.scores = new int[this.capacity];
+        }
+        for (int i = 0; i < n; ++i)
+            System.arraycopy(this.initialBoard, 0, this.boards, i * this.cells, this.cells);
+        Arrays.fill(this.blanks, 0, n, this.initialBlank);
+        Arrays.fill(this.lastMoves, 0, n, (byte) NO_MOVE);
+    }
+
+    /**
+     * Applies a gene on the board i.
+     */
+    private void apply(int i, float gene) {
+        int blank = this.blanks[i];
+        int state = 5 * blank + this.lastMoves[i];
+        int n = this.numberOfMoves[state];
+        int index = 4 * state + (int) (gene / this.intervals[n]) % n;
+        int target = this.targets[index];
+
+        // the tile next to the 0 slides into it
+        int board = i * this.cells;
+        this.boards[board + blank] = this.boards[board + target];
+        this.boards[board + target] = 0;
+        this.blanks[i] = target;
+        if (this.noBacktrack)
+            this.lastMoves[i] = this.moves[index];
+    }
+
+    private void score(int n) {
+        for (int i = 0; i < n; ++i) {
+            int board = i * this.cells;
+            int score = 0;
+            for (int p = 0; p < this.cells; ++p)
+                score = score + this.scoreTable[this.boards[board + p] * this.cells + p];
+            this.scores[i] = score;
+        }
+    }
+
+    /**
+     * Evaluates the first length genes of n sequences (the positions of the
+     * particles of PSOSolver).
+     * @return the scores of the sequences, valid until the next evaluation
+     */
+    public int[] evaluate(float[][] sequences, int length, int n) {
+        reset(n);
+        for (int k = 0; k < length; ++k)
+            for (int i = 0; i < n; ++i)
+                apply(i, sequences[i][k]);
+        score(n);
+        return this.scores;
+    }
+
+    /**
+     * Evaluates n sequences of a Population like structure of arrays.
+     * @param genes the genes of all the sequences
+     * @param offsets the position of the first gene of each sequence
+     * @param lengths the number of genes of each sequence
+     * @param sequences the sequences to evaluate
+     * @param n the number of sequences to evaluate
+     * @return the scores of the sequences (the score i being the one of
+     *         sequences[i]), valid until the next evaluation
+     */
+    public int[] evaluate(float[] genes, int[] offsets, int[] lengths, int[] sequences, int n) {
+        reset(n);
+        int maxLength = 0;
+        for (int i = 0; i < n; ++i)
+            maxLength = Math.max(maxLength, lengths[sequences[i]]);
+        for (int k = 0; k < maxLength; ++k) {
+            for (int i = 0; i < n; ++i) {
+                int s = sequences[i];
+                if (k < lengths[s])
+                    apply(i, genes[offsets[s] + k]);
+            }
+        }
+        score(n);
+        return this.scores;
+    }
+
+    /**
+     * Copies the final board of the i-th sequence of the last evaluation.
+     */
+    public void copyBoard(int i, byte[] board, int offset) {
+        System.arraycopy(this.boards, i * this.cells, board, offset, this.cells);
+    }
+
+    /**
+     * @return the position of the 0 in the final board of the i-th sequence of
+     *         the last evaluation
+     */
+    public int getBlank(int i) {
+        return this.blanks[i];
+    }
+}
@@ -0,0 +1,180 @@
+package meta.projet.solver;
+
+/**
+ * Describes a board of any number of lines and columns (3x3 for the 8-puzzle,
+ * 4x4 for the 15-puzzle ...) : the moves of the 0 allowed from each cell.
+ *
+ * The cells are numbered line by line starting from 0, as in
+ * IncrementalHeuristic.delta.
+ * For each cell the allowed moves are kept in the order up, right, down,
+ * left, a gene of a sequence being mapped on one of them. The moves allowed
+ * when the 0 can't go back (PSOSolver) are kept for each cell and each last
+ * move too.
+ */
+public class BoardGeometry {
+    private int lines;
+    private int columns;
+    private int cells;
+    private int[] numberOfMovesPerTile;
+    private Movement[][] authorizedMovesPerTile;
+    // targetsPerTile[p][i] is the cell swapped with the 0 by the i-th move
+    // allowed from the cell p
+    private int[][] targetsPerTile;
+    // the same for the moves allowed after the last move m, the index
+    // m.ordinal() + 1 (0 when there is no last move)
+    private int[][] numberOfMovesAfter;
+    private Movement[][][] authorizedMovesAfter;
+    private int[][][] targetsAfter;
+
+    /**
+     * BoardGeometry constructor.
+     * @param lines the number of lines of the board
+     * @param columns the number of columns of the board
+     */
+    public BoardGeometry(int lines, int columns) {
+        if (lines < 2 || columns < 2)
+            throw new IllegalArgumentException("the board must have at least 2 lines and 2 columns");
+        this.lines = lines;
+        this.columns = columns;
+        this.cells = lines * columns;
+        this.numberOfMovesPerTile = new int[this.cells];
+        this.authorizedMovesPerTile = new Movement[this.cells][];
+        this.targetsPerTile = new int[this.cells][];
+
+        for (int p = 0; p < this.cells; ++p) {
+            Movement[] moves = new Movement[4];
+            int[] targets = new int[4];
+            int numberOfMoves = 0;
+            for (Movement move : Movement.values()) {
+                if (neighbour(p, move) >= 0) {
+                    moves[numberOfMoves] = move;
+                    targets[numberOfMoves] = neighbour(p, move);
+                    numberOfMoves = numberOfMoves + 1;
+                }
+            }
+            this.numberOfMovesPerTile[p] = numberOfMoves;
+            this.authorizedMovesPerTile[p] = moves;
+            this.targetsPerTile[p] = targets;
+        }
+
+        Movement[] movements = Movement.values();
+        this.numberOfMovesAfter = new int[this.cells][movements.length + 1];
+        this.authorizedMovesAfter = new Movement[this.cells][movements.length + 1][];
+        this.targetsAfter = new int[this.cells][movements.length + 1][];
+        for (int p = 0; p < this.cells; ++p) {
+            for (int m = 0; m <= movements.length; ++m) {
+                Movement forbidden = (m == 0) ? null : movements[m - 1].opposite();
+                Movement[] moves = new Movement[4];
+                int[] targets = new int[4];
+                int numberOfMoves = 0;
+                for (int i = 0; i < this.numberOfMovesPerTile[p]; ++i) {
+                    if (this.authorizedMovesPerTile[p][i] != forbidden) {
+                        moves[numberOfMoves] = this.authorizedMovesPerTile[p][i];
+                        targets[numberOfMoves] = this.targetsPerTile[p][i];
+                        numberOfMoves = numberOfMoves + 1;
+                    }
+                }
+                this.numberOfMovesAfter[p][m] = numberOfMoves;
+                this.authorizedMovesAfter[p][m] = moves;
+                this.targetsAfter[p][m] = targets;
+            }
+        }
+    }
+
+    /**
+     * @param matrix a state in a matrix form
+     * @return the geometry of the matrix
+     */
+    public static BoardGeometry of(short[][] matrix) {
+        return new BoardGeometry(matrix.length, matrix[0].length);
+    }
+
+    public int getLines() {
+        return this.lines;
+    }
+
+    public int getColumns() {
+        return this.columns;
+    }
+
+    public int getCells() {
+        return this.cells;
+    }
+
+    /**
+     * @param p a cell
+     * @return the number of moves of the 0 allowed from the cell p (2 to 4)
+     */
+    public int getNumberOfMoves(int p) {
+        return this.numberOfMovesPerTile[p];
+    }
+
+    /**
+     * @param p a cell
+     * @param index the index of the move, from 0 to getNumberOfMoves(p) - 1
+     * @return the index-th move allowed from the cell p
+     */
+    public Movement getMove(int p, int index) {
+        return this.authorizedMovesPerTile[p][index];
+    }
+
+    /**
+     * @param p a cell
+     * @param index the index of the move, from 0 to getNumberOfMoves(p) - 1
+     * @return the cell swapped with the 0 by the index-th move allowed from
+     *         the cell p
+     */
+    public int getMoveTarget(int p, int index) {
+        return this.targetsPerTile[p][index];
+    }
+
+    private static int after(Movement lastMove) {
+        return (lastMove == null) ? 0 : lastMove.ordinal() + 1;
+    }
+
+    /**
+     * @param p a cell
+     * @param lastMove the move that brought the 0 on the cell p, null if none
+     * @return the number of moves allowed from the cell p other than going
+     *         back
+     */
+    public int getNumberOfMoves(int p, Movement lastMove) {
+        return this.numberOfMovesAfter[p][after(lastMove)];
+    }
+
+    /**
+     * @return the index-th move allowed from the cell p other than going back
+     */
+    public Movement getMove(int p, Movement lastMove, int index) {
+        return this.authorizedMovesAfter[p][after(lastMove)][index];
+    }
+
+    /**
+     * @return the cell swapped with the 0 by the index-th move allowed from
+     *         the cell p other than going back
+     */
+    public int getMoveTarget(int p, Movement lastMove, int index) {
+        return this.targetsAfter[p][after(lastMove)][index];
+    }
+
+    /**
+     * @param p the position of the 0
+     * @param move the move of the 0
+     * @return the cell swapped with the 0, -1 if the move goes out of the board
+     */
+    public int neighbour(int p, Movement move) {
+        int i = p / this.columns, j = p % this.columns;
+        switch (move) {
+            case UP:
+                return (i != 0) ? p - this.columns : -1;
+            case RIGHT:
+                return (j != this.columns - 1) ? p + 1 : -1;
+            case DOWN:
+                return (i != this.lines - 1) ? p + this.columns : -1;
+            case LEFT:
+                return (j != 0) ? p - 1 : -1;
+            default:
+                return -1;
+        }
+    }
+}
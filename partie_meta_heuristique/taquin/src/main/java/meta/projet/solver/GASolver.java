@@ -1,19 +1,52 @@
 package meta.projet.solver;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Random;
 
 import meta.projet.solver.heuristic.Heuristic;
-
+import meta.projet.solver.heuristic.IncrementalHeuristic;
+import meta.projet.solver.heuristic.MinMoves;
+
+/**
+ * The population is kept in a Population (a structure of arrays), the
+ * individuals being designated by their index in it. After each generation
+ * the population is compacted so that the individual of rank r is the
+ * sequence r, the selection and the offsprings are indices of sequences
+ * added after them.
+ *
+ * The individuals are sorted by fitness then by length on primitive keys,
+ * the fitness of the heuristics being positive.
+ */
 public class GASolver extends Solver {
-    private int dimension;
+    // bits of the length and of the position in the sort keys
+    private static final int KEY_BITS = 21;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+    // maximum number of nodes of the trie of the evaluations
+    private static final int TRIE_SIZE = 1 << 16;
+    // first int of the checkpoint files, "GACP"
+    private static final int CHECKPOINT_MAGIC = 0x47414350;
+
+    private BoardGeometry geometry;
     private short[][] initialState;
     private short[][] targetState;
     private int populationSize;
-    private LinkedList<Individual> population;
+    private Population population;
     private Heuristic heuristic;
     private int initialSequenceLength;
     private int maxIter;
@@ -25,49 +58,31 @@ public class GASolver extends Solver {
     private int solutionIteration;
     private int bestFitness;
     private int tol;
-    private Comparator<Individual> comparator;
-
-    private static int[][] numberOfMovesPerTile;
-    private static Movement[][][] authorizedMovesPerTile;
-
-    static {
-        numberOfMovesPerTile = new int[][]{{2, 3, 2}, {3, 4, 3}, {2, 3, 2}};
-
-        authorizedMovesPerTile = new Movement[3][3][4];
-        authorizedMovesPerTile[0][0][0] = Movement.RIGHT;
-        authorizedMovesPerTile[0][0][1] = Movement.DOWN;
-
-        authorizedMovesPerTile[0][1][0] = Movement.RIGHT;
-        authorizedMovesPerTile[0][1][1] = Movement.DOWN;
-        authorizedMovesPerTile[0][1][2] = Movement.LEFT;
-
-        authorizedMovesPerTile[0][2][0] = Movement.DOWN;
-        authorizedMovesPerTile[0][2][1] = Movement.LEFT;
-
-        authorizedMovesPerTile[1][0][0] = Movement.UP;
-        authorizedMovesPerTile[1][0][1] = Movement.RIGHT;
-        authorizedMovesPerTile[1][0][2] = Movement.DOWN;
-
-        authorizedMovesPerTile[1][1][0] = Movement.UP;
-        authorizedMovesPerTile[1][1][1] = Movement.RIGHT;
-        authorizedMovesPerTile[1][1][2] = Movement.DOWN;
-        authorizedMovesPerTile[1][1][3] = Movement.LEFT;
-
-        authorizedMovesPerTile[1][2][0] = Movement.UP;
-        authorizedMovesPerTile[1][2][1] = Movement.DOWN;
-        authorizedMovesPerTile[1][2][2] = Movement.LEFT;
-
-        authorizedMovesPerTile[2][0][0] = Movement.UP;
-        authorizedMovesPerTile[2][0][1] = Movement.RIGHT;
-
-        authorizedMovesPerTile[2][1][0] = Movement.UP;
-        authorizedMovesPerTile[2][1][1] = Movement.RIGHT;
-        authorizedMovesPerTile[2][1][2] = Movement.LEFT;
-
-        authorizedMovesPerTile[2][2][0] = Movement.UP;
-        authorizedMovesPerTile[2][2][1] = Movement.LEFT;
-    }
 
+    // rankThresholds[r] is the sum of the weights of the ranks 0 to r, the
+    // rank r having the weight populationSize - r
+    private int[] rankThresholds;
+    private Selection selection;
+    private int[] candidates;
+    private long[] keys;
+    // set of the sequences inserted in the population, by hash of their genes
+    private int[] table;
+    private int[] tableHashes;
+
+    private long seed;
+    // the search is saved in checkpointFile every checkpointInterval
+    // generations of solve, null for no checkpoint
+    private File checkpointFile;
+    private int checkpointInterval;
+
+    // state of the search between two generations
+    private Random rand;
+    private boolean found;
+    private int iter;
+    private int tolCpt;
+    private int worstFitness;
+    // number of sequences evaluated by each generation
+    private int[] generationEvaluations;
 
     public GASolver(short[][] initialState, short[][] targetState,
             int populationSize, Heuristic heuristic, int initialSequenceLength,
@@ -75,17 +90,18 @@ public class GASolver extends Solver {
             int numberOfMutations, float crossoverRatio,
             int tol) {
 
-        this.dimension = initialState.length;
-        this.initialState = new short[dimension][dimension];
-        this.targetState = new short[dimension][dimension];
+        this.geometry = BoardGeometry.of(initialState);
+        this.initialState = new short[geometry.getLines()][geometry.getColumns()];
+        this.targetState = new short[geometry.getLines()][geometry.getColumns()];
 
-        for (int i = 0; i < dimension; ++i) {
-            for (int j = 0; j < dimension; ++j) {
+        for (int i = 0; i < geometry.getLines(); ++i) {
+            for (int j = 0; j < geometry.getColumns(); ++j) {
                 this.initialState[i][j] = initialState[i][j];
                 this.targetState[i][j] = targetState[i][j];
             }
         }
 
+        this.seed = 42;
         this.populationSize = populationSize;
 
         this.heuristic = heuristic;
@@ -99,258 +115,432 @@ public class GASolver extends Solver {
         this.crossoverRatio = crossoverRatio;
         this.tol = tol;
 
-        this.comparator = new Comparator<Individual>() {
-            @Override
-            public int compare(Individual sequence1, Individual sequence2) {
-                int score1 = GASolver.fitnessScore(initialState, sequence1.getSequence(), heuristic);
-                int score2 = GASolver.fitnessScore(initialState, sequence2.getSequence(), heuristic);
-                return score1 != score2 ? score1 - score2 : sequence1.getSequence().length - sequence2.getSequence().length;
-            }
-        };
+        this.rankThresholds = new int[populationSize];
+        int threshold = 0;
+        for (int r = 0; r < populationSize; ++r) {
+            threshold = threshold + populationSize - r;
+            this.rankThresholds[r] = threshold;
+        }
+
+        int selectionSize = (int) (populationSize * selectionRatio);
+        int offsprings = selectionSize + numberOfCrossovers + numberOfMutations;
+        this.selection = new Selection(offsprings);
+        this.population = new Population(geometry, this.initialState, heuristic, 2 * (populationSize + offsprings));
+        if (geometry.getCells() <= SequenceTrie.MAX_CELLS)
+            this.population.setTrie(new SequenceTrie(geometry, this.initialState, heuristic, TRIE_SIZE));
+        else if (heuristic instanceof MinMoves)
+            // the boards too big for the trie are evaluated by batches
+            this.population.setBatchEvaluator(new BatchEvaluator(geometry, this.initialState, false,
+                BatchEvaluator.manhattanTable(geometry, targetState)));
+        this.candidates = new int[populationSize + offsprings];
+        this.keys = new long[this.candidates.length];
+        int tableSize = Integer.highestOneBit(2 * this.candidates.length) << 1;
+        this.table = new int[tableSize];
+        this.tableHashes = new int[tableSize];
+    }
+
+    /**
+     * @param seed the seed of the random numbers of solve, 42 by default
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Saves the search in a file every interval generations of solve, solve
+     * resuming the search from the file if it exists.
+     * @param file the checkpoint file, null for no checkpoint
+     * @param interval the number of generations between two checkpoints
+     */
+    public void setCheckpoint(File file, int interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("there must be at least 1 generation between the checkpoints");
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
     }
 
     public void solve() {
+        try {
+            if (checkpointFile != null && checkpointFile.exists())
+                restore(checkpointFile);
+            else
+                initialize();
+            // an interrupted solver stops, keeping its best individual
+            while (iter < maxIter && !found && !Thread.currentThread().isInterrupted()) {
+                nextGeneration();
+                if (checkpointFile != null && iter % checkpointInterval == 0)
+                    checkpoint(checkpointFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finish();
+    }
+
+    /**
+     * Creates the initial population with the random numbers of the seed.
+     */
+    public void initialize() {
+        initialize(new Random(seed));
+    }
+
+    /**
+     * Creates the initial population, the solver can then be run one
+     * generation at a time with nextGeneration (see IslandGASolver).
+     * @param rand the random numbers of the solver
+     */
+    public void initialize(Random rand) {
         // initial population
-        population = new LinkedList<Individual>();
-        int worstFitness = 0;
+        this.rand = rand;
+        population.clear();
+        found = false;
+        iter = 0;
+        tolCpt = 0;
+        generationEvaluations = new int[64];
 
-        Random rand = new Random(42);
         for (int i = 0; i < populationSize; ++i) {
-            float[] sequence = new float[initialSequenceLength];
+            int sequence = population.add(initialSequenceLength);
             for (int j = 0; j < initialSequenceLength; ++j) {
-                sequence[j] = rand.nextFloat();
+                population.setGene(sequence, j, rand.nextFloat());
             }
-            population.add(new Individual(sequence));
+            candidates[i] = sequence;
         }
 
-        Collections.sort(population, comparator);
+        sortAndKeep(populationSize);
 
-        worstFitness = fitnessScore(initialState, population.getLast().getSequence(), heuristic);
-        //System.out.println("=== initial population === | size : " + population.size());
-        //for (Individual individual : population) {
-        //    int fitness = fitnessScore(initialState, individual.getSequence(), heuristic);
-        //    individual.print();
-        //    System.out.println(" | score = " + fitness);
-        //}
-        //System.out.println("==================================");
-        
-        /**
-         * boucle de recherche
-         * selection : an individual is selected with a probability 
-         *             proportional to it's fitness score.
-         * reproduction : crossover then mutation.
-         *     crossover : concatenation of the first n genes of the first 
-         *                 individual and the m last genes of the second 
-         *                 individual.
-         *     mutation : mutation operators are : permutation, inverse with 
-         *                respect to 0.5 and adding new gene.
-         * insertion : the new individuals are inserted in the population and 
-         *             only the overall best N individuals are kept for the
-         *             next iteration.
-         */
-        boolean found = false;
-        int iter = 0;
-        int tolCpt = 0;
+        worstFitness = population.getFitness(population.size() - 1);
+    }
+
+    /**
+     * Runs one generation of the search, the population must be initialized.
+     *
+     * boucle de recherche
+     * selection : an individual is selected with a probability 
+     *             proportional to it's fitness score.
+     * reproduction : crossover then mutation.
+     *     crossover : concatenation of the first n genes of the first 
+     *                 individual and the m last genes of the second 
+     *                 individual.
+     *     mutation : mutation operators are : permutation, inverse with 
+     *                respect to 0.5 and adding new gene.
+     * insertion : the new individuals are inserted in the population and 
+     *             only the overall best N individuals are kept for the
+     *             next iteration.
+     */
+    public void nextGeneration() {
+        long evaluations = population.getNumberOfEvaluations();
         final int selectionSize = (int) (populationSize * selectionRatio);
         final int samplerMax = populationSize * (populationSize + 1) / 2;
-        //System.out.println("selection size : " + selectionSize + " | max sampler : " + samplerMax);
-        while (iter < maxIter && !found) {
-            // System.out.println("================================== iteration n° " + iter + " ==========================");
-            
-            // selection
-
-            LinkedList<Individual> selection = new LinkedList<Individual>();
-            while (selection.size() < selectionSize) {
-                int sampler = rand.nextInt(samplerMax);
-
-                int threshold = populationSize;
-                Iterator<Individual> iterator = population.iterator();
-                while (iterator.hasNext()) {
-                    Individual sequence = iterator.next();
-                    if (sampler < threshold) {
-                        selection.add(sequence);
-                        break;
-                    } else {
-                        sampler = sampler - threshold;
-                        threshold = threshold - 1;
-                    }
-                }
-            }
+        final int size = population.size();
+
+        // selection
+
+        selection.clear();
+        while (selection.size() < selectionSize) {
+            int sampler = rand.nextInt(samplerMax);
+            // the first rank whose threshold is above the sampler
+            int rank = Arrays.binarySearch(rankThresholds, sampler);
+            rank = (rank >= 0) ? rank + 1 : -rank - 1;
+            if (rank < size)
+                selection.add(rank);
+        }
 
-            //System.out.println("=== initial selection ===");
-            //for (Individual individual : selection) {
-            //    individual.print();
-            //    System.out.println(" | score = " + fitnessScore(initialState, individual.getSequence(), heuristic));
-            //}
-            //System.out.println("==================================");
-
-            // reproduction - crossover
-
-            int i = 0;
-            while (i < numberOfCrossovers) {
-                int parent1Index = rand.nextInt(selectionSize);
-                int parent2Index = rand.nextInt(selectionSize);
-                while (parent1Index == parent2Index)
-                    parent2Index = rand.nextInt(selectionSize);
-
-                Individual parent1 = selection.get(parent1Index);
-                Individual parent2 = selection.get(parent2Index);
-
-                if (parent1.getSequence().length > parent2.getSequence().length) {
-                    Individual tmp = parent1;
-                    parent1 = parent2;
-                    parent2 = tmp;
-                }
+        // reproduction - crossover
 
-                int childLength = parent1.getSequence().length;
-                int numberOfParent1Genes = (int) (parent1.getSequence().length * crossoverRatio);
-                
-                float[] child = new float[childLength];
-                
-                for (int j = 0; j < childLength; ++j) {
-                    if (j < numberOfParent1Genes)
-                        child[j] = parent1.getSequence()[j];
-                    else
-                        child[j] = parent2.getSequence()[j];
-                }
+        int i = 0;
+        while (i < numberOfCrossovers) {
+            int parent1Index = rand.nextInt(selectionSize);
+            int parent2Index = rand.nextInt(selectionSize);
+            while (parent1Index == parent2Index)
+                parent2Index = rand.nextInt(selectionSize);
 
-                Individual newIndividual = new Individual(child);
-                selection.add(newIndividual);
-                ++i;
+            int parent1 = selection.get(parent1Index);
+            int parent2 = selection.get(parent2Index);
+
+            if (population.getLength(parent1) > population.getLength(parent2)) {
+                int tmp = parent1;
+                parent1 = parent2;
+                parent2 = tmp;
             }
-            
-            //System.out.println("=== selection after crossover ===");
-            //for (Individual individual : selection) {
-            //    individual.print();
-            //    System.out.println(" | score = " + fitnessScore(initialState, individual.getSequence(), heuristic));
-            //}
-            //System.out.println("==================================");
-
-            // reproduction - mutation
-
-            i = 0;
-            while (i < numberOfMutations) {
-                int mutantIndex = rand.nextInt(selection.size());
-                Individual mutant = selection.remove(mutantIndex);
-                int mutation = rand.nextInt(3);
-
-                switch (mutation) {
-                    case 0: // permutation
-                        int firstPosition = rand.nextInt(mutant.getSequence().length);
-                        int secondPosition = rand.nextInt(mutant.getSequence().length);
-
-                        float tmp = mutant.getSequence()[firstPosition];
-                        mutant.getSequence()[firstPosition] = mutant.getSequence()[secondPosition];
-                        mutant.getSequence()[secondPosition] = tmp;
-                        break;
-                    case 1: // inverse
-                        int position = rand.nextInt(mutant.getSequence().length);
-                        float variation = rand.nextFloat();
-                        mutant.getSequence()[position] = (mutant.getSequence()[position] + variation) % 1;
-                        break;
-                    case 2: // augmentation
-                        float[] augmented = new float[mutant.getSequence().length + 1];
-                        for (int j = 0; j < mutant.getSequence().length; ++j)
-                            augmented[j] = mutant.getSequence()[j];
-                        augmented[augmented.length - 1] = rand.nextFloat();
-                        mutant = new Individual(augmented);
-                        break;
-                }
 
-                selection.add(mutant);
-                ++i;
+            int numberOfParent1Genes = (int) (population.getLength(parent1) * crossoverRatio);
+            selection.add(population.addCrossover(parent1, parent2, numberOfParent1Genes));
+            ++i;
+        }
+
+        // reproduction - mutation
+        // the mutations change the genes in place, a selected individual of
+        // the population is mutated with it
+
+        i = 0;
+        while (i < numberOfMutations) {
+            int mutantIndex = rand.nextInt(selection.size());
+            int mutant = selection.remove(mutantIndex);
+            int mutation = rand.nextInt(3);
+
+            switch (mutation) {
+                case 0: // permutation
+                    int firstPosition = rand.nextInt(population.getLength(mutant));
+                    int secondPosition = rand.nextInt(population.getLength(mutant));
+                    population.swapGenes(mutant, firstPosition, secondPosition);
+                    break;
+                case 1: // inverse
+                    int position = rand.nextInt(population.getLength(mutant));
+                    float variation = rand.nextFloat();
+                    population.setGene(mutant, position, (population.getGene(mutant, position) + variation) % 1);
+                    break;
+                case 2: // augmentation
+                    mutant = population.addAugmented(mutant, rand.nextFloat());
+                    break;
             }
 
-            //System.out.println("=== selection after mutation ===");
-            //for (Individual individual : selection) {
-            //    individual.print();
-            //    System.out.println(" | score = " + 
-            //        fitnessScore(initialState, individual.getSequence(), heuristic));
-            //}
-            //System.out.println("==================================");
+            selection.add(mutant);
+            ++i;
+        }
 
-            // insertion
+        // insertion
 
-            for (Individual individual : selection) {
-                if (!population.contains(individual))
-                    population.add(individual);
+        clearTable();
+        int numberOfCandidates = 0;
+        for (int r = 0; r < size; ++r) {
+            insert(r);
+            candidates[numberOfCandidates++] = r;
+        }
+        for (int k = 0; k < selection.size(); ++k) {
+            int offspring = selection.get(k);
+            if (insert(offspring))
+                candidates[numberOfCandidates++] = offspring;
+        }
+        sortAndKeep(numberOfCandidates);
+
+        ++iter;
+
+        // check for solution
+        int currentWorstFitness = population.getFitness(population.size() - 1);
+        for (int r = 0; r < population.size(); ++r) {
+            if (population.getFitness(r) == 0) {
+                this.solution = population.getSequence(r);
+                this.solutionIteration = iter;
+                this.bestFitness = 0;
+                found = true;
             }
+        }
 
-            Collections.sort(population, comparator);
-            
-            LinkedList<Individual> newPopulation = new LinkedList<Individual>();
-            i = 0;
-            for (Individual individual : population) {
-                newPopulation.add(individual);
-                ++i;
-                if (i == populationSize)
-                    break;
-            }
-            population = newPopulation;
-
-            //System.out.println("=== final population ===");
-            //for (Individual individual : population) {
-            //    individual.print();
-            //    System.out.println(" | score = " +
-            //        fitnessScore(initialState, individual.getSequence(), heuristic));
-            //}
-            //System.out.println("==================================");
-
-            ++iter;
-
-            // check for solution
-            int currentWorstFitness = fitnessScore(initialState, population.getLast().getSequence(), heuristic);
-            for (Individual individual : population) {
-                int fitness = fitnessScore(initialState, individual.getSequence(), heuristic);
-                if (fitness == 0) {
-                    //System.out.println("[ iteration : " + iter + " ] : solution : ");
-                    //individual.print();
-                    //System.out.println("solution length : " + individual.getSequence().length);
-                    this.solution = individual.getSequence();
-                    this.solutionIteration = iter;
-                    this.bestFitness = 0;
-                    found = true;
-                }
+        // check of tol
+        if (currentWorstFitness < worstFitness) {
+            tolCpt = 0;
+            worstFitness = currentWorstFitness;
+        } else if (tolCpt >= tol) {
+            tolCpt = 0;
+            // augmentation
+            int n = population.size();
+            for (int r = 0; r < n; ++r)
+                candidates[r] = population.addAugmented(r, rand.nextFloat());
+            sortAndKeep(n);
+        } else {
+            ++tolCpt;
+        }
+
+        if (iter > generationEvaluations.length)
+            generationEvaluations = Arrays.copyOf(generationEvaluations, 2 * generationEvaluations.length);
+        generationEvaluations[iter - 1] = (int) (population.getNumberOfEvaluations() - evaluations);
+    }
+
+    /**
+     * Sorts the first n candidates by fitness then by length, keeping the
+     * order of the candidates between equal ones, and makes the best
+     * populationSize of them the population.
+     */
+    private void sortAndKeep(int n) {
+        if (keys.length < n) {
+            keys = new long[n];
+            candidates = Arrays.copyOf(candidates, n);
+        }
+        population.evaluate(candidates, n);
+        for (int k = 0; k < n; ++k)
+            keys[k] = ((long) population.getFitness(candidates[k]) << (2 * KEY_BITS))
+                | ((long) population.getLength(candidates[k]) << KEY_BITS) | k;
+        Arrays.sort(keys, 0, n);
+
+        int kept = Math.min(n, populationSize);
+        int[] ranked = new int[kept];
+        for (int k = 0; k < kept; ++k)
+            ranked[k] = candidates[(int) (keys[k] & KEY_MASK)];
+        population.compact(ranked, kept);
+    }
+
+    private void clearTable() {
+        Arrays.fill(table, -1);
+    }
+
+    /**
+     * Adds a sequence to the set of the inserted sequences.
+     * @return false if a sequence with the same genes is already in the set
+     */
+    private boolean insert(int sequence) {
+        int hash = population.hash(sequence);
+        int mask = table.length - 1;
+        int slot = (hash * 0x9E3779B9) >>> 7 & mask;
+        while (table[slot] != -1) {
+            if (tableHashes[slot] == hash && population.sameGenes(table[slot], sequence))
+                return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = sequence;
+        tableHashes[slot] = hash;
+        return true;
+    }
+
+    /**
+     * Saves the state of the search between two generations : the counters
+     * of the generations, the state of the random numbers and the genes of
+     * the population, in rank order. The fitness of the individuals is not
+     * saved, they are evaluated again once restored.
+     * The file is written next to the given one then renamed, a checkpoint
+     * stopped while it is written doesn't replace the previous one.
+     * @param file the checkpoint file
+     */
+    public void checkpoint(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(CHECKPOINT_MAGIC);
+            writeState(out, initialState);
+            writeState(out, targetState);
+
+            out.writeInt(iter);
+            out.writeInt(tolCpt);
+            out.writeInt(worstFitness);
+            out.writeBoolean(found);
+            if (found) {
+                out.writeInt(solutionIteration);
+                writeGenes(out, solution);
             }
+            for (int g = 0; g < iter; ++g)
+                out.writeInt(generationEvaluations[g]);
+
+            // java.util.Random only gives its state through serialization
+            ByteArrayOutputStream random = new ByteArrayOutputStream();
+            ObjectOutputStream objects = new ObjectOutputStream(random);
+            objects.writeObject(rand);
+            objects.close();
+            out.writeInt(random.size());
+            random.writeTo(out);
+
+            out.writeInt(population.size());
+            for (int r = 0; r < population.size(); ++r)
+                writeGenes(out, population.getSequence(r));
+        } finally {
+            out.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-            // check of tol
-            if (currentWorstFitness < worstFitness) {
-                tolCpt = 0;
-                worstFitness = currentWorstFitness;
-            } else if (tolCpt >= tol) {
-                tolCpt = 0;
-                // augmentation
-                //System.out.println("[ iteration : " + iter + " ] : Population best score did not impove over " + tol + " iterations, all individuals will be augmented.");
-                newPopulation = new LinkedList<Individual>();
-                for (Individual individual : population) {
-                    float[] augmented = new float[individual.getSequence().length + 1];
-                    for (int j = 0; j < individual.getSequence().length; ++j)
-                        augmented[j] = individual.getSequence()[j];
-                    augmented[augmented.length - 1] = rand.nextFloat();
-                    newPopulation.add(new Individual(augmented));
-                }
-                population = newPopulation;
-                Collections.sort(population, comparator);
-            } else {
-                ++tolCpt;
+    /**
+     * Restores a search saved by checkpoint, the solver can then go on with
+     * nextGeneration as if it was never stopped. The number of evaluations
+     * is counted from the restoration.
+     * @param file the checkpoint file
+     * @throws IllegalArgumentException if the file is not the checkpoint of a
+     *         search between the same states
+     */
+    public void restore(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != CHECKPOINT_MAGIC || !readState(in, initialState) || !readState(in, targetState))
+                throw new IllegalArgumentException(file + " is not a checkpoint of this search");
+
+            iter = in.readInt();
+            tolCpt = in.readInt();
+            worstFitness = in.readInt();
+            found = in.readBoolean();
+            if (found) {
+                solutionIteration = in.readInt();
+                solution = readGenes(in);
+                bestFitness = 0;
+            }
+            generationEvaluations = new int[Math.max(64, iter)];
+            for (int g = 0; g < iter; ++g)
+                generationEvaluations[g] = in.readInt();
+
+            byte[] random = new byte[in.readInt()];
+            in.readFully(random);
+            ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(random));
+            try {
+                rand = (Random) objects.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
             }
+
+            population.clear();
+            int size = in.readInt();
+            for (int r = 0; r < size; ++r)
+                population.add(readGenes(in));
+        } finally {
+            in.close();
         }
+    }
+
+    private static void writeState(DataOutputStream out, short[][] state) throws IOException {
+        out.writeShort(state.length);
+        out.writeShort(state[0].length);
+        for (short[] line : state)
+            for (short cell : line)
+                out.writeByte(cell);
+    }
+
+    /**
+     * @return false if the state read is not the given one
+     */
+    private static boolean readState(DataInputStream in, short[][] state) throws IOException {
+        if (in.readShort() != state.length || in.readShort() != state[0].length)
+            return false;
+        boolean same = true;
+        for (short[] line : state)
+            for (short cell : line)
+                same = same & (in.readByte() == cell);
+        return same;
+    }
+
+    private static void writeGenes(DataOutputStream out, float[] genes) throws IOException {
+        out.writeInt(genes.length);
+        for (float gene : genes)
+            out.writeFloat(gene);
+    }
+
+    private static float[] readGenes(DataInputStream in) throws IOException {
+        float[] genes = new float[in.readInt()];
+        for (int k = 0; k < genes.length; ++k)
+            genes[k] = in.readFloat();
+        return genes;
+    }
+
+    /**
+     * Ends the search, the best individual is kept as the solution if none
+     * reached the target state.
+     */
+    public void finish() {
         if (!found) {
-            this.bestFitness = fitnessScore(initialState, population.get(0).getSequence(), heuristic);
-            this.solution = population.get(0).getSequence();
-            this.solutionIteration = maxIter;
+            this.bestFitness = population.getFitness(0);
+            this.solution = population.getSequence(0);
+            this.solutionIteration = iter;
         }
     }
 
     public static short[][] applySequence(short[][] initialState,
         float[] movesSequence) {
+        return applySequence(BoardGeometry.of(initialState), initialState, movesSequence);
+    }
+
+    public static short[][] applySequence(BoardGeometry geometry,
+        short[][] initialState, float[] movesSequence) {
 
-        short[][] state = new short[3][3];
+        short[][] state = new short[geometry.getLines()][geometry.getColumns()];
         int xi = 0, xj = 0;
 
         // initialize the state to the initial state
-        for (int i = 0; i < 3; ++i) {
-            for (int j = 0; j < 3; ++j) {
+        for (int i = 0; i < geometry.getLines(); ++i) {
+            for (int j = 0; j < geometry.getColumns(); ++j) {
                 state[i][j] = initialState[i][j];
                 if (state[i][j] == 0) {
                     xi = i;
@@ -362,10 +552,11 @@ public class GASolver extends Solver {
         // apply the movements sequentially
         // moves order is up, right, down, left
         for (float movement : movesSequence) {
-            int numberOfMoves = numberOfMovesPerTile[xi][xj];
+            int cell = xi * geometry.getColumns() + xj;
+            int numberOfMoves = geometry.getNumberOfMoves(cell);
             float interval = (float) 1 / numberOfMoves;
             int moveIndex = (int)(movement / interval) % numberOfMoves;
-            Movement move = authorizedMovesPerTile[xi][xj][moveIndex];
+            Movement move = geometry.getMove(cell, moveIndex);
 
             switch (move) {
                 case UP:
@@ -397,9 +588,186 @@ public class GASolver extends Solver {
 
     public static int fitnessScore(short[][] initialState,
         float[] movesSequence, Heuristic heuristic) {
+        return fitnessScore(BoardGeometry.of(initialState), initialState, movesSequence, heuristic);
+    }
 
-        short[][] state = applySequence(initialState, movesSequence);
-        return heuristic.score(state);
+    public static int fitnessScore(BoardGeometry geometry, short[][] initialState,
+        float[] movesSequence, Heuristic heuristic) {
+        return fitnessScore(geometry, initialState, movesSequence, heuristic,
+            new short[geometry.getLines()][geometry.getColumns()]);
+    }
+
+    /**
+     * Replays the sequence from the initial state.
+     * @param finalState filled with the state reached by the sequence
+     * @return the score of the final state
+     */
+    public static int fitnessScore(BoardGeometry geometry, short[][] initialState,
+        float[] movesSequence, Heuristic heuristic, short[][] finalState) {
+
+        // initialize the state to the initial state
+        for (int i = 0; i < geometry.getLines(); ++i)
+            for (int j = 0; j < geometry.getColumns(); ++j)
+                finalState[i][j] = initialState[i][j];
+
+        return replay(geometry, finalState, heuristic.score(finalState), movesSequence, 0, heuristic);
+    }
+
+    /**
+     * Applies the genes of a sequence from the position from on a state, the
+     * score is updated at each move with IncrementalHeuristic.delta instead
+     * of evaluating the final state (which is scored if the heuristic is not
+     * incremental).
+     * @param state the state reached by the first genes, modified in place
+     * @param score the score of the state
+     * @return the score of the final state
+     */
+    private static int replay(BoardGeometry geometry, short[][] state, int score,
+        float[] movesSequence, int from, Heuristic heuristic) {
+
+        IncrementalHeuristic incremental = (heuristic instanceof IncrementalHeuristic)
+            ? (IncrementalHeuristic) heuristic : null;
+        int columns = geometry.getColumns();
+        int xi = 0, xj = 0;
+        for (int i = 0; i < geometry.getLines(); ++i) {
+            for (int j = 0; j < columns; ++j) {
+                if (state[i][j] == 0) {
+                    xi = i;
+                    xj = j;
+                }
+            }
+        }
+
+        // apply the movements sequentially
+        // moves order is up, right, down, left
+        for (int k = from; k < movesSequence.length; ++k) {
+            float movement = movesSequence[k];
+            int cell = xi * columns + xj;
+            int numberOfMoves = geometry.getNumberOfMoves(cell);
+            float interval = (float) 1 / numberOfMoves;
+            int moveIndex = (int)(movement / interval) % numberOfMoves;
+            int ti = xi, tj = xj;
+
+            switch (geometry.getMove(cell, moveIndex)) {
+                case UP:
+                    ti = xi - 1;
+                    break;
+                case RIGHT:
+                    tj = xj + 1;
+                    break;
+                case DOWN:
+                    ti = xi + 1;
+                    break;
+                case LEFT:
+                    tj = xj - 1;
+                    break;
+                default:
+                    break;
+            }
+
+            // the tile next to the 0 slides into it
+            short tile = state[ti][tj];
+            state[xi][xj] = tile;
+            state[ti][tj] = 0;
+            if (incremental != null)
+                score = incremental.delta(score, tile, ti * columns + tj, cell);
+            xi = ti;
+            xj = tj;
+        }
+        if (incremental == null)
+            score = heuristic.score(state);
+        return score;
+    }
+
+    /**
+     * @param n the number of individuals
+     * @return copies of the n best individuals of the population, with their
+     *         evaluation
+     */
+    public LinkedList<Individual> getBestIndividuals(int n) {
+        LinkedList<Individual> best = new LinkedList<Individual>();
+        for (int r = 0; r < Math.min(n, population.size()); ++r) {
+            Individual individual = new Individual(population.getSequence(r));
+            individual.setEvaluation(population.getFitness(r), population.getFinalState(r));
+            best.add(individual);
+        }
+        return best;
+    }
+
+    /**
+     * Inserts individuals coming from another population, only the overall
+     * best populationSize individuals are kept.
+     * @param immigrants the individuals to insert
+     */
+    public void immigrate(LinkedList<Individual> immigrants) {
+        if (candidates.length < population.size() + immigrants.size()) {
+            candidates = Arrays.copyOf(candidates, population.size() + immigrants.size());
+            table = new int[Integer.highestOneBit(2 * candidates.length) << 1];
+            tableHashes = new int[table.length];
+        }
+
+        clearTable();
+        int numberOfCandidates = 0;
+        for (int r = 0; r < population.size(); ++r) {
+            insert(r);
+            candidates[numberOfCandidates++] = r;
+        }
+        for (Individual individual : immigrants) {
+            int sequence = population.add(individual.getSequence());
+            if (individual.isEvaluated())
+                population.setEvaluation(sequence, individual.getFitness(), individual.getFinalState());
+            if (insert(sequence))
+                candidates[numberOfCandidates++] = sequence;
+        }
+        sortAndKeep(numberOfCandidates);
+    }
+
+    /**
+     * @return true if an individual reached the target state
+     */
+    public boolean isFound() {
+        return this.found;
+    }
+
+    /**
+     * @return the number of generations run
+     */
+    public int getIteration() {
+        return this.iter;
+    }
+
+    /**
+     * @return the fitness of the best individual of the current population
+     */
+    public int getCurrentBestFitness() {
+        return population.getFitness(0);
+    }
+
+    /**
+     * @return the number of sequences replayed from the initial state since
+     *         the population was initialized
+     */
+    public long getNumberOfEvaluations() {
+        return population.getNumberOfEvaluations();
+    }
+
+    /**
+     * @return the number of sequences replayed by each generation
+     */
+    public int[] getGenerationEvaluations() {
+        return Arrays.copyOf(this.generationEvaluations, this.iter);
+    }
+
+    /**
+     * @return the part of the moves of the evaluations found in the trie of
+     *         the prefixes, 0 for the boards without trie
+     */
+    public double getTrieHitRate() {
+        return (population.getTrie() == null) ? 0 : population.getTrie().getHitRate();
+    }
+
+    public int getMaxIter() {
+        return this.maxIter;
     }
 
     public int getSolutionIteration() {
@@ -411,5 +779,75 @@ public class GASolver extends Solver {
     public int getBestFitness() {
         return this.bestFitness;
     }
-}
 
+    /**
+     * The selection and the offsprings of a generation : a list of sequences
+     * where the individuals are added at the end and removed anywhere, as in a
+     * LinkedList, but found by index in O(log n) with a Fenwick tree counting
+     * the individuals still in the list.
+     */
+    private static class Selection {
+        private int[] sequences;
+        // tree[i] counts the individuals in the slots (i - (i & -i), i]
+        private int[] tree;
+        private int end;
+        private int size;
+
+        Selection(int capacity) {
+            this.sequences = new int[capacity];
+            this.tree = new int[capacity + 1];
+        }
+
+        void clear() {
+            Arrays.fill(this.tree, 0);
+            this.end = 0;
+            this.size = 0;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        /**
+         * Adds an individual at the end, at most capacity individuals are
+         * added between two clears.
+         */
+        void add(int sequence) {
+            this.sequences[this.end] = sequence;
+            update(this.end, 1);
+            this.end = this.end + 1;
+            this.size = this.size + 1;
+        }
+
+        int get(int index) {
+            return this.sequences[slot(index)];
+        }
+
+        int remove(int index) {
+            int slot = slot(index);
+            update(slot, -1);
+            this.size = this.size - 1;
+            return this.sequences[slot];
+        }
+
+        /**
+         * @return the slot of the index-th individual still in the list
+         */
+        private int slot(int index) {
+            int position = 0;
+            int remaining = index + 1;
+            for (int step = Integer.highestOneBit(this.tree.length - 1); step > 0; step = step >>> 1) {
+                if (position + step < this.tree.length && this.tree[position + step] < remaining) {
+                    position = position + step;
+                    remaining = remaining - this.tree[position];
+                }
+            }
+            return position;
+        }
+
+        private void update(int slot, int delta) {
+            for (int i = slot + 1; i < this.tree.length; i = i + (i & -i))
+                this.tree[i] = this.tree[i] + delta;
+        }
+    }
+}
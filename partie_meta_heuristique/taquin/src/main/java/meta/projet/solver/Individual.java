@@ -1,16 +1,66 @@
 package meta.projet.solver;
 
+/**
+ * A sequence of moves of the genetic algorithm.
+ *
+ * The fitness and the final state of the sequence are kept once computed by
+ * GASolver, they are forgotten when a gene is changed with setGene or
+ * swapGenes (the sequence must not be modified through getSequence).
+ */
 public class Individual {
     private float[] sequence;
+    private boolean evaluated;
+    private int fitness;
+    private short[][] finalState;
 
     public Individual(float[] sequence) {
         this.sequence = sequence;
+        this.evaluated = false;
     }
 
     public float[] getSequence() {
         return this.sequence;
     }
 
+    public void setGene(int position, float gene) {
+        this.sequence[position] = gene;
+        this.evaluated = false;
+    }
+
+    public void swapGenes(int firstPosition, int secondPosition) {
+        float tmp = this.sequence[firstPosition];
+        this.sequence[firstPosition] = this.sequence[secondPosition];
+        this.sequence[secondPosition] = tmp;
+        this.evaluated = false;
+    }
+
+    /**
+     * @return true if the fitness of the current sequence is known
+     */
+    public boolean isEvaluated() {
+        return this.evaluated;
+    }
+
+    public void setEvaluation(int fitness, short[][] finalState) {
+        this.fitness = fitness;
+        this.finalState = finalState;
+        this.evaluated = true;
+    }
+
+    /**
+     * @return the fitness of the sequence, valid if isEvaluated()
+     */
+    public int getFitness() {
+        return this.fitness;
+    }
+
+    /**
+     * @return the state reached by the sequence, valid if isEvaluated()
+     */
+    public short[][] getFinalState() {
+        return this.finalState;
+    }
+
     public void print() {
         for (int k = 0; k < getSequence().length; ++k) {
             System.out.print(getSequence()[k] + ", ");
@@ -0,0 +1,194 @@
+package meta.projet.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import meta.projet.solver.heuristic.Heuristic;
+
+/**
+ * Implements the island model of the genetic algorithm : several populations
+ * (the islands) are evolved by GASolvers on different threads, each one with
+ * its own random numbers.
+ *
+ * The islands are run by epochs of migrationInterval generations. At the end
+ * of each epoch the best numberOfMigrants individuals of every island are
+ * copied to the next island on a ring (the last island sending to the
+ * first), then the search stops if an island reached the target state. As
+ * the migrations only happen between the epochs, a solver gives the same
+ * solution whatever the number of cores.
+ *
+ * The heuristic is shared by the islands, it must not be modified once its
+ * target state is set (as MinMoves and MissPlaced).
+ */
+public class IslandGASolver extends Solver {
+    private int numberOfIslands;
+    private int migrationInterval;
+    private int numberOfMigrants;
+    private long seed;
+    private GASolver[] islands;
+    private int maxIter;
+
+    private float[] solution;
+    private int solutionIteration;
+    private int bestFitness;
+    private int solutionIsland;
+    // convergence[k][g] is the best fitness of the island k after g + 1
+    // generations
+    private int[][] convergence;
+
+    /**
+     * IslandGASolver constructor, the parameters of the islands are the ones
+     * of GASolver, the random numbers of the islands are seeded from 42.
+     * @param numberOfIslands the number of populations
+     * @param migrationInterval the number of generations between two
+     *        migrations
+     * @param numberOfMigrants the number of individuals sent by an island at
+     *        each migration
+     */
+    public IslandGASolver(short[][] initialState, short[][] targetState,
+            int numberOfIslands, int migrationInterval, int numberOfMigrants,
+            int populationSize, Heuristic heuristic, int initialSequenceLength,
+            int maxIter, float selectionRatio, int numberOfCrossovers,
+            int numberOfMutations, float crossoverRatio,
+            int tol) {
+        if (numberOfIslands < 1 || migrationInterval < 1)
+            throw new IllegalArgumentException("there must be at least 1 island and 1 generation between the migrations");
+
+        this.numberOfIslands = numberOfIslands;
+        this.migrationInterval = migrationInterval;
+        this.numberOfMigrants = numberOfMigrants;
+        this.seed = 42;
+        this.maxIter = maxIter;
+        this.islands = new GASolver[numberOfIslands];
+        for (int k = 0; k < numberOfIslands; ++k)
+            this.islands[k] = new GASolver(initialState, targetState, populationSize,
+                heuristic, initialSequenceLength, maxIter, selectionRatio,
+                numberOfCrossovers, numberOfMutations, crossoverRatio, tol);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void solve() {
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(this.numberOfIslands, Runtime.getRuntime().availableProcessors()));
+        try {
+            run(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(ExecutorService executor) {
+        // the seeds of the islands are drawn from a single generator, so that
+        // their streams don't start from neighbouring seeds
+        Random seeds = new Random(this.seed);
+        for (int k = 0; k < this.numberOfIslands; ++k)
+            this.islands[k].initialize(new Random(seeds.nextLong()));
+
+        final int[][] convergence = new int[this.numberOfIslands][this.maxIter];
+        List<Callable<Void>> epochs = new ArrayList<Callable<Void>>();
+        for (int k = 0; k < this.numberOfIslands; ++k) {
+            final GASolver island = this.islands[k];
+            final int[] islandConvergence = convergence[k];
+            epochs.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int g = 0; g < migrationInterval && island.getIteration() < maxIter && !island.isFound(); ++g) {
+                        island.nextGeneration();
+                        islandConvergence[island.getIteration() - 1] = island.getCurrentBestFitness();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        int iteration = 0;
+        boolean found = false;
+        while (iteration < this.maxIter && !found && !Thread.currentThread().isInterrupted()) {
+            try {
+                for (Future<Void> epoch : executor.invokeAll(epochs))
+                    epoch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            iteration = Math.min(iteration + this.migrationInterval, this.maxIter);
+
+            for (GASolver island : this.islands)
+                found = found || island.isFound();
+
+            // migration on the ring, the migrants are all chosen before any
+            // of them is inserted
+            if (!found && this.numberOfIslands > 1 && this.numberOfMigrants > 0) {
+                List<LinkedList<Individual>> migrants = new ArrayList<LinkedList<Individual>>();
+                for (GASolver island : this.islands)
+                    migrants.add(island.getBestIndividuals(this.numberOfMigrants));
+                for (int k = 0; k < this.numberOfIslands; ++k)
+                    this.islands[(k + 1) % this.numberOfIslands].immigrate(migrants.get(k));
+            }
+        }
+
+        // the solution is the shortest one among the islands reaching the
+        // target state, or the best individual of all the islands
+        this.solutionIsland = -1;
+        for (int k = 0; k < this.numberOfIslands; ++k) {
+            GASolver island = this.islands[k];
+            island.finish();
+            if (this.solutionIsland == -1
+                    || island.getBestFitness() < this.bestFitness
+                    || (island.getBestFitness() == this.bestFitness && island.getSolution().length < this.solution.length)) {
+                this.solutionIsland = k;
+                this.solution = island.getSolution();
+                this.bestFitness = island.getBestFitness();
+                this.solutionIteration = island.getSolutionIteration();
+            }
+        }
+
+        this.convergence = new int[this.numberOfIslands][];
+        for (int k = 0; k < this.numberOfIslands; ++k)
+            this.convergence[k] = Arrays.copyOf(convergence[k], this.islands[k].getIteration());
+    }
+
+    public int getNumberOfIslands() {
+        return this.numberOfIslands;
+    }
+
+    /**
+     * @return the island of the solution
+     */
+    public int getSolutionIsland() {
+        return this.solutionIsland;
+    }
+
+    /**
+     * @param island an island
+     * @return the best fitness of the island after each generation
+     */
+    public int[] getConvergence(int island) {
+        return this.convergence[island];
+    }
+
+    public int getSolutionIteration() {
+        return this.solutionIteration;
+    }
+
+    public float[] getSolution() {
+        return this.solution;
+    }
+
+    public int getBestFitness() {
+        return this.bestFitness;
+    }
+}
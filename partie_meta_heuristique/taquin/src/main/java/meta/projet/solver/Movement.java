@@ -1,5 +1,21 @@
 package meta.projet.solver;
 
 public enum Movement {
-    UP, RIGHT, DOWN, LEFT
+    UP, RIGHT, DOWN, LEFT;
+
+    /**
+     * @return the move going back to the cell this move comes from
+     */
+    public Movement opposite() {
+        switch (this) {
+            case UP:
+                return DOWN;
+            case RIGHT:
+                return LEFT;
+            case DOWN:
+                return UP;
+            default:
+                return RIGHT;
+        }
+    }
 }
@@ -1,7 +1,23 @@
 package meta.projet.solver;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PSOSolver {
     private float w, c1,c2;
@@ -20,49 +36,39 @@ public class PSOSolver {
     private short[][] initialState;
     private short[][] targetState;
 
-    private static int[][] numberOfMovesPerTile;
-    private static Movement[][][] authorizedMovesPerTile;
-    private static Movement lastMove;
+    private BoardGeometry geometry;
+    // the boards of the sequential evaluation, one byte per cell
+    private byte[] initialBoard;
+    private byte[] targetBoard;
+    private byte[] board;
+    private int initialBlank;
 
     private int solutionIteration;
-
-    static {
-        numberOfMovesPerTile = new int[][]{{2, 3, 2}, {3, 4, 3}, {2, 3, 2}};
-
-        authorizedMovesPerTile = new Movement[3][3][4];
-        authorizedMovesPerTile[0][0][0] = Movement.RIGHT;
-        authorizedMovesPerTile[0][0][1] = Movement.DOWN;
-
-        authorizedMovesPerTile[0][1][0] = Movement.RIGHT;
-        authorizedMovesPerTile[0][1][1] = Movement.DOWN;
-        authorizedMovesPerTile[0][1][2] = Movement.LEFT;
-
-        authorizedMovesPerTile[0][2][0] = Movement.DOWN;
-        authorizedMovesPerTile[0][2][1] = Movement.LEFT;
-
-        authorizedMovesPerTile[1][0][0] = Movement.UP;
-        authorizedMovesPerTile[1][0][1] = Movement.RIGHT;
-        authorizedMovesPerTile[1][0][2] = Movement.DOWN;
-
-        authorizedMovesPerTile[1][1][0] = Movement.UP;
-        authorizedMovesPerTile[1][1][1] = Movement.RIGHT;
-        authorizedMovesPerTile[1][1][2] = Movement.DOWN;
-        authorizedMovesPerTile[1][1][3] = Movement.LEFT;
-
-        authorizedMovesPerTile[1][2][0] = Movement.UP;
-        authorizedMovesPerTile[1][2][1] = Movement.DOWN;
-        authorizedMovesPerTile[1][2][2] = Movement.LEFT;
-
-        authorizedMovesPerTile[2][0][0] = Movement.UP;
-        authorizedMovesPerTile[2][0][1] = Movement.RIGHT;
-
-        authorizedMovesPerTile[2][1][0] = Movement.UP;
-        authorizedMovesPerTile[2][1][1] = Movement.RIGHT;
-        authorizedMovesPerTile[2][1][2] = Movement.LEFT;
-
-        authorizedMovesPerTile[2][2][0] = Movement.UP;
-        authorizedMovesPerTile[2][2][1] = Movement.LEFT;
-    }
+    // the number of iterations run since the initialization
+    private int iteration;
+    // seed of the initial particles and of the parallel update
+    private long seed;
+    // the search is saved in checkpointFile every checkpointInterval iterations of solve, null for no checkpoint
+    private File checkpointFile;
+    private int checkpointInterval;
+    // first int of the checkpoint files, "PSCP"
+    private static final int CHECKPOINT_MAGIC = 0x50534350;
+
+    // evaluates all the particles of an iteration at once, null for the
+    // sequential update
+    private BatchEvaluator batchEvaluator;
+    private float[][] positions;
+
+    // number of particles updated by a task of the parallel update
+    private static final int CHUNK_SIZE = 64;
+
+    private ForkJoinPool pool;
+    private Particle[] particleArray;
+    private Chunk[] chunks;
+    private float[] gBestBuffer;
+    // evaluation of the best particle of an iteration in the 32 high bits,
+    // numParticles - 1 - its index in the low ones
+    private AtomicLong bestKey;
 
     /**
      * 
@@ -80,6 +86,7 @@ public class PSOSolver {
     public PSOSolver(short[][] initialState, short[][] targetState, float w, float c1, float c2, int maxIteration, int numParticles, float initialVelocity, int tol) {
         this.initialState = initialState;
         this.targetState = targetState;
+        this.geometry = BoardGeometry.of(initialState);
         this.w = w;
         this.c1 = c1;
         this.c2 = c2;
@@ -90,6 +97,56 @@ public class PSOSolver {
         this.sequenceSize = 5;
         this.currentBestEvaluation = -1;
         this.maxSequenceSize = 500;
+        this.seed = 42;
+
+        int cells = this.geometry.getCells();
+        this.initialBoard = new byte[cells];
+        this.targetBoard = new byte[cells];
+        this.board = new byte[cells];
+        for (int p = 0; p < cells; ++p) {
+            this.initialBoard[p] = (byte) initialState[p / geometry.getColumns()][p % geometry.getColumns()];
+            this.targetBoard[p] = (byte) targetState[p / geometry.getColumns()][p % geometry.getColumns()];
+            if (this.initialBoard[p] == 0)
+                this.initialBlank = p;
+        }
+    }
+
+    /**
+     * Chooses how the particles are moved. In the sequential update (the
+     * default) each particle is evaluated once moved, the next particle
+     * moving toward the global best it may have changed. In the synchronous
+     * update all the particles move toward the global best of the previous
+     * iteration, then they are evaluated by a BatchEvaluator, which is
+     * faster for big swarms but doesn't give the same results.
+     * @param batchEvaluation true for the synchronous update
+     */
+    public void setBatchEvaluation(boolean batchEvaluation) {
+        this.batchEvaluator = batchEvaluation
+            ? new BatchEvaluator(geometry, initialState, true, BatchEvaluator.matchedTilesTable(geometry, targetState))
+            : null;
+    }
+
+    /**
+     * @param seed the seed of the positions of the initial particles and of
+     *        the random numbers of the parallel update, 42 by default
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Updates the particles in parallel in a fork/join pool, the update being
+     * synchronous (see setBatchEvaluation). The particles are split in chunks
+     * of CHUNK_SIZE particles, each chunk having its own random numbers (drawn
+     * from the seed of the chunk and the iteration, so a checkpoint has no
+     * random state to save), its batch evaluator and its position buffers, so
+     * the results don't depend on the pool or on the scheduling of the tasks.
+     * The best particle of an iteration is found by the tasks without locking.
+     * @param pool the pool running the tasks, null to update the particles
+     *        in the calling thread
+     */
+    public void setParallel(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
     /**
@@ -98,7 +155,7 @@ public class PSOSolver {
     public void initParticles()
     {
         particles = new LinkedList<>();
-        Random rand = new Random(42);
+        Random rand = new Random(seed);
 
         for(int i = 0; i < numParticles; ++i)
         {
@@ -111,8 +168,23 @@ public class PSOSolver {
             }
             //We create our particle using the random sequence of movement we just generated and the initial velocity
             Particle p = new Particle(sequence, initialVelocity);
-            //We evaluate our new generated particle
-            short evaluation = fitnessFunction(p);
+            //we add our new created particle to the list
+            particles.add(p);
+        }
+
+        if (pool != null)
+        {
+            initChunks();
+            parallelUpdate(false, 0);
+            return;
+        }
+
+        //We evaluate our new generated particles
+        int[] evaluations = evaluateParticles();
+        int i = 0;
+        for (Particle p : particles)
+        {
+            short evaluation = (short) evaluations[i++];
 
             /*We see if the evaluation of our current particle is better than the current best evaluation
              which in this case we replace it so at the end we will know our global best particle of our 
@@ -122,8 +194,218 @@ public class PSOSolver {
                 gBest = p.getPosition();
                 currentBestEvaluation = evaluation;
             }
-            //we add our new created particle to the list
-            particles.add(p);
+        }
+    }
+
+    /**
+     * Evaluates all the particles at their current position, with the batch
+     * evaluator if there is one.
+     * @return the evaluation of each particle, in the order of the list
+     */
+    private int[] evaluateParticles()
+    {
+        if (positions == null || positions.length < particles.size())
+            positions = new float[particles.size()][];
+        int i = 0;
+        for (Particle p : particles)
+            positions[i++] = p.getPosition();
+
+        if (batchEvaluator != null)
+            return batchEvaluator.evaluate(positions, sequenceSize, particles.size());
+
+        int[] evaluations = new int[particles.size()];
+        i = 0;
+        for (Particle p : particles)
+            evaluations[i++] = fitnessFunction(p);
+        return evaluations;
+    }
+
+    /**
+     * Computes the new velocity and position of a particle.
+     * @return the new position
+     */
+    private float[] move(Particle p)
+    {
+        // We compute the new velocity of our particle
+        p.setVelocity(computeNewVelocity(p));
+        if(p.getVelocity() < 0) p.setVelocity(- p.getVelocity());
+
+        // We compute its new position by updated all the moves of the sequence
+        float[] temp = new float[maxSequenceSize];
+        int l = 0;
+        for(float pos : p.getPosition())
+        {
+            float newPosition  = (float) (pos + p.getVelocity());
+            temp[l] = newPosition;
+            l++;
+        }
+        p.setPosition(temp);
+        return temp;
+    }
+
+    /**
+     * If we reached our tolerance limit without finding the target state we add a new move in the sequence of a particle
+     */
+    private void augment(Particle p, float[] temp, int iteration)
+    {
+        if((iteration % tol == 0) && (geometry.getCells() != currentBestEvaluation) && (sequenceSize < maxSequenceSize) && (iteration != 0)) 
+        {
+            Random rand = new Random(42);
+            temp[sequenceSize] = rand.nextFloat();
+            p.setPosition(temp);
+        }
+    }
+
+    private void initChunks()
+    {
+        particleArray = particles.toArray(new Particle[particles.size()]);
+        int[] scoreTable = BatchEvaluator.matchedTilesTable(geometry, targetState);
+        SplittableRandom random = new SplittableRandom(seed);
+        chunks = new Chunk[(particleArray.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int c = 0; c < chunks.length; ++c)
+            chunks[c] = new Chunk(c * CHUNK_SIZE, Math.min((c + 1) * CHUNK_SIZE, particleArray.length),
+                random.nextLong(), scoreTable);
+        gBestBuffer = new float[maxSequenceSize];
+        bestKey = new AtomicLong();
+    }
+
+    /**
+     * Runs an iteration of the parallel update (or only evaluates the
+     * particles) then keeps the best particle if it is better than gBest.
+     */
+    private void parallelUpdate(boolean move, int iteration)
+    {
+        bestKey.set(Long.MIN_VALUE);
+        float gBestMean = move ? mean(gBest) : 0;
+        for (Chunk chunk : chunks)
+            chunk.random = new SplittableRandom(chunk.seed + iteration);
+        pool.invoke(new UpdateTask(0, chunks.length, move, gBestMean));
+
+        long key = bestKey.get();
+        short evaluation = (short) (key >> 32);
+        if (evaluation > currentBestEvaluation)
+        {
+            int index = particleArray.length - 1 - (int) key;
+            System.arraycopy(particleArray[index].getPosition(), 0, gBestBuffer, 0, maxSequenceSize);
+            gBest = gBestBuffer;
+            currentBestEvaluation = evaluation;
+        }
+
+        if (move && (iteration % tol == 0) && (geometry.getCells() != currentBestEvaluation) && (sequenceSize < maxSequenceSize) && (iteration != 0))
+        {
+            for (Chunk chunk : chunks)
+                chunk.augment();
+        }
+    }
+
+    /**
+     * The particles from the index from to the index to (excluded) in the
+     * parallel update.
+     */
+    private class Chunk
+    {
+        private int from, to;
+        private long seed;
+        // the random numbers of the current iteration
+        private SplittableRandom random;
+        private BatchEvaluator evaluator;
+        private float[][] positions;
+        // three buffers per particle, the next position of a particle is
+        // written in the one which is neither its position nor its best one
+        private float[][] buffers;
+
+        Chunk(int from, int to, long seed, int[] scoreTable)
+        {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.evaluator = new BatchEvaluator(geometry, initialState, true, scoreTable);
+            this.positions = new float[to - from][];
+            this.buffers = new float[3 * (to - from)][maxSequenceSize];
+        }
+
+        void update(boolean move, float gBestMean)
+        {
+            for (int i = from; i < to; ++i)
+            {
+                Particle p = particleArray[i];
+                if (move)
+                {
+                    float r1 = (float) random.nextDouble();
+                    float r2 = (float) random.nextDouble();
+                    float velocity = (w * p.getVelocity()
+                            + c1 * r1 * (p.getBestEvaluation() - p.positionMean())
+                            + c2 * r2 * (gBestMean - p.positionMean())) % 1;
+                    p.setVelocity(Math.abs(velocity));
+
+                    float[] position = p.getPosition();
+                    float[] next = nextBuffer(i - from, p);
+                    for (int k = 0; k < maxSequenceSize; ++k)
+                        next[k] = position[k] + p.getVelocity();
+                    p.setPosition(next);
+                }
+                positions[i - from] = p.getPosition();
+            }
+
+            int[] evaluations = evaluator.evaluate(positions, sequenceSize, to - from);
+            for (int i = from; i < to; ++i)
+            {
+                long key = ((long) evaluations[i - from] << 32) | (particleArray.length - 1 - i);
+                long best = bestKey.get();
+                while (key > best && !bestKey.compareAndSet(best, key))
+                    best = bestKey.get();
+            }
+        }
+
+        private float[] nextBuffer(int i, Particle p)
+        {
+            for (int b = 3 * i; b < 3 * i + 2; ++b)
+                if (buffers[b] != p.getPosition() && buffers[b] != p.getP_best())
+                    return buffers[b];
+            return buffers[3 * i + 2];
+        }
+
+        /**
+         * Adds a random move to the sequences of the particles.
+         */
+        void augment()
+        {
+            for (int i = from; i < to; ++i)
+            {
+                float[] position = particleArray[i].getPosition();
+                position[sequenceSize] = (float) random.nextDouble();
+                particleArray[i].setPosition(position);
+            }
+        }
+    }
+
+    private class UpdateTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int first, last;
+        private boolean move;
+        private float gBestMean;
+
+        UpdateTask(int first, int last, boolean move, float gBestMean)
+        {
+            this.first = first;
+            this.last = last;
+            this.move = move;
+            this.gBestMean = gBestMean;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (last - first <= 1)
+            {
+                for (int c = first; c < last; ++c)
+                    chunks[c].update(move, gBestMean);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new UpdateTask(first, middle, move, gBestMean), new UpdateTask(middle, last, move, gBestMean));
         }
     }
 
@@ -165,18 +447,36 @@ public class PSOSolver {
      */
     public Movement lastMoveOpposite(Movement m)
     {
-        switch(m)
+        return m.opposite();
+    }
+
+    /**
+     * method that applies the sequence of movement of a position on a board, starting from the initial state
+     * @param position the position of a particle
+     * @param board the board, one byte per cell
+     */
+    private void decode(float[] position, byte[] board)
+    {
+        System.arraycopy(initialBoard, 0, board, 0, board.length);
+        int blank = initialBlank;
+        // the last move is local to the decoding, the move opposite to it is forbidden for the next one
+        Movement lastMove = null;
+
+        // We don't go beyond the current size of the solution
+        for(int k = 0; k < sequenceSize; ++k)
         {
-            case UP:
-                return Movement.DOWN;
-            case DOWN:
-                return Movement.UP;
-            case RIGHT:
-                return Movement.LEFT;
-            case LEFT:
-                return Movement.RIGHT;
-            default:
-                return null;
+            // We compute the number of authorised moves and set up our interval for the conversation of the float value to a move
+            int numberOfMoves = geometry.getNumberOfMoves(blank, lastMove);
+            float interval =  (float) 1 / numberOfMoves;
+            // We convert the float value into in index of the authorized moves, which come precomputed from the geometry
+            int moveIndex = (int)(position[k] / interval) % numberOfMoves;
+            int target = geometry.getMoveTarget(blank, lastMove, moveIndex);
+
+            // we apply the movement on our current state and we save it to ban its opposing movement in the next turn
+            lastMove = geometry.getMove(blank, lastMove, moveIndex);
+            board[blank] = board[target];
+            board[target] = 0;
+            blank = target;
         }
     }
 
@@ -187,143 +487,217 @@ public class PSOSolver {
      */
     public short[][] applySequence(Particle p)
     {
-        short[][] matrixRepresentation = new short[3][3];
-
-        // the position of the 0 in the matrix
-        int xi = 0, xj = 0;
-
-        // initialize the state to the initial state
-        for (int i = 0; i < 3; ++i) {
-            for (int j = 0; j < 3; ++j) {
-                matrixRepresentation[i][j] = this.initialState[i][j];
-                // if this the position of the 0 we save it
-                if (matrixRepresentation[i][j] == 0) {
-                    xi = i;
-                    xj = j;
-                }
-            }
+        byte[] board = new byte[geometry.getCells()];
+        decode(p.getPosition(), board);
+
+        short[][] matrixRepresentation = new short[geometry.getLines()][geometry.getColumns()];
+        for (int i = 0; i < board.length; ++i)
+            matrixRepresentation[i / geometry.getColumns()][i % geometry.getColumns()] = board[i];
+        return matrixRepresentation;
+    }
+
+    /**
+     * method that apply the fitness function to a particle 
+     * @param p the particle which the fitness function will apply to
+     * @return an int between 0 and the number of cells the higher the value is the better the particle is close to the solution
+     * (reaching the number of cells means that the target state has been found using the sequence of the particle)
+     */
+    public short fitnessFunction(Particle p)
+    {
+        //We get our board after applying the sequence movement, in the board of the solver so nothing is allocated
+        decode(p.getPosition(), board);
+        short count = 0;
+        for (int i = 0; i < board.length; ++i)
+        {
+            // For each case of the actual that match the same case of the target state we increment the count
+            if(board[i] == targetBoard[i])
+                count ++;
         }
 
-        // A variable used to make sure we don't go beyond the current size of the solution
-        int limit = 0;
-        for(float movement : p.getPosition())
+        return count;
+    }
+
+    /**
+     * Our PSO Solver method
+     */
+    public void solve()
+    {
+        try
         {
-            if(limit < sequenceSize)
+            // We initialize our particles, or we take them back from the checkpoint of a previous run
+            if (checkpointFile != null && checkpointFile.exists())
+                restore(checkpointFile);
+            else
+                initialize();
+
+            // While we didn't reach the maximum number of iteration or we didn't find the target value, unless the thread is interrupted
+            while(!isFinished() && !Thread.currentThread().isInterrupted())
             {
-                // We compute the number of authorised moves and set up our interval for the conversation of the float value to a move
-                int numberOfMoves = (lastMove == null) ? numberOfMovesPerTile[xi][xj] : (numberOfMovesPerTile[xi][xj] - 1);
-                float interval =  (float) 1 / numberOfMoves;
-                // We convert the float value into in index
-                int moveIndex = (int)(movement / interval) % numberOfMoves;
-
-                // Create different structures to stock our authorised move
-                LinkedList<Movement> authorizedMoves = new LinkedList<>();
+                nextIteration();
+                if (checkpointFile != null && iteration % checkpointInterval == 0)
+                    checkpoint(checkpointFile);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        finish();
+    }
 
-                //We starts by adding our exitings valid moves 
-                for(int i = 0; i < numberOfMovesPerTile[xi][xj]; ++i)
-                {
-                    if(authorizedMovesPerTile[xi][xj][i] != null)
-                        authorizedMoves.add(authorizedMovesPerTile[xi][xj][i]);
-                }
+    /**
+     * Saves the search in a file every interval iterations of solve, solve resuming the search from the file if it exists
+     * @param file the checkpoint file, null for no checkpoint
+     * @param interval the number of iterations between two checkpoints
+     */
+    public void setCheckpoint(File file, int interval)
+    {
+        if (interval < 1)
+            throw new IllegalArgumentException("there must be at least 1 iteration between the checkpoints");
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
+    }
 
-                /*Then we remove the opposite of the last move that has been used 
-                for example if the last move was LEFT we ban the move RIGHT for this turn*/
-                if(lastMove != null) authorizedMoves.remove(lastMoveOpposite(lastMove));
-
-                /* We get the value of our movement by extracting one of the move of the authorizd moves
-                at the index value that we computed earlier*/ 
-                Movement move = authorizedMoves.get(moveIndex);
-                
-                // we apply the movement on our current state and we save it to ban its opposing movement in the next turn
-                switch (move) {
-                    case UP:
-                        matrixRepresentation[xi][xj] = matrixRepresentation[xi - 1][xj];
-                        matrixRepresentation[xi - 1][xj] = 0;
-                        xi = xi - 1;
-                        lastMove = Movement.UP;
-                        break;
-                    case RIGHT:
-                        matrixRepresentation[xi][xj] = matrixRepresentation[xi][xj + 1];
-                        matrixRepresentation[xi][xj + 1] = 0;
-                        xj = xj + 1;
-                        lastMove = Movement.RIGHT;
-                        break;
-                    case DOWN:
-                        matrixRepresentation[xi][xj] = matrixRepresentation[xi + 1][xj];
-                        matrixRepresentation[xi + 1][xj] = 0;
-                        xi = xi + 1;
-                        lastMove = Movement.DOWN;
-                        break;
-                    case LEFT:
-                        matrixRepresentation[xi][xj] = matrixRepresentation[xi][xj - 1];
-                        matrixRepresentation[xi][xj - 1] = 0;
-                        xj = xj - 1;
-                        lastMove = Movement.LEFT;
-                        break;
-                    default:
-                        break;
-                }
+    /**
+     * Saves the state of the search between two iterations : the iteration, the size of the sequences, the global best
+     * and the particles (velocity, position and best position). The sequential update has no random state, the random
+     * numbers of the parallel update only depend on the seed and the iteration.
+     * The file is written next to the given one then renamed, a checkpoint stopped while it is written doesn't replace
+     * the previous one.
+     * @param file the checkpoint file
+     */
+    public void checkpoint(File file) throws IOException
+    {
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try
+        {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.write(initialBoard);
+            out.write(targetBoard);
+            out.writeInt(maxSequenceSize);
+
+            out.writeInt(iteration);
+            out.writeInt(sequenceSize);
+            out.writeShort(currentBestEvaluation);
+            writePosition(out, gBest);
+
+            out.writeInt(particles.size());
+            for (Particle p : particles)
+            {
+                out.writeFloat(p.getVelocity());
+                out.writeFloat(p.getBestEvaluation());
+                writePosition(out, p.getPosition());
+                // the best position is most of the time the position itself
+                out.writeBoolean(p.getP_best() == p.getPosition());
+                if (p.getP_best() != p.getPosition())
+                    writePosition(out, p.getP_best());
             }
-        else
-            break; //if we reached the lenght of the current solution sequence we exit the loop 
-        limit++;
         }
-        lastMove = null;
-        return matrixRepresentation;
+        finally
+        {
+            out.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     /**
-     * method that apply the fitness function to a particle 
-     * @param p the particle which the fitness function will apply to
-     * @return an int between 0 and 9 the higher the value is the better the particle is close to the solution
-     * (reaching 9 means that the target state has been found using the sequence of the particle)
+     * Restores a search saved by checkpoint, the solver can then go on with nextIteration as if it was never stopped
+     * @param file the checkpoint file
+     * @throws IllegalArgumentException if the file is not the checkpoint of a search between the same states
      */
-    public short fitnessFunction(Particle p)
+    public void restore(File file) throws IOException
     {
-        //We get our matrix representation of the state after applying the sequence movement
-        short[][] state = applySequence(p);
-        short count = 0;
-        for (int i = 0; i < 3; ++i)
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
         {
-            for (int j = 0; j < 3; ++j)
+            byte[] initial = new byte[initialBoard.length];
+            byte[] target = new byte[targetBoard.length];
+            if (in.readInt() != CHECKPOINT_MAGIC)
+                throw new IllegalArgumentException(file + " is not a checkpoint of this search");
+            in.readFully(initial);
+            in.readFully(target);
+            if (!Arrays.equals(initial, initialBoard) || !Arrays.equals(target, targetBoard)
+                    || in.readInt() != maxSequenceSize)
+                throw new IllegalArgumentException(file + " is not a checkpoint of this search");
+
+            iteration = in.readInt();
+            sequenceSize = in.readInt();
+            currentBestEvaluation = in.readShort();
+            gBest = readPosition(in);
+
+            particles = new LinkedList<>();
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i)
             {
-                // For each case of the actual that match the same case of the target state we increment the count
-                if(state[i][j] == targetState[i][j])
-                    count ++;
+                float velocity = in.readFloat();
+                float bestEvaluation = in.readFloat();
+                Particle p = new Particle(readPosition(in), velocity);
+                if (!in.readBoolean())
+                    p.setP_best(readPosition(in));
+                p.setBestEvaluation(bestEvaluation);
+                particles.add(p);
             }
         }
+        finally
+        {
+            in.close();
+        }
 
-        return count;
+        if (pool != null)
+        {
+            // the global best of the parallel update is a copy in its own buffer
+            initChunks();
+            System.arraycopy(gBest, 0, gBestBuffer, 0, maxSequenceSize);
+            gBest = gBestBuffer;
+        }
+    }
+
+    private void writePosition(DataOutputStream out, float[] position) throws IOException
+    {
+        for (int k = 0; k < maxSequenceSize; ++k)
+            out.writeFloat(position[k]);
+    }
+
+    private float[] readPosition(DataInputStream in) throws IOException
+    {
+        float[] position = new float[maxSequenceSize];
+        for (int k = 0; k < maxSequenceSize; ++k)
+            position[k] = in.readFloat();
+        return position;
     }
 
     /**
-     * Our PSO Solver method
+     * Creates the particles, the solver can then be run one iteration at a time with nextIteration
      */
-    public void solve()
+    public void initialize()
     {
-        // We initialize our particles
         initParticles();
-        int iteration = 0;
+        iteration = 0;
+    }
+
+    /**
+     * @return true if the maximum number of iteration is reached or the target state is found
+     */
+    public boolean isFinished()
+    {
+        return (iteration >= maxIteration) || (geometry.getCells() == currentBestEvaluation);
+    }
 
-        // While we didn't reach the maximum number of iteration or we didn't find the target value
-        while((iteration < maxIteration) && (9 != currentBestEvaluation))
+    /**
+     * Moves all the particles once, the solver must be initialized
+     */
+    public void nextIteration()
+    {
+        if (pool != null)
+        {
+            parallelUpdate(true, iteration);
+        }
+        else if (batchEvaluator == null)
         {
             for (Particle p: particles)
             {
-                // We compute the new velocity of our particle
-                p.setVelocity(computeNewVelocity(p));
-                if(p.getVelocity() < 0) p.setVelocity(- p.getVelocity());
-
-                // We compute its new position by updated all the moves of the sequence
-                float[] temp = new float[maxSequenceSize];
-                int l = 0;
-                for(float pos : p.getPosition())
-                {
-                    float newPosition  = (float) (pos + p.getVelocity());
-                    temp[l] = newPosition;
-                    l++;
-                }
-                p.setPosition(temp);
+                float[] temp = move(p);
 
                 // We evaluate our new positionned particle and see if its evalution is better than our current best one
                 short evaluation = fitnessFunction(p);
@@ -334,29 +708,61 @@ public class PSOSolver {
                     currentBestEvaluation = evaluation;
                 }
 
-                // If we reached our tolerance limit without finding the target state we add a new move in the sequence of our particle 
-                if((iteration % tol == 0) && (9 != currentBestEvaluation) && (sequenceSize < maxSequenceSize) && (iteration != 0)) 
-                {
-                    Random rand = new Random(42);
-                    temp[sequenceSize] = rand.nextFloat();
-                    p.setPosition(temp);
-                }
+                augment(p, temp, iteration);
             }
-            iteration++;
-            //if the tolerance limit was reached we update the new size of our sequence of moves
-            if(iteration % tol == 0)
+        }
+        else
+        {
+            // all the particles move toward the same global best, then they are evaluated together
+            for (Particle p: particles)
+                move(p);
+            int[] evaluations = evaluateParticles();
+
+            int i = 0;
+            for (Particle p: particles)
             {
-                sequenceSize++;
+                if(evaluations[i] > currentBestEvaluation)
+                {
+                    gBest = p.getPosition();
+                    currentBestEvaluation = (short) evaluations[i];
+                }
+                ++i;
             }
+            for (Particle p: particles)
+                augment(p, p.getPosition(), iteration);
+        }
+        iteration++;
+        //if the tolerance limit was reached we update the new size of our sequence of moves
+        if(iteration % tol == 0)
+        {
+            sequenceSize++;
         }
+    }
+
+    /**
+     * Ends the search, the current iteration becoming the solution iteration
+     */
+    public void finish()
+    {
         solutionIteration = iteration;
-    }    
+    }
+
+    public int getIteration() {
+        return this.iteration;
+    }
 
 
     public short getCurrentBestEvaluation() {
         return this.currentBestEvaluation;
     }
 
+    /**
+     * @return the sequence of the best particle, only its first getSequenceSize() moves are used
+     */
+    public float[] getGBest() {
+        return this.gBest;
+    }
+
     public int getSequenceSize() {
         return this.sequenceSize;
     }
@@ -1,7 +1,12 @@
 package meta.projet.solver;
 
+/**
+ * A particle of PSOSolver. The mean of its position is computed when the
+ * position is set, so the position must be changed through setPosition.
+ */
 public class Particle {
     private float[] position;
+    private float mean;
     private float velocity;
     private float[] pBest;
     private float bestEvaluation;
@@ -9,6 +14,7 @@ public class Particle {
 
     public Particle(float[] position, float velocity) {
         this.position = position;
+        this.mean = mean(position);
         this.velocity = velocity;
         this.pBest = position;
         this.bestEvaluation = positionMean();
@@ -20,6 +26,7 @@ public class Particle {
 
     public void setPosition(float[] position) {
         this.position = position;
+        this.mean = mean(position);
         if(positionMean() > this.bestEvaluation)
         {
             this.pBest = position;
@@ -28,11 +35,15 @@ public class Particle {
     }
 
     public float positionMean() {
+        return this.mean;
+    }
+
+    private static float mean(float[] position) {
         float sum = 0;
-        for (int i = 0; i < this.position.length; ++i) {
-            sum += this.position[i];
+        for (int i = 0; i < position.length; ++i) {
+            sum += position[i];
         }
-        return sum / this.position.length;
+        return sum / position.length;
     }
 
     public float getVelocity() {
@@ -0,0 +1,505 @@
+package meta.projet.solver;
+
+import java.util.Arrays;
+
+import meta.projet.solver.heuristic.Heuristic;
+import meta.projet.solver.heuristic.IncrementalHeuristic;
+
+/**
+ * Keeps the sequences of the genetic algorithm as a structure of arrays : the
+ * genes of all the sequences follow each other in a single array of floats,
+ * a sequence being given by the offset of its first gene and its length. A
+ * sequence is designated by its index in the arrays.
+ *
+ * The fitness and the final state of each sequence are computed when first
+ * asked for and kept until a gene of the sequence is changed, the final
+ * states are kept in a single array of bytes (one byte per cell). A sequence
+ * made by adding a gene to an evaluated one is evaluated from its final
+ * state, only the last move is applied.
+ *
+ * When a SequenceTrie is set the sequences are evaluated through it, the
+ * moves of a prefix already evaluated being found in the trie instead of
+ * being applied again. The path of each sequence in the trie is kept next to
+ * its genes : an offspring gets the path of the genes it copies from its
+ * parent and a mutation cuts the path at the changed gene, so the evaluation
+ * of a sequence starts at the end of its path.
+ *
+ * When a BatchEvaluator is set instead, evaluate replays the sequences not
+ * evaluated yet all at once, a gene position at a time.
+ *
+ * The sequences are only added, compact keeps the given sequences and forgets
+ * the other ones (the arrays are swapped with a second set of arrays, so
+ * nothing is allocated once they are big enough).
+ */
+public class Population {
+    private BoardGeometry geometry;
+    private Heuristic heuristic;
+    // the heuristic if it is incremental, null otherwise
+    private IncrementalHeuristic incremental;
+    // the final states of the sequences scored by a heuristic not incremental
+    private short[][] state;
+    private int cells;
+    private byte[] initialBoard;
+    private int initialBlank;
+    private int initialScore;
+
+    private int size;
+    private int numberOfGenes;
+    private float[] genes;
+    private int[] offsets;
+    private int[] lengths;
+    private boolean[] evaluated;
+    private int[] fitness;
+    private byte[] boards;
+    private int[] blanks;
+    // paths[offsets[s] + k] is the node of the trie reached after the gene k
+    // of the sequence s, for the pathLengths[s] first genes
+    private int[] paths;
+    private int[] pathLengths;
+    private int[] pathGenerations;
+
+    // the arrays used by compact
+    private float[] nextGenes;
+    private int[] nextOffsets;
+    private int[] nextLengths;
+    private boolean[] nextEvaluated;
+    private int[] nextFitness;
+    private byte[] nextBoards;
+    private int[] nextBlanks;
+    private int[] nextPaths;
+    private int[] nextPathLengths;
+    private int[] nextPathGenerations;
+
+    private long numberOfEvaluations;
+    private SequenceTrie trie;
+    private BatchEvaluator batchEvaluator;
+    private int[] batch;
+
+    /**
+     * Population constructor.
+     * @param geometry the geometry of the board
+     * @param initialState the state the sequences start from
+     * @param heuristic the fitness of the sequences, its target state set
+     * @param capacity the expected number of sequences
+     */
+    public Population(BoardGeometry geometry, short[][] initialState, Heuristic heuristic, int capacity) {
+        this.geometry = geometry;
+        this.heuristic = heuristic;
+        if (heuristic instanceof IncrementalHeuristic)
+            this.incremental = (IncrementalHeuristic) heuristic;
+        else
+            this.state = new short[geometry.getLines()][geometry.getColumns()];
+        this.cells = geometry.getCells();
+        this.initialBoard = new byte[this.cells];
+        for (int p = 0; p < this.cells; ++p) {
+            this.initialBoard[p] = (byte) initialState[p / geometry.getColumns()][p % geometry.getColumns()];
+            if (this.initialBoard[p] == 0)
+                this.initialBlank = p;
+        }
+        this.initialScore = heuristic.score(initialState);
+
+        capacity = Math.max(capacity, 16);
+        this.genes = new float[4 * capacity];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.evaluated = new boolean[capacity];
+        this.fitness = new int[capacity];
+        this.boards = new byte[capacity * this.cells];
+        this.blanks = new int[capacity];
+        this.paths = new int[this.genes.length];
+        this.pathLengths = new int[capacity];
+        this.pathGenerations = new int[capacity];
+        this.nextGenes = new float[this.genes.length];
+        this.nextOffsets = new int[capacity];
+        this.nextLengths = new int[capacity];
+        this.nextEvaluated = new boolean[capacity];
+        this.nextFitness = new int[capacity];
+        this.nextBoards = new byte[this.boards.length];
+        this.nextBlanks = new int[capacity];
+        this.nextPaths = new int[this.genes.length];
+        this.nextPathLengths = new int[capacity];
+        this.nextPathGenerations = new int[capacity];
+        clear();
+    }
+
+    /**
+     * Forgets all the sequences.
+     */
+    public void clear() {
+        this.size = 0;
+        this.numberOfGenes = 0;
+        this.numberOfEvaluations = 0;
+        if (this.trie != null)
+            this.trie.clear();
+    }
+
+    /**
+     * @param trie the cache of the prefixes used by the evaluations, null to
+     *        replay all the sequences from the initial state
+     */
+    public void setTrie(SequenceTrie trie) {
+        this.trie = trie;
+    }
+
+    public SequenceTrie getTrie() {
+        return this.trie;
+    }
+
+    /**
+     * @param batchEvaluator the evaluator of the sequences given to evaluate,
+     *        its moves and scores being the ones of the population, null to
+     *        evaluate the sequences one at a time when their fitness is asked
+     */
+    public void setBatchEvaluator(BatchEvaluator batchEvaluator) {
+        this.batchEvaluator = batchEvaluator;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a sequence whose genes are not set.
+     * @param length the number of genes of the sequence
+     * @return the index of the sequence
+     */
+    public int add(int length) {
+        if (this.size == this.offsets.length)
+            grow();
+        if (this.numberOfGenes + length > this.genes.length) {
+            this.genes = Arrays.copyOf(this.genes, Math.max(2 * this.genes.length, this.numberOfGenes + length));
+            this.paths = Arrays.copyOf(this.paths, this.genes.length);
+        }
+        int s = this.size;
+        this.offsets[s] = this.numberOfGenes;
+        this.lengths[s] = length;
+        this.evaluated[s] = false;
+        this.pathLengths[s] = 0;
+        this.numberOfGenes = this.numberOfGenes + length;
+        this.size = this.size + 1;
+        return s;
+    }
+
+    /**
+     * Adds a copy of a sequence.
+     * @return the index of the sequence
+     */
+    public int add(float[] sequence) {
+        int s = add(sequence.length);
+        System.arraycopy(sequence, 0, this.genes, this.offsets[s], sequence.length);
+        return s;
+    }
+
+    /**
+     * Adds the first genes of the sequence s1 followed by the genes of the
+     * sequence s2 at the same positions, the new sequence has the length of s1.
+     * @param numberOfGenes1 the number of genes taken from s1
+     * @return the index of the new sequence
+     */
+    public int addCrossover(int s1, int s2, int numberOfGenes1) {
+        int s = add(this.lengths[s1]);
+        int offset = this.offsets[s];
+        System.arraycopy(this.genes, this.offsets[s1], this.genes, offset, numberOfGenes1);
+        System.arraycopy(this.genes, this.offsets[s2] + numberOfGenes1, this.genes, offset + numberOfGenes1,
+            this.lengths[s1] - numberOfGenes1);
+        copyPath(s1, s, numberOfGenes1);
+        return s;
+    }
+
+    /**
+     * Adds a sequence made of the genes of s followed by a new gene. If s is
+     * evaluated the new sequence is evaluated from its final state.
+     * @return the index of the new sequence
+     */
+    public int addAugmented(int s, float gene) {
+        int augmented = add(this.lengths[s] + 1);
+        int offset = this.offsets[augmented];
+        System.arraycopy(this.genes, this.offsets[s], this.genes, offset, this.lengths[s]);
+        this.genes[offset + this.lengths[s]] = gene;
+        copyPath(s, augmented, this.lengths[s]);
+
+        if (this.evaluated[s]) {
+            System.arraycopy(this.boards, s * this.cells, this.boards, augmented * this.cells, this.cells);
+            this.blanks[augmented] = this.blanks[s];
+            this.fitness[augmented] = replay(augmented, this.fitness[s], this.lengths[s]);
+            this.evaluated[augmented] = true;
+        }
+        return augmented;
+    }
+
+    /**
+     * Gives to the sequence s the path of the first genes of the sequence
+     * from, which are the same.
+     */
+    private void copyPath(int from, int s, int numberOfGenes) {
+        if (this.trie == null || this.pathGenerations[from] != this.trie.getGeneration())
+            return;
+        int length = Math.min(this.pathLengths[from], numberOfGenes);
+        System.arraycopy(this.paths, this.offsets[from], this.paths, this.offsets[s], length);
+        this.pathLengths[s] = length;
+        this.pathGenerations[s] = this.pathGenerations[from];
+    }
+
+    public int getLength(int s) {
+        return this.lengths[s];
+    }
+
+    public float getGene(int s, int position) {
+        return this.genes[this.offsets[s] + position];
+    }
+
+    public void setGene(int s, int position, float gene) {
+        this.genes[this.offsets[s] + position] = gene;
+        this.evaluated[s] = false;
+        this.pathLengths[s] = Math.min(this.pathLengths[s], position);
+    }
+
+    public void swapGenes(int s, int firstPosition, int secondPosition) {
+        int offset = this.offsets[s];
+        float tmp = this.genes[offset + firstPosition];
+        this.genes[offset + firstPosition] = this.genes[offset + secondPosition];
+        this.genes[offset + secondPosition] = tmp;
+        this.evaluated[s] = false;
+        this.pathLengths[s] = Math.min(this.pathLengths[s], Math.min(firstPosition, secondPosition));
+    }
+
+    /**
+     * @return a copy of the genes of the sequence s
+     */
+    public float[] getSequence(int s) {
+        return Arrays.copyOfRange(this.genes, this.offsets[s], this.offsets[s] + this.lengths[s]);
+    }
+
+    /**
+     * @return the fitness of the sequence s, it is replayed from the initial
+     *         state only if it isn't evaluated
+     */
+    public int getFitness(int s) {
+        if (!this.evaluated[s]) {
+            int node = -1;
+            if (this.trie != null) {
+                int from = (this.pathGenerations[s] == this.trie.getGeneration()) ? this.pathLengths[s] : 0;
+                node = this.trie.evaluate(this.genes, this.offsets[s], this.lengths[s], this.paths, from);
+                this.pathLengths[s] = (node != -1) ? this.lengths[s] : 0;
+                this.pathGenerations[s] = this.trie.getGeneration();
+            }
+            if (node != -1) {
+                this.trie.unpack(node, this.boards, s * this.cells);
+                this.blanks[s] = this.trie.getBlank(node);
+                this.fitness[s] = this.trie.getScore(node);
+            } else {
+                System.arraycopy(this.initialBoard, 0, this.boards, s * this.cells, this.cells);
+                this.blanks[s] = this.initialBlank;
+                this.fitness[s] = replay(s, this.initialScore, 0);
+            }
+            this.evaluated[s] = true;
+            this.numberOfEvaluations = this.numberOfEvaluations + 1;
+        }
+        return this.fitness[s];
+    }
+
+    /**
+     * Evaluates the given sequences that are not evaluated yet with the batch
+     * evaluator, if one is set.
+     * @param sequences the indices of the sequences
+     * @param n the number of sequences
+     */
+    public void evaluate(int[] sequences, int n) {
+        if (this.batchEvaluator == null)
+            return;
+        if (this.batch == null || this.batch.length < n)
+            this.batch = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; ++i)
+            if (!this.evaluated[sequences[i]])
+                this.batch[m++] = sequences[i];
+
+        int[] scores = this.batchEvaluator.evaluate(this.genes, this.offsets, this.lengths, this.batch, m);
+        for (int i = 0; i < m; ++i) {
+            int s = this.batch[i];
+            this.batchEvaluator.copyBoard(i, this.boards, s * this.cells);
+            this.blanks[s] = this.batchEvaluator.getBlank(i);
+            this.fitness[s] = scores[i];
+            this.evaluated[s] = true;
+        }
+        this.numberOfEvaluations = this.numberOfEvaluations + m;
+    }
+
+    /**
+     * @return the state reached by the sequence s
+     */
+    public short[][] getFinalState(int s) {
+        getFitness(s);
+        short[][] state = new short[this.geometry.getLines()][this.geometry.getColumns()];
+        for (int p = 0; p < this.cells; ++p)
+            state[p / this.geometry.getColumns()][p % this.geometry.getColumns()] = this.boards[s * this.cells + p];
+        return state;
+    }
+
+    /**
+     * Sets the evaluation of a sequence computed elsewhere (see Individual).
+     */
+    public void setEvaluation(int s, int fitness, short[][] finalState) {
+        for (int p = 0; p < this.cells; ++p) {
+            this.boards[s * this.cells + p] = (byte) finalState[p / this.geometry.getColumns()][p % this.geometry.getColumns()];
+            if (this.boards[s * this.cells + p] == 0)
+                this.blanks[s] = p;
+        }
+        this.fitness[s] = fitness;
+        this.evaluated[s] = true;
+        this.pathLengths[s] = 0;
+    }
+
+    /**
+     * Applies the genes of the sequence s from the position from on its
+     * board, the score is updated at each move with IncrementalHeuristic.delta
+     * (the final state is scored if the heuristic is not incremental).
+     * @param score the score of the board
+     * @return the score of the final state
+     */
+    private int replay(int s, int score, int from) {
+        int board = s * this.cells;
+        int blank = this.blanks[s];
+        int offset = this.offsets[s];
+        for (int k = from; k < this.lengths[s]; ++k) {
+            int numberOfMoves = this.geometry.getNumberOfMoves(blank);
+            float interval = (float) 1 / numberOfMoves;
+            int moveIndex = (int) (this.genes[offset + k] / interval) % numberOfMoves;
+            int target = this.geometry.getMoveTarget(blank, moveIndex);
+
+            // the tile next to the 0 slides into it
+            byte tile = this.boards[board + target];
+            this.boards[board + blank] = tile;
+            this.boards[board + target] = 0;
+            if (this.incremental != null)
+                score = this.incremental.delta(score, tile, target, blank);
+            blank = target;
+        }
+        this.blanks[s] = blank;
+        if (this.incremental == null) {
+            for (int p = 0; p < this.cells; ++p)
+                this.state[p / this.geometry.getColumns()][p % this.geometry.getColumns()] = this.boards[board + p];
+            score = this.heuristic.score(this.state);
+        }
+        return score;
+    }
+
+    /**
+     * @return a hash of the genes of the sequence s
+     */
+    public int hash(int s) {
+        int hash = 1;
+        int offset = this.offsets[s];
+        for (int k = 0; k < this.lengths[s]; ++k)
+            hash = 31 * hash + Float.floatToIntBits(this.genes[offset + k]);
+        return hash;
+    }
+
+    /**
+     * @return true if the sequences s1 and s2 have the same genes
+     */
+    public boolean sameGenes(int s1, int s2) {
+        if (this.lengths[s1] != this.lengths[s2])
+            return false;
+        int offset1 = this.offsets[s1], offset2 = this.offsets[s2];
+        for (int k = 0; k < this.lengths[s1]; ++k)
+            if (this.genes[offset1 + k] != this.genes[offset2 + k])
+                return false;
+        return true;
+    }
+
+    /**
+     * Keeps the given sequences only, the i-th one becoming the sequence i.
+     * @param kept the indices of the sequences to keep
+     * @param n the number of sequences to keep
+     */
+    public void compact(int[] kept, int n) {
+        int genesNeeded = 0;
+        for (int i = 0; i < n; ++i)
+            genesNeeded = genesNeeded + this.lengths[kept[i]];
+        if (this.nextGenes.length < genesNeeded) {
+            this.nextGenes = new float[Math.max(2 * this.nextGenes.length, genesNeeded)];
+            this.nextPaths = new int[this.nextGenes.length];
+        }
+        if (this.nextOffsets.length < this.offsets.length) {
+            this.nextOffsets = new int[this.offsets.length];
+            this.nextLengths = new int[this.offsets.length];
+            this.nextEvaluated = new boolean[this.offsets.length];
+            this.nextFitness = new int[this.offsets.length];
+            this.nextBoards = new byte[this.offsets.length * this.cells];
+            this.nextBlanks = new int[this.offsets.length];
+            this.nextPathLengths = new int[this.offsets.length];
+            this.nextPathGenerations = new int[this.offsets.length];
+        }
+
+        int numberOfGenes = 0;
+        for (int i = 0; i < n; ++i) {
+            int s = kept[i];
+            System.arraycopy(this.genes, this.offsets[s], this.nextGenes, numberOfGenes, this.lengths[s]);
+            System.arraycopy(this.boards, s * this.cells, this.nextBoards, i * this.cells, this.cells);
+            this.nextOffsets[i] = numberOfGenes;
+            this.nextLengths[i] = this.lengths[s];
+            this.nextEvaluated[i] = this.evaluated[s];
+            this.nextFitness[i] = this.fitness[s];
+            this.nextBlanks[i] = this.blanks[s];
+            System.arraycopy(this.paths, this.offsets[s], this.nextPaths, numberOfGenes, this.pathLengths[s]);
+            this.nextPathLengths[i] = this.pathLengths[s];
+            this.nextPathGenerations[i] = this.pathGenerations[s];
+            numberOfGenes = numberOfGenes + this.lengths[s];
+        }
+
+        float[] genes = this.genes;
+        this.genes = this.nextGenes;
+        this.nextGenes = genes;
+        int[] offsets = this.offsets;
+        this.offsets = this.nextOffsets;
+        this.nextOffsets = offsets;
+        int[] lengths = this.lengths;
+        this.lengths = this.nextLengths;
+        this.nextLengths = lengths;
+        boolean[] evaluated = this.evaluated;
+        this.evaluated = this.nextEvaluated;
+        this.nextEvaluated = evaluated;
+        int[] fitness = this.fitness;
+        this.fitness = this.nextFitness;
+        this.nextFitness = fitness;
+        byte[] boards = this.boards;
+        this.boards = this.nextBoards;
+        this.nextBoards = boards;
+        int[] blanks = this.blanks;
+        this.blanks = this.nextBlanks;
+        this.nextBlanks = blanks;
+        int[] paths = this.paths;
+        this.paths = this.nextPaths;
+        this.nextPaths = paths;
+        int[] pathLengths = this.pathLengths;
+        this.pathLengths = this.nextPathLengths;
+        this.nextPathLengths = pathLengths;
+        int[] pathGenerations = this.pathGenerations;
+        this.pathGenerations = this.nextPathGenerations;
+        this.nextPathGenerations = pathGenerations;
+
+        this.size = n;
+        this.numberOfGenes = numberOfGenes;
+    }
+
+    private void grow() {
+        int capacity = 2 * this.offsets.length;
+        this.offsets = Arrays.copyOf(this.offsets, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+        this.evaluated = Arrays.copyOf(this.evaluated, capacity);
+        this.fitness = Arrays.copyOf(this.fitness, capacity);
+        this.boards = Arrays.copyOf(this.boards, capacity * this.cells);
+        this.blanks = Arrays.copyOf(this.blanks, capacity);
+        this.pathLengths = Arrays.copyOf(this.pathLengths, capacity);
+        this.pathGenerations = Arrays.copyOf(this.pathGenerations, capacity);
+    }
+
+    /**
+     * @return the number of sequences evaluated from the initial state (or
+     *         through the trie) since the population was cleared
+     */
+    public long getNumberOfEvaluations() {
+        return this.numberOfEvaluations;
+    }
+}
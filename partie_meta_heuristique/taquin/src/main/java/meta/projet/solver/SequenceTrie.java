@@ -0,0 +1,240 @@
+package meta.projet.solver;
+
+import java.util.Arrays;
+
+import meta.projet.solver.heuristic.Heuristic;
+import meta.projet.solver.heuristic.IncrementalHeuristic;
+
+/**
+ * A cache of the evaluations of the prefixes of the sequences : a trie whose
+ * nodes are the states reached from the initial state by the sequences of
+ * moves, a node having a child for each move of the 0 allowed from it.
+ *
+ * A sequence of genes is evaluated by following the moves it decodes to from
+ * the root, the moves already in the trie (a prefix shared with a sequence
+ * evaluated before) are not applied again. The nodes of the path of a
+ * sequence are given back, so that the evaluation of a sequence sharing its
+ * first genes (an offspring and its parent) starts from the node of the last
+ * shared gene instead of the root.
+ *
+ * The states are packed in a long (4 bits per cell, the cell 0 being the
+ * lowest 4 bits), so the trie only works for boards of up to 16 cells. The
+ * number of nodes is bounded, the trie is cleared when it is full, which
+ * changes its generation : the paths of the previous generations are no
+ * longer valid.
+ */
+public class SequenceTrie {
+    /**
+     * maximum number of cells of the boards
+     */
+    public static final int MAX_CELLS = 16;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int NO_CHILD = -1;
+
+    private BoardGeometry geometry;
+    private Heuristic heuristic;
+    // the heuristic if it is incremental, null otherwise
+    private IncrementalHeuristic incremental;
+    // the states of the nodes scored by a heuristic not incremental
+    private short[][] state;
+    private long initialBoard;
+    private int initialBlank;
+    private int initialScore;
+    private int maxNodes;
+
+    private int size;
+    private int generation;
+    private long[] boards;
+    private int[] scores;
+    private byte[] blanks;
+    // children[4 * node + i] is the node reached by the i-th move allowed
+    // from the node
+    private int[] children;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * SequenceTrie constructor.
+     * @param geometry the geometry of the board, of up to 16 cells
+     * @param initialState the state the sequences start from
+     * @param heuristic the score of the states, its target state set
+     * @param maxNodes the maximum number of nodes
+     */
+    public SequenceTrie(BoardGeometry geometry, short[][] initialState, Heuristic heuristic, int maxNodes) {
+        if (geometry.getCells() > MAX_CELLS)
+            throw new IllegalArgumentException("the states of " + geometry.getCells() + " cells can't be packed");
+        this.geometry = geometry;
+        this.heuristic = heuristic;
+        if (heuristic instanceof IncrementalHeuristic)
+            this.incremental = (IncrementalHeuristic) heuristic;
+        else
+            this.state = new short[geometry.getLines()][geometry.getColumns()];
+        this.initialBoard = 0;
+        for (int p = 0; p < geometry.getCells(); ++p) {
+            long tile = initialState[p / geometry.getColumns()][p % geometry.getColumns()];
+            this.initialBoard = this.initialBoard | (tile << (p << 2));
+            if (tile == 0)
+                this.initialBlank = p;
+        }
+        this.initialScore = heuristic.score(initialState);
+        this.maxNodes = Math.max(maxNodes, 2);
+
+        int capacity = Math.min(INITIAL_CAPACITY, this.maxNodes);
+        this.boards = new long[capacity];
+        this.scores = new int[capacity];
+        this.blanks = new byte[capacity];
+        this.children = new int[4 * capacity];
+        Arrays.fill(this.children, NO_CHILD);
+        this.size = 0;
+        this.generation = 0;
+        clear();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * Removes all the nodes but the root.
+     */
+    public void clear() {
+        Arrays.fill(this.children, 0, 4 * this.size, NO_CHILD);
+        this.boards[0] = this.initialBoard;
+        this.scores[0] = this.initialScore;
+        this.blanks[0] = (byte) this.initialBlank;
+        this.size = 1;
+        this.generation = this.generation + 1;
+    }
+
+    /**
+     * @return the number of times the trie was cleared, the paths are valid
+     *         as long as it doesn't change
+     */
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Follows the moves of a sequence, adding the missing nodes.
+     * @param genes the genes of the sequences
+     * @param offset the position of the first gene of the sequence
+     * @param length the number of genes of the sequence
+     * @param path path[offset + k] is the node reached after the gene k,
+     *        filled from the gene from
+     * @param from the number of genes whose nodes are already in the path,
+     *        for the current generation
+     * @return the node of the final state of the sequence, -1 if the sequence
+     *         is longer than the maximum number of nodes
+     */
+    public int evaluate(float[] genes, int offset, int length, int[] path, int from) {
+        if (length >= this.maxNodes)
+            return -1;
+        // the nodes added by the sequence must fit in the trie
+        if (this.size + length - from > this.maxNodes) {
+            clear();
+            from = 0;
+        }
+
+        int node = (from == 0) ? 0 : path[offset + from - 1];
+        this.hits = this.hits + from;
+        for (int k = from; k < length; ++k) {
+            int blank = this.blanks[node];
+            int numberOfMoves = this.geometry.getNumberOfMoves(blank);
+            float interval = (float) 1 / numberOfMoves;
+            int moveIndex = (int) (genes[offset + k] / interval) % numberOfMoves;
+
+            int child = this.children[4 * node + moveIndex];
+            if (child == NO_CHILD) {
+                child = addChild(node, blank, this.geometry.getMoveTarget(blank, moveIndex));
+                this.children[4 * node + moveIndex] = child;
+                this.misses = this.misses + 1;
+            } else {
+                this.hits = this.hits + 1;
+            }
+            node = child;
+            path[offset + k] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Adds the state reached from a node by sliding the tile of the cell
+     * target into the 0.
+     */
+    private int addChild(int node, int blank, int target) {
+        if (this.size == this.boards.length)
+            grow();
+        long board = this.boards[node];
+        long tile = (board >>> (target << 2)) & 0xF;
+        int child = this.size;
+        // the cell of the 0 is already cleared, only the target cell needs to be
+        this.boards[child] = (board & ~(0xFL << (target << 2))) | (tile << (blank << 2));
+        if (this.incremental != null) {
+            this.scores[child] = this.incremental.delta(this.scores[node], (int) tile, target, blank);
+        } else {
+            for (int p = 0; p < this.geometry.getCells(); ++p)
+                this.state[p / this.geometry.getColumns()][p % this.geometry.getColumns()] =
+                    (short) ((this.boards[child] >>> (p << 2)) & 0xF);
+            this.scores[child] = this.heuristic.score(this.state);
+        }
+        this.blanks[child] = (byte) target;
+        this.size = this.size + 1;
+        return child;
+    }
+
+    private void grow() {
+        int capacity = Math.min(2 * this.boards.length, this.maxNodes);
+        this.boards = Arrays.copyOf(this.boards, capacity);
+        this.scores = Arrays.copyOf(this.scores, capacity);
+        this.blanks = Arrays.copyOf(this.blanks, capacity);
+        int previous = this.children.length;
+        this.children = Arrays.copyOf(this.children, 4 * capacity);
+        Arrays.fill(this.children, previous, this.children.length, NO_CHILD);
+    }
+
+    public int getScore(int node) {
+        return this.scores[node];
+    }
+
+    public int getBlank(int node) {
+        return this.blanks[node];
+    }
+
+    /**
+     * Writes the state of a node in a board of one byte per cell.
+     */
+    public void unpack(int node, byte[] board, int offset) {
+        long packed = this.boards[node];
+        for (int p = 0; p < this.geometry.getCells(); ++p)
+            board[offset + p] = (byte) ((packed >>> (p << 2)) & 0xF);
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of moves found in the trie or in the paths given to
+     *         evaluate
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of moves applied to add a node
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return the part of the moves found in the trie
+     */
+    public double getHitRate() {
+        return (this.hits + this.misses == 0) ? 0 : (double) this.hits / (this.hits + this.misses);
+    }
+}
@@ -0,0 +1,19 @@
+package meta.projet.solver.heuristic;
+
+/**
+ * A heuristic whose score can be updated when a tile moves, without
+ * evaluating the whole state.
+ */
+public interface IncrementalHeuristic extends Heuristic {
+    /**
+     * Computes the score of a state from the score of the previous one in 
+     * O(1), the state is obtained by sliding one tile into the 0.
+     * @param parentScore the score of the previous state
+     * @param movedTile the value of the tile that was moved
+     * @param from the cell of the tile in the previous state
+     * @param to the cell of the tile in the new state
+     * (the cells are numbered line by line starting from 0)
+     * @return the score of the new state
+     */
+    public int delta(int parentScore, int movedTile, int from, int to);
+}
@@ -4,14 +4,19 @@ package meta.projet.solver.heuristic;
  * The number of squares from 1 to 8 that are miss placed with respect to 
  * the goal.
  */
-public class MissPlaced implements Heuristic {
+public class MissPlaced implements IncrementalHeuristic {
     private short[][] targetState;
+    /**
+     * missPlaced[t][p] is 1 if the tile t is miss placed when it is in the
+     * cell p, 0 otherwise (always 0 for the tile 0)
+     */
+    private int[][] missPlaced;
 
     public MissPlaced() {
     }
 
     public MissPlaced(short[][] targetState) {
-        this.targetState = targetState;
+        setTargetState(targetState);
     }
 
     //@Override
@@ -25,7 +30,20 @@ public class MissPlaced implements Heuristic {
         return cpt;
     }
 
+    //@Override
+    public int delta(int parentScore, int movedTile, int from, int to) {
+        return parentScore + this.missPlaced[movedTile][to] - this.missPlaced[movedTile][from];
+    }
+
     public void setTargetState(short[][] targetState) {
         this.targetState = targetState;
+
+        int columns = targetState[0].length;
+        int cells = targetState.length * columns;
+        this.missPlaced = new int[cells][cells];
+        for (int t = 1; t < cells; ++t)
+            for (int p = 0; p < cells; ++p)
+                if (targetState[p / columns][p % columns] != t)
+                    this.missPlaced[t][p] = 1;
     }
 }
@@ -0,0 +1,62 @@
+package meta.projet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import meta.projet.classesi.solver.AStar;
+import meta.projet.classesi.solver.Node;
+import meta.projet.classesi.solver.heuristic.Heuristic;
+import meta.projet.classesi.solver.heuristic.MinMoves;
+import meta.projet.classesi.solver.heuristic.MissPlaced;
+import meta.projet.classesi.solver.heuristic.PatternDatabase;
+
+/**
+ * AStar with each heuristic. The solver is built once per trial, so the
+ * tables of the heuristic (the pattern database file) are not measured,
+ * solve resetting the opened and closed lists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AStarBenchmark {
+    @Param({"283164705", "364102875", "304165827", "213804675",
+            "420836751", "163408725", "567408321", "527804361"})
+    public int instance;
+
+    @Param({"MinMoves", "MissPlaced", "PatternDatabase"})
+    public String heuristic;
+
+    private AStar solver;
+
+    @Setup
+    public void setUp() {
+        Heuristic heuristic;
+        if (this.heuristic.equals("MinMoves"))
+            heuristic = new MinMoves();
+        else if (this.heuristic.equals("MissPlaced"))
+            heuristic = new MissPlaced();
+        else
+            heuristic = new PatternDatabase();
+        this.solver = new AStar(this.instance, Instances.FINAL_STATE, heuristic, -1);
+    }
+
+    @Benchmark
+    public Node aStar() {
+        this.solver.solve();
+        return this.solver.getSolution();
+    }
+}
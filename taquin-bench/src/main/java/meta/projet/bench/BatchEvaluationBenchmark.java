@@ -0,0 +1,80 @@
+package meta.projet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import meta.projet.solver.BatchEvaluator;
+import meta.projet.solver.BoardGeometry;
+import meta.projet.solver.PSOSolver;
+import meta.projet.solver.Particle;
+
+/**
+ * The evaluation of a swarm of random particles, one particle at a time by
+ * PSOSolver.fitnessFunction or all at once by a BatchEvaluator (the first
+ * 5 moves of each particle, the sequence size of a new PSOSolver).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BatchEvaluationBenchmark {
+    private static final int SEQUENCE_SIZE = 5;
+
+    @Param({"100", "1000"})
+    public int numParticles;
+
+    private PSOSolver solver;
+    private BatchEvaluator evaluator;
+    private Particle[] particles;
+    private float[][] positions;
+
+    @Setup
+    public void setUp() {
+        short[][] initialState = Instances.toMatrix(567408321);
+        short[][] targetState = Instances.toMatrix(Instances.FINAL_STATE);
+        BoardGeometry geometry = BoardGeometry.of(initialState);
+        this.solver = new PSOSolver(initialState, targetState, 30.0f, 1.5f, 1.0f, 500, this.numParticles, (float) 1, 5);
+        this.evaluator = new BatchEvaluator(geometry, initialState, true,
+            BatchEvaluator.matchedTilesTable(geometry, targetState));
+
+        Random rand = new Random(42);
+        this.particles = new Particle[this.numParticles];
+        this.positions = new float[this.numParticles][500];
+        for (int i = 0; i < this.numParticles; ++i) {
+            for (int k = 0; k < 500; ++k)
+                this.positions[i][k] = rand.nextFloat() * (1 + rand.nextInt(50));
+            this.particles[i] = new Particle(this.positions[i], 1);
+        }
+    }
+
+    @Benchmark
+    public int sequential() {
+        int sum = 0;
+        for (int i = 0; i < this.numParticles; ++i)
+            sum = sum + this.solver.fitnessFunction(this.particles[i]);
+        return sum;
+    }
+
+    @Benchmark
+    public int batch() {
+        int[] scores = this.evaluator.evaluate(this.positions, SEQUENCE_SIZE, this.numParticles);
+        int sum = 0;
+        for (int i = 0; i < this.numParticles; ++i)
+            sum = sum + scores[i];
+        return sum;
+    }
+}
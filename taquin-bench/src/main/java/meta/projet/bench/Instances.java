@@ -0,0 +1,42 @@
+package meta.projet.bench;
+
+/**
+ * The instances of Main and App, from 5 to 30 moves, used by all the
+ * benchmarks.
+ */
+final class Instances {
+    static final int FINAL_STATE = 123804765;
+
+    /**
+     * the values of the instance parameter of the benchmarks
+     */
+    static final String[] STATES = {
+        "283164705", "364102875", "304165827", "213804675",
+        "420836751", "163408725", "567408321", "527804361"
+    };
+
+    static final int[] DEPTHS = {5, 10, 13, 18, 20, 24, 30, 30};
+
+    private Instances() {
+    }
+
+    /**
+     * @param state an instance
+     * @return the length of the optimal solution of the instance
+     */
+    static int depth(int state) {
+        for (int i = 0; i < STATES.length; ++i)
+            if (Integer.parseInt(STATES[i]) == state)
+                return DEPTHS[i];
+        throw new IllegalArgumentException("unknown instance " + state);
+    }
+
+    static short[][] toMatrix(int state) {
+        short[][] matrix = new short[3][3];
+        for (int p = 8; p >= 0; --p) {
+            matrix[p / 3][p % 3] = (short) (state % 10);
+            state = state / 10;
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,60 @@
+package meta.projet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import meta.projet.solver.GASolver;
+import meta.projet.solver.PSOSolver;
+import meta.projet.solver.heuristic.MinMoves;
+
+/**
+ * GASolver and PSOSolver with the parameters of App, the solvers being seeded
+ * every run takes the same path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class MetaheuristicBenchmark {
+    @Param({"283164705", "364102875", "304165827", "213804675",
+            "420836751", "163408725", "567408321", "527804361"})
+    public int instance;
+
+    private short[][] initialState;
+    private short[][] targetState;
+
+    @Setup
+    public void setUp() {
+        this.initialState = Instances.toMatrix(this.instance);
+        this.targetState = Instances.toMatrix(Instances.FINAL_STATE);
+    }
+
+    @Benchmark
+    public float[] ga() {
+        GASolver solver = new GASolver(this.initialState, this.targetState, 50, new MinMoves(),
+            1, 5000, 0.5f, 30, 50, 0.5f, 60);
+        solver.solve();
+        return solver.getSolution();
+    }
+
+    @Benchmark
+    public short pso() {
+        PSOSolver solver = new PSOSolver(this.initialState, this.targetState, 30.0f, 1.5f, 1.0f,
+            500, 100, (float) 1, 5);
+        solver.solve();
+        return solver.getCurrentBestEvaluation();
+    }
+}
@@ -0,0 +1,80 @@
+package meta.projet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import meta.projet.classesi.solver.AStar;
+import meta.projet.classesi.solver.Codification;
+import meta.projet.classesi.solver.Node;
+import meta.projet.classesi.solver.PackedState;
+import meta.projet.classesi.solver.heuristic.MinMoves;
+
+/**
+ * The operations done for every state by the solvers : switching the 0 in
+ * the decimal codification, hashing a node and evaluating a matrix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MicroBenchmark {
+    @Param({"283164705", "364102875", "304165827", "213804675",
+            "420836751", "163408725", "567408321", "527804361"})
+    public int instance;
+
+    // the positions (from 1 to 9) of the 0 and of the cell switched with it
+    private int zeroPosition;
+    private int cellPosition;
+    private int cellValue;
+    private Node node;
+    private short[][] matrix;
+    private MinMoves minMoves;
+
+    @Setup
+    public void setUp() {
+        long packed = PackedState.fromInt(this.instance);
+        int blank = PackedState.blank(packed);
+        int cell = PackedState.neighbour(blank, PackedState.LEFT);
+        if (cell < 0)
+            cell = PackedState.neighbour(blank, PackedState.RIGHT);
+        this.zeroPosition = blank + 1;
+        this.cellPosition = cell + 1;
+        this.cellValue = PackedState.tile(packed, cell);
+
+        this.node = new Node(this.instance, null, 0, 0);
+        this.matrix = new short[3][3];
+        AStar.intToMatrix(this.instance, this.matrix);
+        short[][] targetState = new short[3][3];
+        AStar.intToMatrix(Instances.FINAL_STATE, targetState);
+        this.minMoves = new MinMoves();
+        this.minMoves.setTargetState(targetState);
+    }
+
+    @Benchmark
+    public int switchCell() {
+        return Codification.SwitchCell(this.instance, this.zeroPosition, this.cellPosition, this.cellValue);
+    }
+
+    @Benchmark
+    public int nodeHashCode() {
+        return this.node.hashCode();
+    }
+
+    @Benchmark
+    public int minMovesScore() {
+        return this.minMoves.score(this.matrix, 0);
+    }
+}
@@ -0,0 +1,56 @@
+package meta.projet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import meta.projet.classesi.solver.BFS;
+import meta.projet.classesi.solver.DFS;
+import meta.projet.classesi.solver.Node;
+
+/**
+ * BFS and DFS, the solvers are built by the benchmarks as solve doesn't reset
+ * them. DFS is bounded by the length of the optimal solution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"283164705", "364102875", "304165827", "213804675",
+            "420836751", "163408725", "567408321", "527804361"})
+    public int instance;
+
+    private int depth;
+
+    @Setup
+    public void setUp() {
+        this.depth = Instances.depth(this.instance);
+    }
+
+    @Benchmark
+    public Node bfs() {
+        BFS solver = new BFS(this.instance, Instances.FINAL_STATE);
+        solver.solve();
+        return solver.getSolution();
+    }
+
+    @Benchmark
+    public Node dfs() {
+        DFS solver = new DFS(this.instance, Instances.FINAL_STATE, this.depth);
+        solver.solve();
+        return solver.getSolution();
+    }
+}